@@ -0,0 +1,67 @@
+package org.evensen.ants.benchmarks;
+
+import org.evensen.ants.Ant;
+import org.evensen.ants.AntColony;
+import org.evensen.ants.MyAntWorld;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving ants: a whole colony epoch, and {@code PellAnt.move} on its own without the sort.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColonyBenchmark {
+    @Param({"400x200", "4000x2000"})
+    public String worldSize;
+
+    @Param({"1000", "10000"})
+    public int ants;
+
+    private MyAntWorld world;
+    private AntColony colony;
+    private List<Ant> antList;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.world = Worlds.createWorld(this.worldSize);
+        this.colony = new AntColony(this.ants, Worlds.PHEROMONE_RATE, this.world);
+        Worlds.warmUp(this.world, this.colony, 200);
+        this.antList = this.colony.getAnts();
+    }
+
+    @Benchmark
+    public AntColony updateAnts() {
+        this.colony.updateAnts(this.world);
+        return this.colony;
+    }
+
+    /**
+     * Time per colony; divide by {@code ants} for the time of a single {@code PellAnt.move}.
+     */
+    @Benchmark
+    public void antMove(final Blackhole bh) {
+        for (final Ant a : this.antList) {
+            a.move(this.world);
+        }
+        bh.consume(this.antList);
+    }
+}
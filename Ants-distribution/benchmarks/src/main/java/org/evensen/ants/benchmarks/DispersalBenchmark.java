@@ -0,0 +1,56 @@
+package org.evensen.ants.benchmarks;
+
+import org.evensen.ants.AntColony;
+import org.evensen.ants.MyAntWorld;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pheromone dispersal through the {@code DispersalPolicy} compared to the self-contained loop, for worlds with the two
+ * pheromone channels of one colony and with more.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispersalBenchmark {
+    @Param({"400x200", "1000x500", "4000x2000"})
+    public String worldSize;
+
+    @Param({"2", "4"})
+    public int channels;
+
+    private MyAntWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.world = Worlds.createWorld(this.worldSize, this.channels);
+        Worlds.warmUp(this.world, new AntColony(1000, Worlds.PHEROMONE_RATE, this.world), 200);
+    }
+
+    @Benchmark
+    public MyAntWorld dispersePheromones() {
+        this.world.dispersePheromones();
+        return this.world;
+    }
+
+    @Benchmark
+    public MyAntWorld selfContainedDisperse() {
+        this.world.selfContainedDisperse();
+        return this.world;
+    }
+}
@@ -0,0 +1,53 @@
+package org.evensen.ants.benchmarks;
+
+import org.evensen.ants.FractalNoise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code FractalNoise} sampled over a grid one sample at a time and a row at a time, reported per sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NoiseBenchmark {
+    private static final int GRID = 64;
+
+    @Param({"4", "8"})
+    public int octaves;
+
+    private final float[] grid = new float[GRID * GRID];
+
+    @Benchmark
+    @OperationsPerInvocation(GRID * GRID)
+    public double getNoise() {
+        double acc = 0.0;
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                acc += FractalNoise.getNoise(x / (double) GRID, y / (double) GRID, 0.6, 1, this.octaves, 7L);
+            }
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GRID * GRID)
+    public float[] fillRegion() {
+        FractalNoise.fillRegion(this.grid, GRID, GRID, 0.0, 0.0, 1.0 / GRID, 0.6, 1, this.octaves, 7L);
+        return this.grid;
+    }
+}
@@ -0,0 +1,165 @@
+package org.evensen.ants.benchmarks;
+
+import org.evensen.ants.AntColony;
+import org.evensen.ants.FrameExchange;
+import org.evensen.ants.MyAntWorld;
+import org.evensen.ants.Position;
+import org.evensen.ants.SimulationFrame;
+import org.evensen.ants.WorldRegion;
+import org.evensen.ants.render.AntColonyRenderer;
+import org.evensen.ants.render.AntWorldRenderer;
+import org.evensen.ants.render.FoodRenderer;
+import org.evensen.ants.render.ObstacleRenderer;
+import org.evensen.ants.render.ScanlineBands;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pixel building loops of the layer renderers, run against offscreen buffers so that no JavaFX toolkit is
+ * needed. {@code scale} is the discrete canvas scale the cached layers are rendered at, and {@code threads} the number
+ * of threads rendering scanline bands. The {@code corner} benchmarks look at a fixed corner of the world zoomed in,
+ * which should cost the same whatever the size of the world.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+    private static final int CORNER_WIDTH = 100;
+    private static final int CORNER_HEIGHT = 50;
+    private static final double CORNER_PIXELS_PER_CELL = 8.0;
+
+    @Param({"400x200", "1000x500"})
+    public String worldSize;
+
+    @Param({"2", "4"})
+    public int scale;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private MyAntWorld world;
+    private SimulationFrame frame;
+    private ScanlineBands bands;
+    private AntWorldRenderer antWorldRenderer;
+    private AntColonyRenderer antColonyRenderer;
+    private ObstacleRenderer obstacleRenderer;
+    private FoodRenderer foodRenderer;
+    private double canvasWidth;
+    private double canvasHeight;
+    private WorldRegion all;
+    private WorldRegion corner;
+    private int strokes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.world = Worlds.createWorld(this.worldSize);
+        final AntColony colony = new AntColony(1000, Worlds.PHEROMONE_RATE, this.world);
+        Worlds.warmUp(this.world, colony, 200);
+        Worlds.paintObstacles(this.world, 40);
+        final FrameExchange frames = new FrameExchange();
+        frames.publish(200, colony, this.world);
+        this.frame = frames.latest();
+        this.bands = 1 == this.threads ? ScanlineBands.SEQUENTIAL : ScanlineBands.parallel(this.threads);
+        this.antWorldRenderer = new AntWorldRenderer();
+        this.antColonyRenderer = new AntColonyRenderer();
+        this.obstacleRenderer = new ObstacleRenderer();
+        this.foodRenderer = new FoodRenderer();
+        this.canvasWidth = this.world.getWidth() * (this.scale - 1);
+        this.canvasHeight = this.world.getHeight() * (this.scale - 1);
+        this.all = WorldRegion.whole(this.world.getWidth(), this.world.getHeight());
+        this.corner = new WorldRegion(0, 0, CORNER_WIDTH - 1, CORNER_HEIGHT - 1);
+        this.world.addWorldChangeListener(this.obstacleRenderer);
+        this.obstacleRenderer.prepare(this.world, this.canvasWidth, this.canvasHeight, this.bands);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.bands.close();
+    }
+
+    @Benchmark
+    public boolean pheromonePixels() {
+        return this.antWorldRenderer.prepare(this.frame, this.world, this.all, 1.0, this.bands);
+    }
+
+    /**
+     * The pheromones zoomed out, with tiles of {@code scale} by {@code scale} cells per pixel.
+     */
+    @Benchmark
+    public boolean pheromoneTilePixels() {
+        return this.antWorldRenderer.prepare(this.frame, this.world, this.all, 1.0 / this.scale, this.bands);
+    }
+
+    @Benchmark
+    public boolean pheromoneCornerPixels() {
+        return this.antWorldRenderer.prepare(this.frame, this.world, this.corner, CORNER_PIXELS_PER_CELL, this.bands);
+    }
+
+    /**
+     * The ants drawn one by one, with {@code scale} pixels per cell.
+     */
+    @Benchmark
+    public boolean antPixels() {
+        return this.antColonyRenderer.prepare(this.frame, this.all, this.scale, this.bands);
+    }
+
+    @Benchmark
+    public boolean antCornerPixels() {
+        return this.antColonyRenderer.prepare(this.frame, this.corner, CORNER_PIXELS_PER_CELL, this.bands);
+    }
+
+    /**
+     * The ants drawn as a density, with {@code scale} cells per pixel.
+     */
+    @Benchmark
+    public boolean antDensityPixels() {
+        return this.antColonyRenderer.prepare(this.frame, this.all, 1.0 / this.scale, this.bands);
+    }
+
+    @Benchmark
+    public boolean obstaclePixels() {
+        this.obstacleRenderer.dirty();
+        return this.obstacleRenderer.prepare(this.world, this.canvasWidth, this.canvasHeight, this.bands);
+    }
+
+    /**
+     * One mouse event of painting with a brush of radius 5, as {@code Main} does it, walking across the world.
+     */
+    @Benchmark
+    public boolean obstacleBrushStroke() {
+        final int step = this.strokes++;
+        final int cx = (step * 3) % this.world.getWidth();
+        final int cy = (step / (this.world.getWidth() / 3) * 7) % this.world.getHeight();
+        final float r = 5.0f;
+        for (float x = -r; r > x; x += 1.0f) {
+            for (float y = -r; r > y; y += 1.0f) {
+                if (r * r > x * x + y * y) {
+                    this.world.setObstacle(new Position(cx + x, cy + y), 0 == (step & 1));
+                }
+            }
+        }
+        return this.obstacleRenderer.prepare(this.world, this.canvasWidth, this.canvasHeight, this.bands);
+    }
+
+    @Benchmark
+    public boolean foodPixels() {
+        this.foodRenderer.dirty();
+        return this.foodRenderer.prepare(this.world, this.canvasWidth, this.canvasHeight, this.bands);
+    }
+}
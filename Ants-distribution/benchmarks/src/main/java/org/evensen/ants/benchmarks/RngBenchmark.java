@@ -0,0 +1,101 @@
+package org.evensen.ants.benchmarks;
+
+import org.evensen.ants.Konadare192RNG;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Konadare192RNG} compared to {@code SplittableRandom} for the draws the ants make. The bulk variants report
+ * the time per value, for arrays the size of one ant's scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RngBenchmark {
+    private static final int BULK = 20;
+
+    private final Konadare192RNG konadare = new Konadare192RNG(42);
+    private final SplittableRandom splittable = new SplittableRandom(42);
+    private final float[] floats = new float[BULK];
+    private final double[] doubles = new double[BULK];
+
+    @Benchmark
+    public long konadareNextLong() {
+        return this.konadare.nextLong();
+    }
+
+    @Benchmark
+    public long splittableNextLong() {
+        return this.splittable.nextLong();
+    }
+
+    @Benchmark
+    public float konadareNextFloat() {
+        return this.konadare.nextFloat();
+    }
+
+    @Benchmark
+    public float splittableNextFloat() {
+        return this.splittable.nextFloat();
+    }
+
+    @Benchmark
+    public double konadareNextGaussian() {
+        return this.konadare.nextGaussian();
+    }
+
+    @Benchmark
+    public double splittableNextGaussian() {
+        return this.splittable.nextGaussian();
+    }
+
+    /**
+     * The sum of uniforms {@code Konadare192RNG.nextGaussian} used before the ziggurat, for comparison.
+     */
+    @Benchmark
+    public double konadareIrwinHallGaussian() {
+        double acc = 0.0;
+        for (int i = 0; i < 5; i++) {
+            acc += this.konadare.nextDouble();
+        }
+        return (acc - 2.5) * (12.0 / 5);
+    }
+
+    @Benchmark
+    public double konadareNextExponential() {
+        return this.konadare.nextExponential();
+    }
+
+    @Benchmark
+    public double splittableNextExponential() {
+        return this.splittable.nextExponential();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public float[] konadareNextFloats() {
+        this.konadare.nextFloats(this.floats, 0, BULK);
+        return this.floats;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public double[] konadareNextGaussians() {
+        this.konadare.nextGaussians(this.doubles, 0, BULK);
+        return this.doubles;
+    }
+}
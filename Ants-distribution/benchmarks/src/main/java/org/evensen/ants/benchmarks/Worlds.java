@@ -0,0 +1,69 @@
+package org.evensen.ants.benchmarks;
+
+import org.evensen.ants.AntColony;
+import org.evensen.ants.Hasher;
+import org.evensen.ants.MyAntWorld;
+import org.evensen.ants.MyDispersalPolicy;
+import org.evensen.ants.Position;
+import org.evensen.ants.Simulation;
+
+import java.util.Random;
+
+/**
+ * Builds the worlds shared by the benchmarks.
+ */
+enum Worlds {
+    ;
+    static final float PHEROMONE_RATE = 0.7f;
+    static final int FOOD_SOURCES = 4;
+
+    /**
+     * Parses a world size parameter of the form {@code <width>x<height>}.
+     */
+    static int[] parseSize(final String size) {
+        final int x = size.indexOf('x');
+        return new int[]{Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1))};
+    }
+
+    static MyAntWorld createWorld(final String size) {
+        final int[] wh = parseSize(size);
+        return new MyAntWorld(wh[0], wh[1], FOOD_SOURCES, new MyDispersalPolicy());
+    }
+
+    static MyAntWorld createWorld(final String size, final int channels) {
+        final int[] wh = parseSize(size);
+        return new MyAntWorld(wh[0], wh[1], FOOD_SOURCES, new MyDispersalPolicy(), new boolean[wh[0] * wh[1]],
+                channels);
+    }
+
+    /**
+     * Paints {@code discs} round obstacles at fixed pseudo random places, as a user would with the mouse.
+     */
+    static void paintObstacles(final MyAntWorld world, final int discs) {
+        final Random random = new Random(Hasher.hash(discs));
+        final float maxRadius = Math.min(world.getWidth(), world.getHeight()) * 0.05f;
+        for (int i = 0; i < discs; i++) {
+            final float cx = random.nextFloat() * world.getWidth();
+            final float cy = random.nextFloat() * world.getHeight();
+            final float r = 1.0f + random.nextFloat() * maxRadius;
+            for (float x = -r; r > x; x += 1.0f) {
+                for (float y = -r; r > y; y += 1.0f) {
+                    if (r * r > x * x + y * y) {
+                        world.setObstacle(new Position(cx + x, cy + y), true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs {@code epochs} epochs so that the benchmarks see trails and ants spread out from home
+     * rather than a freshly created world.
+     */
+    static void warmUp(final MyAntWorld world, final AntColony colony, final int epochs) {
+        final Simulation simulation = new Simulation(world, colony);
+        for (int i = 0; i < epochs; i++) {
+            simulation.step();
+        }
+    }
+}
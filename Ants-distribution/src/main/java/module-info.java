@@ -3,9 +3,14 @@ module ants {
 	requires javafx.fxml;
 	requires transitive javafx.graphics;
     requires java.desktop;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.jfr;
 
     opens org.evensen.ants to javafx.fxml;
 	exports org.evensen.ants;
+    exports org.evensen.ants.batch;
+    exports org.evensen.ants.metrics;
     exports org.evensen.ants.render;
     opens org.evensen.ants.render to javafx.fxml;
     exports org.evensen.ants.controller;
@@ -1,56 +1,195 @@
 package org.evensen.ants;
 
+import org.evensen.ants.metrics.EpochEvent;
+import org.evensen.ants.metrics.Phase;
+import org.evensen.ants.metrics.PhaseClock;
+import org.evensen.ants.metrics.SimulationMetrics;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.SplittableRandom;
-import java.util.function.Supplier;
 
 public class AntColony {
+    /**
+     * The seed of colonies not given one.
+     */
+    public static final long DEFAULT_SEED = Hasher.hash(1);
+    // The colony is moved by a single worker; see Konadare192RNG.substream for how workers and ants key the streams.
+    private static final int WORKER = 0;
+    // Substreams of this worker number, which moves no ants, place spawned ants; see spawn.
+    private static final int HATCH_WORKER = WORKER + 1;
+
     private final List<Ant> ants;
-    private long accTime;
-    private int epochs;
-    private final Supplier<PellAnt> createAnt;
+    // Dead ants of this colony, to be hatched again by spawn with their ids.
+    private final ArrayDeque<PellAnt> pool;
+    private final Konadare192RNG hatchRng;
+    private final float pheromoneRate;
+    private final long seed;
+    private int nextId;
+    private long moves;
+    private long epochs;
+    private final PhaseClock clock;
 
     public AntColony(final int ants, final float pheromoneRate, final AntWorld w) {
+        this(ants, pheromoneRate, w, DEFAULT_SEED);
+    }
+
+    /**
+     * @param seed The seed of the ants' random substreams; colonies with different seeds move differently.
+     */
+    public AntColony(final int ants, final float pheromoneRate, final AntWorld w, final long seed) {
         this.ants = new ArrayList<>();
-        final SplittableRandom rng = new SplittableRandom(Hasher.hash(1));
-        this.createAnt = new Supplier<PellAnt>() {
-            @Override
-            public PellAnt get() {
-                return new PellAnt(new Position(
-                        w.getWidth() - 5, (float) (w.getHeight() / 2 + rng.nextGaussian())),
-                        pheromoneRate);
-            }
-        };
-        for (int i = 0; i < ants; i++) {
-            this.ants.add(this.createAnt.get());
-        }
+        this.pool = new ArrayDeque<>();
+        this.pheromoneRate = pheromoneRate;
+        this.clock = new PhaseClock(SimulationMetrics.global());
+        this.seed = seed;
+        this.hatchRng = Konadare192RNG.substream(this.seed, HATCH_WORKER, 0, 0);
+        spawn(ants, w);
+    }
+
+    /**
+     * Continues a colony with the given ants, in the order they move, and dead ants, in the order they are to be
+     * hatched again, see {@code Checkpoint}.
+     */
+    AntColony(final List<? extends Ant> ants, final List<PellAnt> pooled, final float pheromoneRate,
+              final AntWorld w, final long seed, final long moves, final long epochs, final int nextId) {
+        this(0, pheromoneRate, w, seed);
+        this.ants.addAll(ants);
+        this.pool.addAll(pooled);
+        this.nextId = nextId;
+        this.moves = moves;
+        this.epochs = epochs;
     }
 
+    /**
+     * Moves every living ant once, in order of their y coordinates. Ants found dead are reported to the world with
+     * {@code addDeadAnt} and dropped from the colony in the same pass, keeping the order of the others, so the cost
+     * of an epoch follows the number of living ants.
+     */
     public void updateAnts(final AntWorld w) {
-        final long startTime = System.nanoTime();
-        synchronized (this) {
-            this.ants.sort((o1, o2) -> {
-                final float x1 = o1.getPosition().getY();
-                final float x2 = o2.getPosition().getY();
-                if (x1 < x2) {
-                    return -1;
-                } else if (x1 > x2) {
-                    return 1;
-                } else {
-                    return 0;
-                }
-            });
-            this.ants.forEach(a -> a.move(w));
+        final EpochEvent event = new EpochEvent();
+        event.begin();
+        final long foodBefore = w.getFoodCount();
+        this.clock.start();
+        this.ants.sort((o1, o2) -> {
+            final float x1 = o1.getPosition().getY();
+            final float x2 = o2.getPosition().getY();
+            if (x1 < x2) {
+                return -1;
+            } else if (x1 > x2) {
+                return 1;
+            } else {
+                return 0;
+            }
+        });
+        this.clock.lap(Phase.SORT);
+        long moved = 0;
+        int living = 0;
+        final int n = this.ants.size();
+        for (int i = 0; i < n; i++) {
+            final Ant a = this.ants.get(i);
+            if (a.isDead()) {
+                bury(a, w);
+            } else {
+                a.move(w);
+                moved++;
+                this.ants.set(living++, a);
+            }
         }
-        this.accTime += System.nanoTime() - startTime;
+        if (living < n) {
+            // Shifts nothing and keeps the capacity: only the tail is cleared.
+            this.ants.subList(living, n).clear();
+        }
+        this.clock.lap(Phase.ANT_UPDATE);
+        SimulationMetrics.global().countAntMoves(moved);
+        this.moves += moved;
         this.epochs++;
-        if (0 == this.epochs % 100) {
-            System.out.println("Time per epoch: " + (this.accTime / (double) this.epochs / 1_000_000_000) + " s");
+        if (event.shouldCommit()) {
+            event.epoch = this.epochs;
+            event.antCount = this.ants.size();
+            event.moved = moved;
+            event.foodDelivered = w.getFoodCount() - foodBefore;
+            event.commit();
+        }
+    }
+
+    private void bury(final Ant a, final AntWorld w) {
+        w.addDeadAnt(a.getPosition());
+        if (a instanceof PellAnt && this.seed == ((PellAnt) a).getSeed() && WORKER == ((PellAnt) a).getWorker()) {
+            this.pool.push((PellAnt) a);
+        }
+    }
+
+    /**
+     * Hatches {@code count} new ants at home in {@code w}. Ants that died are hatched again, keeping their ids,
+     * rather than allocated, so ids only run up to the most ants the colony has had at once. Where a spawned ant
+     * starts is drawn from the hatching substream of its id and first move, which no other hatch uses.
+     */
+    public void spawn(final int count, final AntWorld w) {
+        for (int i = 0; i < count; i++) {
+            final PellAnt recycled = this.pool.poll();
+            final int id = null == recycled ? this.nextId++ : recycled.getId();
+            // A hatched ant starts its new life at the move after its last one, see PellAnt.hatch.
+            this.hatchRng.reseed(this.seed, HATCH_WORKER, id, null == recycled ? 0 : recycled.getMoves() + 1);
+            final Position p = new Position(w.getWidth() - 5,
+                    (float) (w.getHeight() / 2 + this.hatchRng.nextGaussian()));
+            if (null == recycled) {
+                this.ants.add(new PellAnt(p, this.pheromoneRate, this.seed, WORKER, id));
+            } else {
+                recycled.hatch(p, this.pheromoneRate);
+                this.ants.add(recycled);
+            }
         }
     }
 
+    /**
+     * @return The seed of the ants' random substreams.
+     */
+    long getSeed() {
+        return this.seed;
+    }
+
+    int getWorker() {
+        return WORKER;
+    }
+
+    /**
+     * @return The id the next new ant will get.
+     */
+    int getNextId() {
+        return this.nextId;
+    }
+
+    /**
+     * @return The dead ants waiting to be hatched again, in the order they will be.
+     */
+    List<PellAnt> getPooled() {
+        return new ArrayList<>(this.pool);
+    }
+
+    float getPheromoneRate() {
+        return this.pheromoneRate;
+    }
+
+    /**
+     * @return The number of epochs the colony has moved.
+     */
+    long getEpochCount() {
+        return this.epochs;
+    }
+
+    /**
+     * @return The total number of moves made by living ants since the colony was created.
+     */
+    public long getMoveCount() {
+        return this.moves;
+    }
+
+    /**
+     * Gives a read-only view of the ants. Only the thread updating the colony may use it; other threads should read
+     * the ants through a {@code SimulationFrame}.
+     */
     public List<Ant> getAnts() {
         return Collections.unmodifiableList(this.ants);
     }
@@ -2,8 +2,24 @@ package org.evensen.ants;
 
 /**
  * A description of a world for ants using two different types of pheromones.
+ *
+ * <p>
+ * Worlds may hold further pheromone channels, e.g. for other colonies or for alarm signals. Every channel is read and
+ * written through the channel-indexed methods; food and foraging pheromones are channels {@code FOOD_PHEROMONE} and
+ * {@code FORAGING_PHEROMONE}, which the two-channel methods read and write.
+ * </p>
  */
 public interface AntWorld {
+    /**
+     * The channel of the food pheromone levels.
+     */
+    int FOOD_PHEROMONE = 0;
+
+    /**
+     * The channel of the foraging pheromone levels.
+     */
+    int FORAGING_PHEROMONE = 1;
+
     /**
      * Gives the width of the world.
      *
@@ -64,9 +80,19 @@ public interface AntWorld {
 
     /**
      * Possible future extension -- ants should avoid other dead ants.
+     *
+     * @return How many ants died at the cell closest to {@code p}, fading as the dead ants decay.
      */
     float getDeadAntCount(Position p);
 
+    /**
+     * Notifies the world that an ant died at {@code p}, so that {@code getDeadAntCount} can count it.
+     *
+     * @param p The position the ant died at.
+     */
+    default void addDeadAnt(final Position p) {
+    }
+
     /**
      * Gives the current foraging pheromone level closest to {@code p}.
      * Closest is in this case defined as "having the indices of {@code <(int) p.getX(), (int) p.getY()>}"
@@ -85,6 +111,64 @@ public interface AntWorld {
      */
     float getFoodStrength(Position p);
 
+    /**
+     * @return The number of pheromone channels, at least two.
+     */
+    default int getPheromoneChannels() {
+        return 2;
+    }
+
+    /**
+     * Gives the current level of pheromone channel {@code channel} closest to {@code p}.
+     * Closest is in this case defined as "having the indices of {@code <(int) p.getX(), (int) p.getY()>}"
+     *
+     * @param channel The channel, from 0 to {@code getPheromoneChannels() - 1}.
+     * @param p       The position to get the level for.
+     * @return The current level of the channel closest to {@code p}.
+     */
+    default float getPheromoneLevel(final int channel, final Position p) {
+        return switch (channel) {
+            case FOOD_PHEROMONE -> getFoodStrength(p);
+            case FORAGING_PHEROMONE -> getForagingStrength(p);
+            default -> throw new IndexOutOfBoundsException("No pheromone channel " + channel);
+        };
+    }
+
+    /**
+     * Increases the level of pheromone channel {@code channel} at the cell closest to {@code p}.
+     *
+     * @param channel The channel, from 0 to {@code getPheromoneChannels() - 1}.
+     * @param p       The position where the pheromone should be dropped.
+     * @param amount  The amount to be dropped. Note that this *increases* rather than sets the current level.
+     */
+    default void dropPheromone(final int channel, final Position p, final float amount) {
+        switch (channel) {
+            case FOOD_PHEROMONE -> dropFoodPheromone(p, amount);
+            case FORAGING_PHEROMONE -> dropForagingPheromone(p, amount);
+            default -> throw new IndexOutOfBoundsException("No pheromone channel " + channel);
+        }
+    }
+
+    /**
+     * Copies the current food and foraging pheromone levels of every cell into {@code food} and {@code foraging}.
+     * The level of cell {@code <x, y>} is written to index {@code y * getWidth() + x}.
+     * Implementations are encouraged to override this with a bulk copy.
+     *
+     * @param food     Destination for the food pheromone levels, at least {@code getWidth() * getHeight()} long.
+     * @param foraging Destination for the foraging pheromone levels, at least {@code getWidth() * getHeight()} long.
+     */
+    default void copyPheromones(final float[] food, final float[] foraging) {
+        int i = 0;
+        for (int y = 0; y < getHeight(); y++) {
+            for (int x = 0; x < getWidth(); x++) {
+                final Position p = new Position(x, y);
+                food[i] = getFoodStrength(p);
+                foraging[i] = getForagingStrength(p);
+                i++;
+            }
+        }
+    }
+
     /**
      * @param p The position to check for food.
      * @return {@code true} if the position contains food, {@code false} otherwise.
@@ -96,6 +180,15 @@ public interface AntWorld {
      */
     long getFoodCount();
 
+    /**
+     * @return How many times pheromones have been dropped, of any channel, not counting what the world itself adds
+     * when dispersing, e.g. at food sources. Used for throughput metrics only; worlds that do not keep count may
+     * return 0.
+     */
+    default long getPheromoneDropCount() {
+        return 0;
+    }
+
     /**
      * @param p The position to check for homeness.
      * @return {@code true} if the {@code p} could be considered to be within an ant-home, {@code false} otherwise.
@@ -108,7 +201,8 @@ public interface AntWorld {
     void dispersePheromones();
 
     /**
-     * Adds/removes an obstacle closest to {@code p}, depending on the parameter {@code add}.
+     * Adds/removes an obstacle closest to {@code p}, depending on the parameter {@code add}. Like every other change
+     * of the world, only the thread running the simulation may make it, see {@code SimulationLoop.submit}.
      * @param p The position to add/remove an obstacle to.
      * @param add If {@code true}, adds an obstacle at {@code p}, otherwise removes at {@code p}.
      */
@@ -120,4 +214,15 @@ public interface AntWorld {
      * @param strength Could be used for anything.
      */
     void hitObstacle(Position p, float strength);
+
+    /**
+     * Registers {@code listener} to be told about food sources being added or removed and obstacles changing.
+     * @param listener The listener to add.
+     */
+    void addWorldChangeListener(WorldChangeListener listener);
+
+    /**
+     * @param listener A listener previously added with {@code addWorldChangeListener}.
+     */
+    void removeWorldChangeListener(WorldChangeListener listener);
 }
@@ -0,0 +1,447 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves the complete state of a simulation to a binary file and restores it, so that a long run can be resumed where
+ * it left off. A restored simulation continues exactly as the saved one would have, bit for bit.
+ *
+ * <p>
+ * The file is little endian and laid out as below. Per-cell layers are stored row by row, and the ants column by
+ * column, so that every large part is a bulk copy through a buffer. The file is written through its channel and
+ * read into memory in one go rather than memory-mapped, so no mapping outlives the call to keep the file from being
+ * moved or replaced.
+ * </p>
+ *
+ * <pre>
+ * int magic, int version, long epoch
+ * world:    int width, int height, int channels, long foodCount, long pheromoneDrops, long foodSeed,
+ *           long[3] food placement RNG
+ *           int sources, then per source: float x, float y, int foodAmount
+ *           float[cells * channels] pheromones, cell by cell, float[cells] dead ants, byte[cells] obstacles,
+ *           byte[cells] food
+ *           float activeLevel, NaN with eager evaporation; with lazy evaporation followed by
+ *           int dispersals, int[tiles] stamps, float[tiles] maxima, byte[tiles] written
+ * colony:   float pheromoneRate, long moves, long epochs, long seed, int worker, int nextId, int ants
+ *           float[ants] x, y, direction, pheromoneRate, moveRate, pheromonesLeft
+ *           int[ants] hitPoints, byte[ants] carriesFood, int[ants] id, long[ants] moves
+ *           int pooled, int[pooled] id, long[pooled] moves
+ * </pre>
+ *
+ * <p>
+ * An ant's random state is not saved: each move reseeds it from the colony's seed, the ant's id and the number of
+ * moves it has made, which are. Of the dead ants waiting to be hatched again only the id and moves are saved, as
+ * hatching draws everything else anew. Only a {@code MyAntWorld} with a colony of {@code PellAnt}s can be saved, and
+ * only while the simulation is not stepping, e.g. from the simulation thread between epochs. The dispersal policy is
+ * code, not state, so it is given again when restoring. A world with lazy evaporation is saved with its levels as
+ * stored and the book-keeping of {@code LazyEvaporation} as it is, so saving does not change the run, and is
+ * restored with lazy evaporation.
+ * </p>
+ */
+public final class Checkpoint {
+    private static final int MAGIC = 0x53544E41; // "ANTS"
+    private static final int VERSION = 7;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    // Of the buffer the file is written through.
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int ANT_BYTES = 6 * Float.BYTES + Integer.BYTES + 1 + Integer.BYTES + Long.BYTES;
+    private static final int POOLED_BYTES = Integer.BYTES + Long.BYTES;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Writes the state of {@code simulation} to {@code file}, replacing it. The file is written next to its final
+     * name first and then moved into place, so a crash never leaves a partly written checkpoint behind.
+     *
+     * @throws IllegalArgumentException If the world or an ant is of a kind that can not be saved.
+     */
+    public static void write(final Path file, final Simulation simulation) throws IOException {
+        if (!(simulation.getWorld() instanceof MyAntWorld)) {
+            throw new IllegalArgumentException("Can only save a MyAntWorld (was " + simulation.getWorld() + ")");
+        }
+        final MyAntWorld world = (MyAntWorld) simulation.getWorld();
+        final AntColony colony = simulation.getColony();
+        final List<Ant> ants = colony.getAnts();
+        final List<PellAnt> pooled = colony.getPooled();
+        for (final Ant ant : ants) {
+            if (!(ant instanceof PellAnt)) {
+                throw new IllegalArgumentException("Can only save PellAnts (was " + ant + ")");
+            }
+            final PellAnt pellAnt = (PellAnt) ant;
+            if (colony.getSeed() != pellAnt.getSeed() || colony.getWorker() != pellAnt.getWorker()) {
+                throw new IllegalArgumentException("Can only save ants seeded by their colony (was " + ant + ")");
+            }
+        }
+
+        final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final Sink sink = new Sink(channel);
+            sink.putInt(MAGIC).putInt(VERSION).putLong(simulation.getEpoch());
+            writeWorld(sink, world);
+            writeColony(sink, colony, ants, pooled);
+            sink.flush();
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores a simulation written by {@code write}.
+     *
+     * @param policy The dispersal policy of the restored world.
+     * @throws IOException If {@code file} can not be read or is not a checkpoint of this version.
+     */
+    public static Simulation read(final Path file, final DispersalPolicy policy) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (Integer.MAX_VALUE < channel.size()) {
+                throw new IOException(file + " is too large for a checkpoint");
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && 0 <= channel.read(buffer)) {
+                // Reads until the end of the file.
+            }
+            buffer.flip();
+            if (HEADER_BYTES > buffer.remaining() || MAGIC != buffer.getInt()) {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            final int version = buffer.getInt();
+            if (VERSION != version) {
+                throw new IOException(file + " is a checkpoint of version " + version + ", expected " + VERSION);
+            }
+            final long epoch = buffer.getLong();
+            final MyAntWorld world = readWorld(buffer, policy);
+            final AntColony colony = readColony(buffer, world);
+            return new Simulation(world, colony, epoch);
+        } catch (final BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    private static void writeWorld(final Sink sink, final MyAntWorld world) throws IOException {
+        final int width = world.getWidth();
+        final int height = world.getHeight();
+        sink.putInt(width).putInt(height).putInt(world.getPheromoneChannels());
+        sink.putLong(world.getFoodCount()).putLong(world.getPheromoneDropCount()).putLong(world.getFoodSeed());
+        for (final long word : world.getFoodRng().getState()) {
+            sink.putLong(word);
+        }
+        final List<FoodSource> sources = world.getFoodSources();
+        sink.putInt(sources.size());
+        for (final FoodSource source : sources) {
+            sink.putFloat(source.getPosition().getX()).putFloat(source.getPosition().getY());
+            sink.putInt(source.getFoodAmount());
+        }
+
+        sink.putFloats(world.getPheromones());
+        sink.putFloats(world.getDeadAnts());
+        final byte[] bytes = new byte[width * height];
+        final boolean[] obstacles = world.getObstacles();
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (obstacles[i] ? 1 : 0);
+        }
+        sink.put(bytes);
+        final boolean[][] food = world.getFoodMatrix();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                bytes[y * width + x] = (byte) (food[x][y] ? 1 : 0);
+            }
+        }
+        sink.put(bytes);
+
+        final LazyEvaporation lazy = world.getLazyEvaporation();
+        if (null == lazy) {
+            sink.putFloat(Float.NaN);
+            return;
+        }
+        sink.putFloat(lazy.getActiveLevel()).putInt(lazy.getDispersals());
+        sink.putInts(lazy.getStamps());
+        sink.putFloats(lazy.getMaxima());
+        final boolean[] written = lazy.getWritten();
+        final byte[] flags = new byte[written.length];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = (byte) (written[i] ? 1 : 0);
+        }
+        sink.put(flags);
+    }
+
+    private static MyAntWorld readWorld(final ByteBuffer buffer, final DispersalPolicy policy) throws IOException {
+        final int width = buffer.getInt();
+        final int height = buffer.getInt();
+        final int channels = buffer.getInt();
+        if (0 >= width || 0 >= height || 0 >= channels
+                || (long) width * height * channels > Integer.MAX_VALUE / Float.BYTES) {
+            throw new IOException("Bad world size " + width + "x" + height + "x" + channels);
+        }
+        final long foodCount = buffer.getLong();
+        final long pheromoneDrops = buffer.getLong();
+        final long foodSeed = buffer.getLong();
+        final long[] foodRng = {buffer.getLong(), buffer.getLong(), buffer.getLong()};
+        final MyAntWorld world;
+        try {
+            world = new MyAntWorld(width, height, policy, foodSeed, Konadare192RNG.fromState(foodRng), channels);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Bad pheromone channels", e);
+        }
+        world.restoreCounts(foodCount, pheromoneDrops);
+        final int sources = buffer.getInt();
+        for (int i = 0; i < sources; i++) {
+            final Position p = new Position(buffer.getFloat(), buffer.getFloat());
+            try {
+                world.restoreFoodSource(new FoodSource(p, buffer.getInt()));
+            } catch (final IllegalArgumentException e) {
+                throw new IOException("Bad food source", e);
+            }
+        }
+
+        getFloats(buffer, world.getPheromones());
+        getFloats(buffer, world.getDeadAnts());
+        world.restoreDeadAnts();
+        final byte[] bytes = new byte[width * height];
+        buffer.get(bytes);
+        final boolean[] obstacles = world.getObstacles();
+        for (int i = 0; i < bytes.length; i++) {
+            obstacles[i] = 0 != bytes[i];
+        }
+        buffer.get(bytes);
+        final boolean[][] food = world.getFoodMatrix();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                food[x][y] = 0 != bytes[y * width + x];
+            }
+        }
+
+        final float activeLevel = buffer.getFloat();
+        if (Float.isNaN(activeLevel)) {
+            return world;
+        }
+        try {
+            final LazyEvaporation lazy = world.restoreLazyEvaporation(activeLevel);
+            final int dispersals = buffer.getInt();
+            final int[] stamps = lazy.getStamps();
+            buffer.asIntBuffer().get(stamps);
+            buffer.position(buffer.position() + stamps.length * Integer.BYTES);
+            getFloats(buffer, lazy.getMaxima());
+            final boolean[] written = lazy.getWritten();
+            for (int i = 0; i < written.length; i++) {
+                written[i] = 0 != buffer.get();
+            }
+            lazy.restoreDispersals(dispersals);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Bad lazy evaporation", e);
+        }
+        return world;
+    }
+
+    private static void writeColony(final Sink sink, final AntColony colony, final List<Ant> ants,
+                                    final List<PellAnt> pooled) throws IOException {
+        final int n = ants.size();
+        sink.putFloat(colony.getPheromoneRate()).putLong(colony.getMoveCount()).putLong(colony.getEpochCount());
+        sink.putLong(colony.getSeed()).putInt(colony.getWorker()).putInt(colony.getNextId());
+        sink.putInt(n);
+
+        final float[] floats = new float[n];
+        for (int column = 0; column < 6; column++) {
+            for (int i = 0; i < n; i++) {
+                floats[i] = antFloat((PellAnt) ants.get(i), column);
+            }
+            sink.putFloats(floats);
+        }
+        final int[] hitPoints = new int[n];
+        final byte[] carriesFood = new byte[n];
+        final int[] ids = new int[n];
+        final long[] moves = new long[n];
+        for (int i = 0; i < n; i++) {
+            final PellAnt ant = (PellAnt) ants.get(i);
+            hitPoints[i] = ant.getHitPoints();
+            carriesFood[i] = (byte) (ant.hasFood() ? 1 : 0);
+            ids[i] = ant.getId();
+            moves[i] = ant.getMoves();
+        }
+        sink.putInts(hitPoints);
+        sink.put(carriesFood);
+        sink.putInts(ids);
+        sink.putLongs(moves);
+
+        sink.putInt(pooled.size());
+        for (final PellAnt ant : pooled) {
+            sink.putInt(ant.getId());
+        }
+        for (final PellAnt ant : pooled) {
+            sink.putLong(ant.getMoves());
+        }
+    }
+
+    private static float antFloat(final PellAnt ant, final int column) {
+        return switch (column) {
+            case 0 -> ant.getPosition().getX();
+            case 1 -> ant.getPosition().getY();
+            case 2 -> ant.getDirection();
+            case 3 -> ant.getPheromoneRate();
+            case 4 -> ant.getMoveRate();
+            default -> ant.getPheromonesLeft();
+        };
+    }
+
+    private static AntColony readColony(final ByteBuffer buffer, final AntWorld world) throws IOException {
+        final float pheromoneRate = buffer.getFloat();
+        final long moves = buffer.getLong();
+        final long epochs = buffer.getLong();
+        final long seed = buffer.getLong();
+        final int worker = buffer.getInt();
+        final int nextId = buffer.getInt();
+        final int n = buffer.getInt();
+        if (0 > n || (long) n * ANT_BYTES > buffer.remaining()) {
+            throw new IOException("Bad ant count " + n);
+        }
+
+        final float[][] floats = new float[6][n];
+        for (final float[] column : floats) {
+            getFloats(buffer, column);
+        }
+        final int[] hitPoints = new int[n];
+        buffer.asIntBuffer().get(hitPoints);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+        final byte[] carriesFood = new byte[n];
+        buffer.get(carriesFood);
+        final int[] ids = new int[n];
+        buffer.asIntBuffer().get(ids);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+        final long[] antMoves = new long[n];
+        buffer.asLongBuffer().get(antMoves);
+        buffer.position(buffer.position() + n * Long.BYTES);
+
+        final List<PellAnt> ants = new ArrayList<>(n);
+        try {
+            for (int i = 0; i < n; i++) {
+                ants.add(new PellAnt(new Position(floats[0][i], floats[1][i]), floats[2][i], floats[3][i],
+                        floats[4][i], floats[5][i], hitPoints[i], 0 != carriesFood[i], seed, worker, ids[i],
+                        antMoves[i]));
+            }
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Bad ant", e);
+        }
+
+        final int m = buffer.getInt();
+        if (0 > m || (long) m * POOLED_BYTES > buffer.remaining()) {
+            throw new IOException("Bad pooled ant count " + m);
+        }
+        final int[] pooledIds = new int[m];
+        for (int i = 0; i < m; i++) {
+            pooledIds[i] = buffer.getInt();
+        }
+        final List<PellAnt> pooled = new ArrayList<>(m);
+        try {
+            for (int i = 0; i < m; i++) {
+                // Dead; hatching sets everything but the id and moves.
+                pooled.add(new PellAnt(new Position(0, 0), 0.0f, 0.0f, 0.0f, 0.0f, 0, false, seed, worker,
+                        pooledIds[i], buffer.getLong()));
+            }
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Bad pooled ant", e);
+        }
+        final AntColony colony = new AntColony(ants, pooled, pheromoneRate, world, seed, moves, epochs, nextId);
+        if (worker != colony.getWorker()) {
+            throw new IOException("Colony worker does not match this version of the colony");
+        }
+        return colony;
+    }
+
+
+    private static void getFloats(final ByteBuffer buffer, final float[] values) {
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Float.BYTES);
+    }
+
+    /**
+     * Writes little endian values to a channel through a buffer of {@code CHUNK_BYTES}, in order.
+     */
+    private static final class Sink {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        Sink(final FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        Sink putInt(final int value) throws IOException {
+            room(Integer.BYTES).putInt(value);
+            return this;
+        }
+
+        Sink putLong(final long value) throws IOException {
+            room(Long.BYTES).putLong(value);
+            return this;
+        }
+
+        Sink putFloat(final float value) throws IOException {
+            room(Float.BYTES).putFloat(value);
+            return this;
+        }
+
+        void putInts(final int[] values) throws IOException {
+            for (int from = 0; from < values.length; ) {
+                final int n = Math.min(values.length - from, room(Integer.BYTES).remaining() / Integer.BYTES);
+                this.buffer.asIntBuffer().put(values, from, n);
+                this.buffer.position(this.buffer.position() + n * Integer.BYTES);
+                from += n;
+            }
+        }
+
+        void putLongs(final long[] values) throws IOException {
+            for (int from = 0; from < values.length; ) {
+                final int n = Math.min(values.length - from, room(Long.BYTES).remaining() / Long.BYTES);
+                this.buffer.asLongBuffer().put(values, from, n);
+                this.buffer.position(this.buffer.position() + n * Long.BYTES);
+                from += n;
+            }
+        }
+
+        void putFloats(final float[] values) throws IOException {
+            for (int from = 0; from < values.length; ) {
+                final int n = Math.min(values.length - from, room(Float.BYTES).remaining() / Float.BYTES);
+                this.buffer.asFloatBuffer().put(values, from, n);
+                this.buffer.position(this.buffer.position() + n * Float.BYTES);
+                from += n;
+            }
+        }
+
+        void put(final byte[] values) throws IOException {
+            for (int from = 0; from < values.length; ) {
+                final int n = Math.min(values.length - from, room(1).remaining());
+                this.buffer.put(values, from, n);
+                from += n;
+            }
+        }
+
+        /**
+         * @return The buffer, flushed first if it has fewer than {@code bytes} left.
+         */
+        private ByteBuffer room(final int bytes) throws IOException {
+            if (bytes > this.buffer.remaining()) {
+                flush();
+            }
+            return this.buffer;
+        }
+
+        void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+    }
+}
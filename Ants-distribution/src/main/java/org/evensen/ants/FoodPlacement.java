@@ -0,0 +1,190 @@
+package org.evensen.ants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Places food sources at random so that they keep apart, Poisson-disk style, and finds the source at a position.
+ *
+ * <p>
+ * A candidate centre is drawn uniformly and rejected while the square of {@code radius} cells around it overlaps the
+ * disk of a source or an obstacle. Accepted centres are therefore more than {@code radius} cells apart along some axis,
+ * so a background grid of cells {@code radius + 1} wide holds at most one source each, and the sources that may
+ * conflict with a candidate or contain a position are found in a few grid cells rather than by scanning every source.
+ * A placement takes expected constant time as long as the world is not close to full.
+ * </p>
+ *
+ * <p>
+ * Disks are stamped into and cleared from the food matrix as one span per column, with the spans of a disk worked out
+ * once.
+ * </p>
+ */
+final class FoodPlacement {
+    // Far more than any world with room for one more source needs.
+    private static final int MAX_ATTEMPTS = 1_000_000;
+
+    private final int width;
+    private final int height;
+    private final int radius;
+    private final int gridSize;
+    private final int gridWidth;
+    private final FoodSource[] grid;
+    // Half the height of the disk in the column dx cells from its centre, at index dx + radius.
+    private final int[] spans;
+    private final boolean[] obstacles;
+    private final Konadare192RNG random;
+
+    /**
+     * @param obstacles The obstacles of the world, row by row; kept and read, not edited.
+     * @param random    Draws the candidate centres.
+     */
+    FoodPlacement(final int width, final int height, final int radius, final boolean[] obstacles,
+                  final Konadare192RNG random) {
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.gridSize = radius + 1;
+        this.gridWidth = (width + this.gridSize - 1) / this.gridSize;
+        this.grid = new FoodSource[this.gridWidth * ((height + this.gridSize - 1) / this.gridSize)];
+        this.spans = new int[2 * radius + 1];
+        for (int dx = -radius; dx <= radius; dx++) {
+            int h = 0;
+            while (radius * radius >= dx * dx + (h + 1) * (h + 1)) {
+                h++;
+            }
+            this.spans[dx + radius] = h;
+        }
+        this.obstacles = obstacles;
+        this.random = random;
+    }
+
+    /**
+     * Places {@code count} new sources.
+     *
+     * @throws IllegalStateException If there is no room left for a source.
+     */
+    List<FoodSource> place(final int count) {
+        final List<FoodSource> placed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            placed.add(place());
+        }
+        return placed;
+    }
+
+    /**
+     * Places a new source.
+     *
+     * @throws IllegalStateException If there is no room left for a source.
+     */
+    FoodSource place() {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            final int x = this.random.nextInt(this.radius, this.width - this.radius);
+            final int y = this.random.nextInt(this.radius, this.height - this.radius);
+            if (!isOccupied(x, y)) {
+                final FoodSource source = new FoodSource(new Position(x, y));
+                add(source);
+                return source;
+            }
+        }
+        throw new IllegalStateException("No room for another food source");
+    }
+
+    /**
+     * Adds a source placed earlier, e.g. restored from a checkpoint.
+     *
+     * @throws IllegalArgumentException If it is off the map or too close to a source already added.
+     */
+    void add(final FoodSource source) {
+        if (!source.getPosition().isInBounds(this.width, this.height)) {
+            throw new IllegalArgumentException("Food source at " + source.getPosition() + " is off the map");
+        }
+        final int cell = gridCell((int) source.getPosition().getX(), (int) source.getPosition().getY());
+        if (null != this.grid[cell]) {
+            throw new IllegalArgumentException("Food sources at " + source.getPosition() + " and "
+                    + this.grid[cell].getPosition() + " overlap");
+        }
+        this.grid[cell] = source;
+    }
+
+    void remove(final FoodSource source) {
+        final int cell = gridCell((int) source.getPosition().getX(), (int) source.getPosition().getY());
+        if (source == this.grid[cell]) {
+            this.grid[cell] = null;
+        }
+    }
+
+    /**
+     * @return The source whose disk contains {@code p}, or {@code null} if there is none.
+     */
+    FoodSource find(final Position p) {
+        final int x = (int) p.getX();
+        final int y = (int) p.getY();
+        final int gx1 = Math.min(this.gridWidth - 1, (x + this.radius) / this.gridSize);
+        final int gy1 = Math.min(this.grid.length / this.gridWidth - 1, (y + this.radius) / this.gridSize);
+        for (int gy = Math.max(0, y - this.radius) / this.gridSize; gy <= gy1; gy++) {
+            for (int gx = Math.max(0, x - this.radius) / this.gridSize; gx <= gx1; gx++) {
+                final FoodSource source = this.grid[gy * this.gridWidth + gx];
+                if (null != source && p.isWithinRadius(source.getPosition(), this.radius)) {
+                    return source;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the cells of the disk around {@code centre} in {@code foodMatrix}, indexed {@code [x][y]}, to {@code food}.
+     */
+    void stamp(final boolean[][] foodMatrix, final Position centre, final boolean food) {
+        final int x = (int) centre.getX();
+        final int y = (int) centre.getY();
+        for (int a = Math.max(0, x - this.radius); a <= Math.min(this.width - 1, x + this.radius); a++) {
+            final int h = this.spans[a - x + this.radius];
+            Arrays.fill(foodMatrix[a], Math.max(0, y - h), Math.min(this.height - 1, y + h) + 1, food);
+        }
+    }
+
+    /**
+     * @return {@code true} if the square of {@code radius} cells around {@code <x, y>} overlaps a source's disk or an
+     * obstacle.
+     */
+    private boolean isOccupied(final int x, final int y) {
+        // Disks that reach into the square have their centres within twice the radius.
+        final int reach = 2 * this.radius;
+        final int gx1 = Math.min(this.gridWidth - 1, (x + reach) / this.gridSize);
+        final int gy1 = Math.min(this.grid.length / this.gridWidth - 1, (y + reach) / this.gridSize);
+        for (int gy = Math.max(0, y - reach) / this.gridSize; gy <= gy1; gy++) {
+            for (int gx = Math.max(0, x - reach) / this.gridSize; gx <= gx1; gx++) {
+                final FoodSource source = this.grid[gy * this.gridWidth + gx];
+                if (null != source && overlaps(x, y, source.getPosition())) {
+                    return true;
+                }
+            }
+        }
+        for (int b = y - this.radius; b <= y + this.radius; b++) {
+            for (int a = b * this.width + x - this.radius; a <= b * this.width + x + this.radius; a++) {
+                if (this.obstacles[a]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the disk around {@code centre} holds a cell of the square of {@code radius} cells around
+     * {@code <x, y>}; the cell of the square closest to the centre is the one to check.
+     */
+    private boolean overlaps(final int x, final int y, final Position centre) {
+        final int cx = (int) centre.getX();
+        final int cy = (int) centre.getY();
+        final int dx = cx - Math.max(x - this.radius, Math.min(x + this.radius, cx));
+        final int dy = cy - Math.max(y - this.radius, Math.min(y + this.radius, cy));
+        return this.radius * this.radius >= dx * dx + dy * dy;
+    }
+
+    private int gridCell(final int x, final int y) {
+        return y / this.gridSize * this.gridWidth + x / this.gridSize;
+    }
+}
@@ -9,11 +9,20 @@ public class FoodSource {
         this.position = position;
     }
 
+    FoodSource(final Position position, final int foodAmount) {
+        this.position = position;
+        this.foodAmount = foodAmount;
+    }
+
 
     public Position getPosition(){
         return this.position;
     }
 
+    int getFoodAmount() {
+        return this.foodAmount;
+    }
+
     public static int getRadius(){
         return radius;
     }
@@ -1,60 +1,79 @@
 package org.evensen.ants;
 
+import java.util.Objects;
+
+/**
+ * Fractal Perlin noise: octaves of gradient noise of doubling frequency and falling amplitude, summed.
+ *
+ * <p>
+ * The gradient at a lattice corner is one of {@code GRADIENTS} fixed unit vectors, picked by hashing the corner, the
+ * octave and the seed, so nothing is allocated and no trigonometry is done per sample. {@code fillRow} and
+ * {@code fillRegion} evaluate many samples at once; they walk each octave's lattice along the row and only hash the
+ * corners of a lattice cell when the samples enter it, which is once per {@code 1 / (dx * 2^octave)} samples.
+ * </p>
+ */
 public enum FractalNoise {
     ;
 
-    private static double hash(final double x0, final double y0, final long seed) {
-        long x = (long) x0;
-        final long y = (long) y0;
-        for (int i = 1; 5 > i; i++) {
-            x += i ^ seed;
-            x *= 1111111111111111111L;
-            x += y;
-            x ^= x >>> 29;
-        }
-        return (x & ((1L << 53) - 1)) / (double) (1L << 53);
-    }
+    private static final int GRADIENTS = 256;
+    private static final double[] GRADIENT_X = new double[GRADIENTS];
+    private static final double[] GRADIENT_Y = new double[GRADIENTS];
 
-    private static double interpolate(final double a0, final double a1, final double w) {
-        return (a1 - a0) * ((w * (w * 6.0 - 15.0) + 10.0) * w * w * w) + a0;
+    static {
+        for (int i = 0; i < GRADIENTS; i++) {
+            final double angle = i * GraphicsMath.TAU / GRADIENTS;
+            GRADIENT_X[i] = Math.cos(angle);
+            GRADIENT_Y[i] = Math.sin(angle);
+        }
     }
 
-    /* Create pseudorandom direction vector
+    /**
+     * @return The index of the gradient of lattice corner {@code <ix, iy>} of octave {@code octave}.
      */
-    private static Vector2 randomGradient(final long ix, final long iy, final long seed) {
-        final double random = hash(ix, iy, seed) * GraphicsMath.TAU;
-        return new Vector2(Math.cos(random), Math.sin(random));
+    private static int gradient(final long ix, final long iy, final int octave, final long seed) {
+        long h = ix * 0x9E3779B97F4A7C15L + iy * 0xC2B2AE3D27D4EB4FL + (seed ^ (long) octave << 56);
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        return (int) (h >>> 56);
     }
 
-    private static double dotGridGradient(final long ix, final long iy, final double x, final double y, final long seed) {
-        final Vector2 gradient = randomGradient(ix, iy, seed);
-
-        // Compute the distance vector
-        final double dx = x - ix;
-        final double dy = y - iy;
-
-        // Compute the dot-product
-        return dx * gradient.x + dy * gradient.y;
+    private static double fade(final double t) {
+        return (t * (t * 6.0 - 15.0) + 10.0) * t * t * t;
     }
 
-    private static double perlin(final double x, final double y, final long seed) {
-        final long x0 = (long) x;
-        final long x1 = x0 + 1;
-        final long y0 = (long) y;
-        final long y1 = y0 + 1;
+    private static double perlin(final double x, final double y, final int octave, final long seed) {
+        final double floorX = Math.floor(x);
+        final double floorY = Math.floor(y);
+        final long x0 = (long) floorX;
+        final long y0 = (long) floorY;
+        final double fx = x - floorX;
+        final double fy = y - floorY;
 
-        final double sx = x - x0;
-        final double sy = y - y0;
-
-        final double n00 = dotGridGradient(x0, y0, x, y, seed);
-        final double n01 = dotGridGradient(x1, y0, x, y, seed);
-        final double ix0 = interpolate(n00, n01, sx);
-
-        final double n10 = dotGridGradient(x0, y1, x, y, seed);
-        final double n11 = dotGridGradient(x1, y1, x, y, seed);
-        final double ix1 = interpolate(n10, n11, sx);
+        final int g00 = gradient(x0, y0, octave, seed);
+        final int g10 = gradient(x0 + 1, y0, octave, seed);
+        final int g01 = gradient(x0, y0 + 1, octave, seed);
+        final int g11 = gradient(x0 + 1, y0 + 1, octave, seed);
+        return corners(GRADIENT_X[g00], GRADIENT_Y[g00], GRADIENT_X[g10], GRADIENT_Y[g10],
+                GRADIENT_X[g01], GRADIENT_Y[g01], GRADIENT_X[g11], GRADIENT_Y[g11], fx, fy, fade(fy));
+    }
 
-        return interpolate(ix0, ix1, sy) * 0.5 + 0.5;
+    /**
+     * Interpolates the dot products of the corner gradients with the distance vectors to {@code <fx, fy>}, a
+     * position within the lattice cell, and maps the result to [0, 1].
+     */
+    private static double corners(final double g00x, final double g00y, final double g10x, final double g10y,
+                                  final double g01x, final double g01y, final double g11x, final double g11y,
+                                  final double fx, final double fy, final double v) {
+        final double u = fade(fx);
+        final double n00 = g00x * fx + g00y * fy;
+        final double n10 = g10x * (fx - 1.0) + g10y * fy;
+        final double n01 = g01x * fx + g01y * (fy - 1.0);
+        final double n11 = g11x * (fx - 1.0) + g11y * (fy - 1.0);
+        final double ix0 = n00 + (n10 - n00) * u;
+        final double ix1 = n01 + (n11 - n01) * u;
+        return (ix0 + (ix1 - ix0) * v) * 0.5 + 0.5;
     }
 
     /**
@@ -73,20 +92,105 @@ public enum FractalNoise {
         double ampSum = 0.0;
         double ampl = persistence;
         for (int i = firstOctave; i <= lastOctave; i++) {
-            acc += perlin(x * (1 << i), y * (1 << i), seed) * ampl;
+            acc += perlin(x * (1 << i), y * (1 << i), i, seed) * ampl;
             ampSum += ampl;
             ampl *= persistence;
         }
         return acc / ampSum;
     }
 
-    private static class Vector2 {
-        final double x;
-        final double y;
+    /**
+     * Fills {@code row[from, to)} with the noise at {@code <x0 + (i - from) * dx, y>}, for index {@code i}. The values
+     * equal those of {@code getNoise} up to float precision.
+     *
+     * @see #getNoise(double, double, double, int, int, long)
+     */
+    public static void fillRow(final float[] row, final int from, final int to, final double x0, final double dx,
+                               final double y, final double persistence, final int firstOctave, final int lastOctave,
+                               final long seed) {
+        Objects.checkFromToIndex(from, to, row.length);
+        for (int i = from; i < to; i++) {
+            row[i] = 0.0f;
+        }
+        double ampSum = 0.0;
+        double ampl = persistence;
+        for (int octave = firstOctave; octave <= lastOctave; octave++) {
+            addOctave(row, from, to, x0, dx, y, octave, ampl, seed);
+            ampSum += ampl;
+            ampl *= persistence;
+        }
+        final float scale = (float) (1.0 / ampSum);
+        for (int i = from; i < to; i++) {
+            row[i] *= scale;
+        }
+    }
+
+    /**
+     * Fills {@code region} row by row with a {@code width} by {@code height} grid of noise samples, {@code step} apart
+     * and starting at {@code <x0, y0>}: sample {@code <i, j>} at index {@code j * width + i} is the noise at
+     * {@code <x0 + i * step, y0 + j * step>}.
+     *
+     * @see #fillRow(float[], int, int, double, double, double, double, int, int, long)
+     */
+    public static void fillRegion(final float[] region, final int width, final int height, final double x0,
+                                  final double y0, final double step, final double persistence, final int firstOctave,
+                                  final int lastOctave, final long seed) {
+        Objects.checkFromIndexSize(0, width * height, region.length);
+        for (int j = 0; j < height; j++) {
+            fillRow(region, j * width, (j + 1) * width, x0, step, y0 + j * step, persistence, firstOctave, lastOctave,
+                    seed);
+        }
+    }
+
+    private static void addOctave(final float[] row, final int from, final int to, final double x0, final double dx,
+                                  final double y, final int octave, final double amplitude, final long seed) {
+        final double frequency = 1 << octave;
+        final double sy = y * frequency;
+        final double floorY = Math.floor(sy);
+        final long y0 = (long) floorY;
+        final double fy = sy - floorY;
+        final double v = fade(fy);
 
-        Vector2(double x, double y) {
-            this.x = x;
-            this.y = y;
+        long cell = 0;
+        boolean loaded = false;
+        double g00x = 0.0;
+        double g00y = 0.0;
+        double g10x = 0.0;
+        double g10y = 0.0;
+        double g01x = 0.0;
+        double g01y = 0.0;
+        double g11x = 0.0;
+        double g11y = 0.0;
+        for (int i = from; i < to; i++) {
+            final double sx = (x0 + (i - from) * dx) * frequency;
+            final double floorX = Math.floor(sx);
+            final long x = (long) floorX;
+            if (!loaded || x != cell) {
+                if (loaded && x == cell + 1) {
+                    // Stepped into the next cell: its left corners are the right corners of the last one.
+                    g00x = g10x;
+                    g00y = g10y;
+                    g01x = g11x;
+                    g01y = g11y;
+                } else {
+                    final int g00 = gradient(x, y0, octave, seed);
+                    final int g01 = gradient(x, y0 + 1, octave, seed);
+                    g00x = GRADIENT_X[g00];
+                    g00y = GRADIENT_Y[g00];
+                    g01x = GRADIENT_X[g01];
+                    g01y = GRADIENT_Y[g01];
+                }
+                final int g10 = gradient(x + 1, y0, octave, seed);
+                final int g11 = gradient(x + 1, y0 + 1, octave, seed);
+                g10x = GRADIENT_X[g10];
+                g10y = GRADIENT_Y[g10];
+                g11x = GRADIENT_X[g11];
+                g11y = GRADIENT_Y[g11];
+                cell = x;
+                loaded = true;
+            }
+            row[i] += (float) (corners(g00x, g00y, g10x, g10y, g01x, g01y, g11x, g11y, sx - floorX, fy, v)
+                    * amplitude);
         }
     }
 }
@@ -0,0 +1,348 @@
+package org.evensen.ants;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Encodes {@code SimulationFrame}s as the records of a recording, and decodes them again. See {@code FrameRecorder}.
+ *
+ * <p>
+ * Every value is first quantized: pheromone levels to {@code PHEROMONE_LEVELS} steps between 0 and 1, ant positions
+ * to {@code 1 / POSITION_SCALE} of a cell and directions to {@code DIRECTION_LEVELS} steps of a full turn. A record
+ * then holds, for each of the food pheromone and foraging pheromone columns, the differences to the same column of
+ * the previous record. Most cells do not change between two records, so the differences are written as runs: the
+ * number of unchanged values, then the zigzag encoded difference of the next value, both as unsigned LEB128 varints.
+ * </p>
+ *
+ * <p>
+ * The colony sorts its ants by position every epoch and drops the dead ones, so the ants are written in order of
+ * their ids, see {@code SimulationFrame.getAntId}, and their x, y, direction and flag columns hold the differences to
+ * the same ant in the previous record, or to zero for an ant that was not in it. The ids themselves are written as
+ * the gaps between consecutive ids, which are mostly zero. A keyframe is encoded against all zeros instead of the
+ * previous record, so it can be decoded on its own. Every {@code KEYFRAME_INTERVAL}th record is a keyframe, and so is
+ * a record whose world size differs from the previous one.
+ * </p>
+ *
+ * <pre>
+ * long epoch, byte keyframe, int width, int height, int ants
+ * runs of food pheromone, foraging pheromone, ant id gaps, ant x, ant y, ant direction, ant flags
+ * </pre>
+ *
+ * <p>
+ * An encoder and a decoder each keep the quantized values of the last record they have seen, so a codec must see
+ * the records of a recording in order from a keyframe on.
+ * </p>
+ */
+final class FrameCodec {
+    static final int KEYFRAME_INTERVAL = 32;
+    static final int PHEROMONE_LEVELS = 4095;
+    static final int POSITION_SCALE = 64;
+    static final int DIRECTION_LEVELS = 1 << 12;
+    private static final float TAU = (float) (2.0 * Math.PI);
+    private static final int HEADER_BYTES = Long.BYTES + 1 + 3 * Integer.BYTES;
+    private static final int MAX_RUN_BYTES = 10;
+    private static final int COLUMNS = 7;
+    // The column of the ant id gaps; the columns before it are the pheromones.
+    private static final int IDS = 2;
+    // The columns from this one on are those of the ants, kept by id between records.
+    private static final int ANT_COLUMNS = 3;
+
+    private long epoch;
+    private int width;
+    private int height;
+    private int antCount;
+    private int sinceKeyframe;
+    private boolean keyframe;
+    // The quantized columns of the last record, and scratch space for the next one. The ant columns are in id order.
+    private int[][] previous;
+    private int[][] current;
+    // The quantized ant columns by id, for the ids whose stamp is the number of the record they were last in.
+    private int[][] byId;
+    private int[] stamps;
+    private int records;
+    // Frame indices of the ants in id order while encoding, keyed by id in the upper half.
+    private long[] order;
+    private byte[] out;
+    private int length;
+
+    FrameCodec() {
+        this.previous = new int[COLUMNS][0];
+        this.current = new int[COLUMNS][0];
+        this.byId = new int[COLUMNS][0];
+        this.stamps = new int[0];
+        this.order = new long[0];
+        this.out = new byte[1 << 16];
+        this.sinceKeyframe = KEYFRAME_INTERVAL;
+    }
+
+    /**
+     * Encodes {@code frame} as the next record. The record is in the first {@code getLength()} bytes of
+     * {@code getBytes()} until the next call.
+     */
+    void encode(final SimulationFrame frame) {
+        final int cells = frame.getWidth() * frame.getHeight();
+        final int n = frame.getAntCount();
+        this.keyframe = KEYFRAME_INTERVAL <= this.sinceKeyframe || frame.getWidth() != this.width
+                || frame.getHeight() != this.height;
+        ensureColumns(cells, n);
+        if (this.keyframe) {
+            Arrays.fill(this.previous[0], 0);
+            Arrays.fill(this.previous[1], 0);
+        }
+        final int[] food = this.current[0];
+        final int[] foraging = this.current[1];
+        for (int i = 0; i < cells; i++) {
+            food[i] = quantizePheromone(frame.getFoodPheromone(i));
+            foraging[i] = quantizePheromone(frame.getForagingPheromone(i));
+        }
+        if (this.order.length < n) {
+            this.order = new long[n];
+        }
+        for (int i = 0; i < n; i++) {
+            this.order[i] = (long) frame.getAntId(i) << Integer.SIZE | i;
+        }
+        Arrays.sort(this.order, 0, n);
+        final int[] gaps = this.current[IDS];
+        final int[] x = this.current[3];
+        final int[] y = this.current[4];
+        final int[] direction = this.current[5];
+        final int[] flags = this.current[6];
+        int lastId = -1;
+        for (int k = 0; k < n; k++) {
+            final int id = (int) (this.order[k] >>> Integer.SIZE);
+            final int i = (int) this.order[k];
+            if (0 > id || id == lastId) {
+                throw new IllegalArgumentException("Ant ids must be unique and not negative (was " + id + ")");
+            }
+            gaps[k] = id - lastId - 1;
+            lastId = id;
+            x[k] = Math.round(frame.getAntX(i) * POSITION_SCALE);
+            y[k] = Math.round(frame.getAntY(i) * POSITION_SCALE);
+            direction[k] = Math.round(frame.getAntDirection(i) * (DIRECTION_LEVELS / TAU)) & (DIRECTION_LEVELS - 1);
+            flags[k] = frame.getAntFlags(i);
+        }
+        // The previous values of the ants of this record, in its order.
+        Arrays.fill(this.previous[IDS], 0, n, 0);
+        lastId = -1;
+        for (int k = 0; k < n; k++) {
+            lastId += gaps[k] + 1;
+            loadAnt(k, lastId);
+        }
+
+        this.epoch = frame.getEpoch();
+        this.width = frame.getWidth();
+        this.height = frame.getHeight();
+        this.antCount = n;
+        this.length = 0;
+        ensureOut(HEADER_BYTES);
+        ByteBuffer.wrap(this.out).order(ByteOrder.LITTLE_ENDIAN).putLong(this.epoch)
+                .put((byte) (this.keyframe ? 1 : 0)).putInt(this.width).putInt(this.height).putInt(n);
+        this.length = HEADER_BYTES;
+        writeRuns(food, this.previous[0], cells);
+        writeRuns(foraging, this.previous[1], cells);
+        for (int c = IDS; c < COLUMNS; c++) {
+            writeRuns(this.current[c], this.previous[c], n);
+        }
+        storeAnts(this.current, n);
+        swap();
+    }
+
+    /**
+     * Sets entry {@code k} of the previous ant columns to the values of ant {@code id} in the last record, or to zero
+     * if it was not in it or this is a keyframe.
+     */
+    private void loadAnt(final int k, final int id) {
+        final boolean known = !this.keyframe && id < this.stamps.length && this.records == this.stamps[id];
+        for (int c = ANT_COLUMNS; c < COLUMNS; c++) {
+            this.previous[c][k] = known ? this.byId[c][id] : 0;
+        }
+    }
+
+    /**
+     * Remembers the ant columns of the record just encoded or decoded by id, and counts the record.
+     */
+    private void storeAnts(final int[][] columns, final int n) {
+        this.records++;
+        int id = -1;
+        for (int k = 0; k < n; k++) {
+            id += columns[IDS][k] + 1;
+            if (id >= this.stamps.length) {
+                final int size = Math.max(id + 1, 2 * this.stamps.length);
+                this.stamps = Arrays.copyOf(this.stamps, size);
+                for (int c = ANT_COLUMNS; c < COLUMNS; c++) {
+                    this.byId[c] = Arrays.copyOf(this.byId[c], size);
+                }
+            }
+            this.stamps[id] = this.records;
+            for (int c = ANT_COLUMNS; c < COLUMNS; c++) {
+                this.byId[c][id] = columns[c][k];
+            }
+        }
+    }
+
+    /**
+     * @return Whether the last record encoded or decoded is a keyframe.
+     */
+    boolean isKeyframe() {
+        return this.keyframe;
+    }
+
+    byte[] getBytes() {
+        return this.out;
+    }
+
+    int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Decodes the record at the position of {@code record}, which must be a keyframe or follow the last record
+     * decoded.
+     *
+     * @throws IllegalArgumentException If the record is malformed.
+     */
+    void decode(final ByteBuffer record) {
+        this.epoch = record.getLong();
+        this.keyframe = 0 != record.get();
+        final int w = record.getInt();
+        final int h = record.getInt();
+        final int n = record.getInt();
+        if (0 > w || 0 > h || 0 > n || (long) w * h > Integer.MAX_VALUE
+                || (!this.keyframe && (w != this.width || h != this.height))) {
+            throw new IllegalArgumentException("Malformed record at epoch " + this.epoch);
+        }
+        this.width = w;
+        this.height = h;
+        this.antCount = n;
+        ensureColumns(w * h, n);
+        for (int c = 0; c < IDS; c++) {
+            if (this.keyframe) {
+                Arrays.fill(this.previous[c], 0);
+            }
+            readRuns(record, this.previous[c], w * h);
+        }
+        final int[] gaps = this.previous[IDS];
+        Arrays.fill(gaps, 0, n, 0);
+        readRuns(record, gaps, n);
+        long id = -1;
+        for (int k = 0; k < n; k++) {
+            id += (gaps[k] & 0xFFFFFFFFL) + 1;
+            if (Integer.MAX_VALUE < id) {
+                throw new IllegalArgumentException("Malformed ant ids at epoch " + this.epoch);
+            }
+            loadAnt(k, (int) id);
+        }
+        for (int c = ANT_COLUMNS; c < COLUMNS; c++) {
+            readRuns(record, this.previous[c], n);
+        }
+        storeAnts(this.previous, n);
+    }
+
+    /**
+     * Fills {@code frame} with the last record decoded.
+     */
+    void fill(final SimulationFrame frame) {
+        frame.reset(this.epoch, this.width, this.height, this.antCount);
+        final int[] food = this.previous[0];
+        final int[] foraging = this.previous[1];
+        for (int i = 0; i < this.width * this.height; i++) {
+            frame.setPheromones(i, food[i] / (float) PHEROMONE_LEVELS, foraging[i] / (float) PHEROMONE_LEVELS);
+        }
+        int id = -1;
+        for (int i = 0; i < this.antCount; i++) {
+            id += this.previous[IDS][i] + 1;
+            frame.setAnt(i, id, this.previous[3][i] / (float) POSITION_SCALE,
+                    this.previous[4][i] / (float) POSITION_SCALE, this.previous[5][i] * (TAU / DIRECTION_LEVELS),
+                    (byte) this.previous[6][i]);
+        }
+    }
+
+    private static int quantizePheromone(final float level) {
+        return Math.max(0, Math.min(PHEROMONE_LEVELS, Math.round(level * PHEROMONE_LEVELS)));
+    }
+
+    private void ensureColumns(final int cells, final int ants) {
+        for (int c = 0; c < COLUMNS; c++) {
+            // The number of ants changes as they die, so their columns only ever grow.
+            if (IDS > c ? this.previous[c].length != cells : this.previous[c].length < ants) {
+                this.previous[c] = new int[IDS > c ? cells : ants];
+                this.current[c] = new int[IDS > c ? cells : ants];
+            }
+        }
+    }
+
+    private void swap() {
+        final int[][] t = this.previous;
+        this.previous = this.current;
+        this.current = t;
+        this.sinceKeyframe = this.keyframe ? 1 : this.sinceKeyframe + 1;
+    }
+
+    private void ensureOut(final int bytes) {
+        if (this.length + bytes > this.out.length) {
+            this.out = Arrays.copyOf(this.out, Math.max(this.length + bytes, 2 * this.out.length));
+        }
+    }
+
+    private void writeRuns(final int[] values, final int[] previousValues, final int n) {
+        int i = 0;
+        while (true) {
+            final int from = i;
+            while (i < n && values[i] == previousValues[i]) {
+                i++;
+            }
+            ensureOut(MAX_RUN_BYTES);
+            writeVarint(i - from);
+            if (i == n) {
+                return;
+            }
+            final int d = values[i] - previousValues[i];
+            writeVarint((d << 1) ^ (d >> 31));
+            i++;
+            if (i == n) {
+                return;
+            }
+        }
+    }
+
+    private void writeVarint(final int value) {
+        int v = value;
+        while (0 != (v & ~0x7F)) {
+            this.out[this.length++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        this.out[this.length++] = (byte) v;
+    }
+
+    private static void readRuns(final ByteBuffer record, final int[] values, final int n) {
+        int i = 0;
+        while (true) {
+            i += readVarint(record);
+            if (i == n) {
+                return;
+            }
+            if (0 > i || i > n) {
+                throw new IllegalArgumentException("Malformed run");
+            }
+            final int z = readVarint(record);
+            values[i] += (z >>> 1) ^ -(z & 1);
+            i++;
+            if (i == n) {
+                return;
+            }
+        }
+    }
+
+    private static int readVarint(final ByteBuffer record) {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            final byte b = record.get();
+            value |= (b & 0x7F) << shift;
+            if (0 <= b) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,54 @@
+package org.evensen.ants;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer handing {@code SimulationFrame}s from the model thread to the view thread.
+ *
+ * <p>
+ * There is one back frame owned by the writer, one front frame owned by the reader and one frame in the middle that
+ * is swapped atomically with either of them. Neither side ever waits for the other: the writer always has a frame to
+ * fill, and the reader always has the latest published frame (or the one it already holds if nothing new has been
+ * published). Exactly one thread may publish and exactly one thread may read.
+ * </p>
+ */
+public final class FrameExchange {
+    private static final int INDEX_MASK = 0b011;
+    private static final int FRESH = 0b100;
+
+    private final SimulationFrame[] frames;
+    private final AtomicInteger middle;
+    private int back;
+    private int front;
+
+    public FrameExchange() {
+        this.frames = new SimulationFrame[]{new SimulationFrame(), new SimulationFrame(), new SimulationFrame()};
+        this.front = 0;
+        this.middle = new AtomicInteger(1);
+        this.back = 2;
+    }
+
+    /**
+     * Captures the current state of {@code colony} and {@code world} and makes it the latest published frame.
+     * Must only be called from the model thread.
+     *
+     * @param epoch The epoch that has just been completed.
+     */
+    public void publish(final long epoch, final AntColony colony, final AntWorld world) {
+        this.frames[this.back].capture(epoch, colony, world);
+        this.back = this.middle.getAndSet(this.back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Gives the most recently published frame. The returned frame stays valid and unchanged until the next call to
+     * this method. Must only be called from the view thread.
+     *
+     * @return The latest frame.
+     */
+    public SimulationFrame latest() {
+        if (0 != (this.middle.get() & FRESH)) {
+            this.front = this.middle.getAndSet(this.front) & INDEX_MASK;
+        }
+        return this.frames[this.front];
+    }
+}
@@ -0,0 +1,140 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a recording made by {@code FrameRecorder}, as of when it is opened.
+ *
+ * <p>
+ * The index is loaded when the log is opened and the segments are memory mapped, so seeking to an epoch is a binary
+ * search in the index followed by decoding the records from the nearest keyframe before it. Seeking forward from the
+ * last epoch read continues from there instead, so playing a recording back in order decodes every record once.
+ * </p>
+ */
+public final class FrameLog {
+    private final long[] epochs;
+    private final int[] segments;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final boolean[] keyframes;
+    private final List<MappedByteBuffer> mapped;
+    private final FrameCodec codec;
+    private final SimulationFrame frame;
+    private int decoded;
+
+    /**
+     * @throws IOException If {@code directory} holds no recording, or it can not be read.
+     */
+    public FrameLog(final Path directory) throws IOException {
+        final ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(directory.resolve(FrameRecorder.INDEX)))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        // A partly written last entry is ignored.
+        final int n = index.remaining() / FrameRecorder.INDEX_ENTRY_BYTES;
+        this.epochs = new long[n];
+        this.segments = new int[n];
+        this.offsets = new int[n];
+        this.lengths = new int[n];
+        this.keyframes = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            this.epochs[i] = index.getLong();
+            this.segments[i] = index.getInt();
+            this.offsets[i] = index.getInt();
+            this.lengths[i] = index.getInt();
+            this.keyframes[i] = 0 != index.getInt();
+        }
+        if (0 < n && !this.keyframes[0]) {
+            throw new IOException(directory + " does not start with a keyframe");
+        }
+
+        this.mapped = new ArrayList<>();
+        final int segmentCount = 0 == n ? 0 : this.segments[n - 1] + 1;
+        for (int s = 0; s < segmentCount; s++) {
+            try (final FileChannel channel = FileChannel.open(FrameRecorder.segmentPath(directory, s),
+                    StandardOpenOption.READ)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                this.mapped.add(buffer);
+            }
+        }
+        this.codec = new FrameCodec();
+        this.frame = new SimulationFrame();
+        this.decoded = -1;
+    }
+
+    /**
+     * @return The number of recorded epochs.
+     */
+    public int getRecordCount() {
+        return this.epochs.length;
+    }
+
+    /**
+     * @return The epoch of record {@code record}, counting from 0 in the order they were recorded.
+     */
+    public long getEpoch(final int record) {
+        return this.epochs[record];
+    }
+
+    boolean isKeyframe(final int record) {
+        return this.keyframes[record];
+    }
+
+    /**
+     * Gives the last recorded epoch at or before {@code epoch}. Pheromone levels, positions and directions are as
+     * precise as they were quantized to, see {@code FrameCodec}. The returned frame stays valid and unchanged until
+     * the next call to this method.
+     *
+     * @return The recorded frame, or {@code null} if nothing was recorded at or before {@code epoch}.
+     * @throws IOException If the recording is damaged.
+     */
+    public SimulationFrame seek(final long epoch) throws IOException {
+        int low = 0;
+        int high = this.epochs.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (this.epochs[mid] <= epoch) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        final int target = high;
+        if (0 > target) {
+            return null;
+        }
+        int from = target;
+        while (!this.keyframes[from]) {
+            from--;
+        }
+        if (from <= this.decoded && this.decoded <= target) {
+            from = this.decoded + 1;
+        }
+        for (int r = from; r <= target; r++) {
+            decode(r);
+        }
+        this.codec.fill(this.frame);
+        return this.frame;
+    }
+
+    private void decode(final int record) throws IOException {
+        this.decoded = -1;
+        final ByteBuffer buffer = this.mapped.get(this.segments[record]).slice(this.offsets[record],
+                this.lengths[record]).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            this.codec.decode(buffer);
+        } catch (final BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Damaged record of epoch " + this.epochs[record], e);
+        }
+        this.decoded = record;
+    }
+}
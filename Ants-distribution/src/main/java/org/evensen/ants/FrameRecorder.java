@@ -0,0 +1,205 @@
+package org.evensen.ants;
+
+import org.evensen.ants.metrics.Phase;
+import org.evensen.ants.metrics.PhaseClock;
+import org.evensen.ants.metrics.SimulationMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the pheromone levels and ants of every {@code interval}th epoch to a directory, for analysis after the run.
+ * Read the recording back with {@code FrameLog}.
+ *
+ * <p>
+ * The simulation thread only copies the state into a {@code SimulationFrame}; encoding and writing happen on a
+ * background thread. There are two frames to copy into, and when both are still waiting to be written the epoch is
+ * not recorded and counted as dropped, so a slow disk never stalls the model. A dropped epoch leaves a gap in the
+ * recording but does not corrupt it, since every record is encoded against the record written before it, see
+ * {@code FrameCodec}.
+ * </p>
+ *
+ * <p>
+ * Records are appended to segment files {@code segment-000000.log}, {@code segment-000001.log} and so on, written
+ * through the segment's channel, which is opened once per segment. A new segment is started when a record would
+ * take a non-empty one past {@code SEGMENT_BYTES}, so a segment only holds whole records and only a record larger
+ * than that makes one longer. For each record an entry is appended to {@code index.log}, after the record itself has
+ * been written:
+ * </p>
+ *
+ * <pre>
+ * long epoch, int segment, int offset, int length, int keyframe
+ * </pre>
+ *
+ * <p>
+ * {@code record} must only be called from the simulation thread.
+ * </p>
+ */
+public final class FrameRecorder implements AutoCloseable {
+    static final String INDEX = "index.log";
+    static final int INDEX_ENTRY_BYTES = Long.BYTES + 4 * Integer.BYTES;
+    private static final long SEGMENT_BYTES = 256L << 20;
+    private static final int FRAMES = 2;
+
+    private final Path directory;
+    private final long interval;
+    private final BlockingQueue<SimulationFrame> free;
+    private final ExecutorService executor;
+    private final PhaseClock captureClock;
+    private final FileChannel index;
+    private volatile long dropped;
+    private volatile IOException failure;
+
+    // Used by the recorder thread only.
+    private final FrameCodec codec;
+    private final PhaseClock writeClock;
+    private final ByteBuffer entry;
+    private FileChannel segment;
+    private int segmentNumber;
+    private long segmentPosition;
+
+    /**
+     * Starts a new recording in {@code directory}, creating it if needed.
+     *
+     * @param interval Epochs between recorded epochs.
+     * @throws IOException If {@code directory} already holds a recording or can not be written.
+     */
+    public FrameRecorder(final Path directory, final long interval) throws IOException {
+        if (0 >= interval) {
+            throw new IllegalArgumentException("Interval must be positive (was " + interval + ")");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.interval = interval;
+        this.index = FileChannel.open(directory.resolve(INDEX), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.free = new ArrayBlockingQueue<>(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            this.free.add(new SimulationFrame());
+        }
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "recorder");
+            t.setDaemon(true);
+            return t;
+        });
+        this.captureClock = new PhaseClock(SimulationMetrics.global());
+        this.writeClock = new PhaseClock(SimulationMetrics.global());
+        this.codec = new FrameCodec();
+        this.entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.segmentNumber = -1;
+    }
+
+    static Path segmentPath(final Path directory, final int segment) {
+        return directory.resolve(String.format("segment-%06d.log", segment));
+    }
+
+    /**
+     * Records the state after {@code epoch} if it is one of the recorded epochs. Does nothing once writing has
+     * failed; the failure is reported by {@code close}.
+     */
+    public void record(final long epoch, final AntColony colony, final AntWorld world) {
+        if (0 != epoch % this.interval || null != this.failure) {
+            return;
+        }
+        final SimulationFrame frame = this.free.poll();
+        if (null == frame) {
+            this.dropped++;
+            return;
+        }
+        this.captureClock.start();
+        frame.capture(epoch, colony, world);
+        this.captureClock.lap(Phase.RECORD_CAPTURE);
+        this.executor.execute(() -> write(frame));
+    }
+
+    /**
+     * @return The number of epochs that were due to be recorded but were not, because the writer was behind.
+     */
+    public long getDroppedFrames() {
+        return this.dropped;
+    }
+
+    private void write(final SimulationFrame frame) {
+        this.writeClock.start();
+        final long epoch = frame.getEpoch();
+        this.codec.encode(frame);
+        this.free.add(frame);
+        try {
+            append(epoch, this.codec.getBytes(), this.codec.getLength(), this.codec.isKeyframe());
+        } catch (final IOException e) {
+            this.failure = e;
+        }
+        this.writeClock.lap(Phase.RECORD_WRITE);
+    }
+
+    private void append(final long epoch, final byte[] record, final int length, final boolean keyframe)
+            throws IOException {
+        if (null == this.segment || (0 < this.segmentPosition && this.segmentPosition + length > SEGMENT_BYTES)) {
+            finishSegment();
+            this.segmentNumber++;
+            this.segment = FileChannel.open(segmentPath(this.directory, this.segmentNumber),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            this.segmentPosition = 0;
+        }
+        final ByteBuffer bytes = ByteBuffer.wrap(record, 0, length);
+        while (bytes.hasRemaining()) {
+            this.segment.write(bytes);
+        }
+
+        this.entry.clear();
+        this.entry.putLong(epoch).putInt(this.segmentNumber).putInt((int) this.segmentPosition).putInt(length)
+                .putInt(keyframe ? 1 : 0).flip();
+        while (this.entry.hasRemaining()) {
+            this.index.write(this.entry);
+        }
+        this.segmentPosition += length;
+    }
+
+    /**
+     * Flushes the current segment and closes it.
+     */
+    private void finishSegment() throws IOException {
+        if (null != this.segment) {
+            this.segment.force(true);
+            this.segment.close();
+            this.segment = null;
+        }
+    }
+
+    /**
+     * Writes the epochs that are still waiting, and closes the recording.
+     *
+     * @throws IOException If writing failed at any point of the recording.
+     */
+    @Override
+    public void close() throws IOException {
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            finishSegment();
+        } catch (final IOException e) {
+            if (null == this.failure) {
+                this.failure = e;
+            }
+        }
+        this.index.force(true);
+        this.index.close();
+        if (null != this.failure) {
+            throw this.failure;
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package org.evensen.ants;
 
+import java.util.Objects;
 import java.util.random.RandomGenerator.SplittableGenerator;
 import java.util.stream.Stream;
 
 /**
  * An implementation of a very fast, long period generator,
  * "Konadare192Px++".
+ *
+ * <p>
+ * Besides single draws there are bulk methods filling arrays, which keep the state in local variables for the whole
+ * array. A bulk call gives exactly what the same number of single calls would, so the two can be mixed freely.
+ * </p>
+ *
+ * <p>
+ * A substream is keyed by a seed, a worker, an ant and an epoch. The worker, ant and epoch are packed into the high
+ * {@code SUBSTREAM_WORKER_BITS}, {@code SUBSTREAM_ANT_BITS} and {@code SUBSTREAM_EPOCH_BITS} bits of the counter
+ * offset, leaving 2<sup>{@code SUBSTREAM_DRAW_BITS}</sup> draws to each substream, so the substreams of one seed can
+ * not overlap unless one of them draws more than that. Epochs past the epoch bits start a new era, in which the
+ * seed is rekeyed with the era number: substreams of different eras are as independent as those of different seeds,
+ * which is very likely but not proven.
+ * </p>
  */
 public class Konadare192RNG implements SplittableGenerator {
     private static final long KONADARE192_INC = 0xBB67AE8584CAA73BL; /* SQRT3 */
@@ -13,9 +28,73 @@ public class Konadare192RNG implements SplittableGenerator {
     private static final int KONADARE192_R2 = 43;
     private static final long UMASK = (1L << 63) - 1;
     private static final long UMASK_I = (1L << 31) - 1;
+    public static final int SUBSTREAM_WORKER_BITS = 6;
+    public static final int SUBSTREAM_ANT_BITS = 22;
+    public static final int SUBSTREAM_EPOCH_BITS = 24;
+    public static final int SUBSTREAM_DRAW_BITS = Long.SIZE - SUBSTREAM_WORKER_BITS - SUBSTREAM_ANT_BITS
+            - SUBSTREAM_EPOCH_BITS;
+    // Draws between the generators of splits(), allowing 65536 of them before the counter wraps.
+    private static final int SPLIT_JUMP_LOG2 = 48;
+
+    // Ziggurats after Marsaglia & Tsang, "The Ziggurat Method for Generating Random Variables" (2000), with 128
+    // layers for the normal and 256 for the exponential distribution. A draw takes the layer from the low bits of one
+    // nextLong and the value from its high bits, so the two are independent. A value below K[layer] lies inside the
+    // layer's rectangle and is returned as value * W[layer]; only the rest (about 1% of normal and 2% of exponential
+    // draws) needs the wedge test or the tail, see gaussianSlowPath and exponentialSlowPath.
+    private static final int NORMAL_LAYERS = 128;
+    private static final double NORMAL_R = 3.442619855899;
+    private static final double NORMAL_V = 9.91256303526217e-3;
+    private static final int NORMAL_SHIFT = 11;
+    private static final double NORMAL_SCALE = 0x1.0p52;
+    private static final long[] NORMAL_K = new long[NORMAL_LAYERS];
+    private static final double[] NORMAL_W = new double[NORMAL_LAYERS];
+    private static final double[] NORMAL_F = new double[NORMAL_LAYERS];
+    private static final int EXPONENTIAL_LAYERS = 256;
+    private static final double EXPONENTIAL_R = 7.697117470131487;
+    private static final double EXPONENTIAL_V = 3.949659822581572e-3;
+    private static final int EXPONENTIAL_SHIFT = 8;
+    private static final double EXPONENTIAL_SCALE = 0x1.0p56;
+    private static final long[] EXPONENTIAL_K = new long[EXPONENTIAL_LAYERS];
+    private static final double[] EXPONENTIAL_W = new double[EXPONENTIAL_LAYERS];
+    private static final double[] EXPONENTIAL_F = new double[EXPONENTIAL_LAYERS];
+
     private long a, b, c;
-    private boolean hasNextGaussian;
-    private double nextGaussian;
+
+    static {
+        double x = NORMAL_R;
+        double previous = x;
+        final double q = NORMAL_V / Math.exp(-0.5 * x * x);
+        NORMAL_K[0] = (long) ((x / q) * NORMAL_SCALE);
+        NORMAL_K[1] = 0;
+        NORMAL_W[0] = q / NORMAL_SCALE;
+        NORMAL_W[NORMAL_LAYERS - 1] = x / NORMAL_SCALE;
+        NORMAL_F[0] = 1.0;
+        NORMAL_F[NORMAL_LAYERS - 1] = Math.exp(-0.5 * x * x);
+        for (int i = NORMAL_LAYERS - 2; 1 <= i; i--) {
+            x = Math.sqrt(-2.0 * Math.log(NORMAL_V / x + Math.exp(-0.5 * x * x)));
+            NORMAL_K[i + 1] = (long) ((x / previous) * NORMAL_SCALE);
+            previous = x;
+            NORMAL_F[i] = Math.exp(-0.5 * x * x);
+            NORMAL_W[i] = x / NORMAL_SCALE;
+        }
+
+        x = EXPONENTIAL_R;
+        previous = x;
+        final double qe = EXPONENTIAL_V / Math.exp(-x);
+        EXPONENTIAL_K[0] = (long) ((x / qe) * EXPONENTIAL_SCALE);
+        EXPONENTIAL_K[1] = 0;
+        EXPONENTIAL_W[0] = qe / EXPONENTIAL_SCALE;
+        EXPONENTIAL_W[EXPONENTIAL_LAYERS - 1] = x / EXPONENTIAL_SCALE;
+        EXPONENTIAL_F[0] = 1.0;
+        EXPONENTIAL_F[EXPONENTIAL_LAYERS - 1] = Math.exp(-x);
+        for (int i = EXPONENTIAL_LAYERS - 2; 1 <= i; i--) {
+            x = -Math.log(EXPONENTIAL_V / x + Math.exp(-x));
+            EXPONENTIAL_K[i + 1] = (long) ((x / previous) * EXPONENTIAL_SCALE);
+            previous = x;
+            EXPONENTIAL_F[i] = Math.exp(-x);
+            EXPONENTIAL_W[i] = x / EXPONENTIAL_SCALE;
+        }
+    }
 
     public Konadare192RNG(final long seed) {
         final long[] eSeed = {seed, seed + 1, seed + 2};
@@ -31,6 +110,86 @@ public class Konadare192RNG implements SplittableGenerator {
         this.c = c;
     }
 
+    /**
+     * @return A generator continuing from a state given by {@code getState}.
+     */
+    static Konadare192RNG fromState(final long[] state) {
+        return new Konadare192RNG(state[0], state[1], state[2]);
+    }
+
+    /**
+     * @return The words {@code a}, {@code b} and {@code c} of the current state.
+     */
+    long[] getState() {
+        return new long[]{this.a, this.b, this.c};
+    }
+
+    /**
+     * @return A generator at the start of the substream for {@code (seed, worker, antId, epoch)}, see the class
+     * documentation for the layout.
+     */
+    public static Konadare192RNG substream(final long seed, final int worker, final int antId, final long epoch) {
+        final Konadare192RNG rng = new Konadare192RNG(0, 0, 0);
+        rng.reseed(seed, worker, antId, epoch);
+        return rng;
+    }
+
+    /**
+     * Moves this generator to the start of the substream for {@code (seed, worker, antId, epoch)}, as
+     * {@code substream} would create it. Allocates nothing, so it can be done per ant and epoch.
+     *
+     * @throws IllegalArgumentException If {@code worker} or {@code antId} does not fit its bits, or {@code epoch} is
+     *                                  negative.
+     */
+    public void reseed(final long seed, final int worker, final int antId, final long epoch) {
+        if (0 > worker || (1 << SUBSTREAM_WORKER_BITS) <= worker) {
+            throw new IllegalArgumentException("Worker must be on [0, " + (1 << SUBSTREAM_WORKER_BITS) + ") (was "
+                    + worker + ")");
+        }
+        if (0 > antId || (1 << SUBSTREAM_ANT_BITS) <= antId) {
+            throw new IllegalArgumentException("Ant id must be on [0, " + (1 << SUBSTREAM_ANT_BITS) + ") (was "
+                    + antId + ")");
+        }
+        if (0 > epoch) {
+            throw new IllegalArgumentException("Epoch must not be negative (was " + epoch + ")");
+        }
+        final long era = epoch >>> SUBSTREAM_EPOCH_BITS;
+        final long key = 0 == era ? seed : scramble(seed ^ scramble(era));
+        final long index = ((long) worker << (Long.SIZE - SUBSTREAM_WORKER_BITS))
+                | ((long) antId << (SUBSTREAM_EPOCH_BITS + SUBSTREAM_DRAW_BITS))
+                | ((epoch & ((1L << SUBSTREAM_EPOCH_BITS) - 1)) << SUBSTREAM_DRAW_BITS);
+        this.a = scramble(key) + index * KONADARE192_INC;
+        this.b = scramble(scramble(key + 1) ^ index);
+        this.c = scramble(scramble(key + 2) + index);
+    }
+
+    /**
+     * Returns a generator continuing from the current state, and moves this generator's counter
+     * 2<sup>{@code log2Steps}</sup> draws ahead with a fresh {@code b} and {@code c}. The returned generator can draw
+     * 2<sup>{@code log2Steps}</sup> values before its counter reaches the window this one continues in.
+     *
+     * @param log2Steps On {@code [0, 63]}.
+     */
+    public Konadare192RNG jump(final int log2Steps) {
+        if (0 > log2Steps || Long.SIZE <= log2Steps) {
+            throw new IllegalArgumentException("log2Steps must be on [0, 63] (was " + log2Steps + ")");
+        }
+        final Konadare192RNG copy = new Konadare192RNG(this.a, this.b, this.c);
+        this.a += KONADARE192_INC << log2Steps;
+        this.b = scramble(this.b ^ this.a);
+        this.c = scramble(this.c + this.a);
+        return copy;
+    }
+
+    private static long scramble(final long x) {
+        long h = x;
+        for (int i = 0; i < 2; i++) {
+            h *= KONADARE192_INC;
+            h ^= h >>> 14 ^ h >>> 34;
+        }
+        return h;
+    }
+
     private static void mix(final long[] arr) {
         long acc = arr[arr.length - 1];
         for (int i = 1; i <= 3; i++) {
@@ -53,6 +212,127 @@ public class Konadare192RNG implements SplittableGenerator {
         return out;
     }
 
+    /**
+     * @return The high 32 bits of {@code nextLong()}.
+     */
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * @return The high 24 bits of {@code nextLong()} as a {@code float} on {@code [0, 1)}.
+     */
+    @Override
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * @return The high 53 bits of {@code nextLong()} as a {@code double} on {@code [0, 1)}.
+     */
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Fills {@code values[from, to)} with as many calls to {@code nextLong} would give, in order.
+     */
+    public void nextLongs(final long[] values, final int from, final int to) {
+        Objects.checkFromToIndex(from, to, values.length);
+        long a = this.a;
+        long b = this.b;
+        long c = this.c;
+        for (int i = from; i < to; i++) {
+            values[i] = b ^ c;
+            final long a0 = a ^ (a >>> 32);
+            a += KONADARE192_INC;
+            b = Long.rotateRight(b + a0, KONADARE192_R1);
+            c = Long.rotateRight(c + b, KONADARE192_R2);
+        }
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    /**
+     * Fills {@code values[from, to)} with as many calls to {@code nextFloat} would give, in order.
+     */
+    public void nextFloats(final float[] values, final int from, final int to) {
+        Objects.checkFromToIndex(from, to, values.length);
+        long a = this.a;
+        long b = this.b;
+        long c = this.c;
+        for (int i = from; i < to; i++) {
+            values[i] = ((b ^ c) >>> 40) * 0x1.0p-24f;
+            final long a0 = a ^ (a >>> 32);
+            a += KONADARE192_INC;
+            b = Long.rotateRight(b + a0, KONADARE192_R1);
+            c = Long.rotateRight(c + b, KONADARE192_R2);
+        }
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    /**
+     * Fills {@code values[from, to)} with as many calls to {@code nextDouble} would give, in order.
+     */
+    public void nextDoubles(final double[] values, final int from, final int to) {
+        Objects.checkFromToIndex(from, to, values.length);
+        long a = this.a;
+        long b = this.b;
+        long c = this.c;
+        for (int i = from; i < to; i++) {
+            values[i] = ((b ^ c) >>> 11) * 0x1.0p-53;
+            final long a0 = a ^ (a >>> 32);
+            a += KONADARE192_INC;
+            b = Long.rotateRight(b + a0, KONADARE192_R1);
+            c = Long.rotateRight(c + b, KONADARE192_R2);
+        }
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    /**
+     * Fills {@code values[from, to)} with as many calls to {@code nextGaussian} would give, in order.
+     */
+    public void nextGaussians(final double[] values, final int from, final int to) {
+        Objects.checkFromToIndex(from, to, values.length);
+        long a = this.a;
+        long b = this.b;
+        long c = this.c;
+        for (int i = from; i < to; i++) {
+            final long bits = b ^ c;
+            final long a0 = a ^ (a >>> 32);
+            a += KONADARE192_INC;
+            b = Long.rotateRight(b + a0, KONADARE192_R1);
+            c = Long.rotateRight(c + b, KONADARE192_R2);
+            final int layer = (int) bits & (NORMAL_LAYERS - 1);
+            final long value = bits >> NORMAL_SHIFT;
+            if (Math.abs(value) < NORMAL_K[layer]) {
+                values[i] = value * NORMAL_W[layer];
+            } else {
+                this.a = a;
+                this.b = b;
+                this.c = c;
+                values[i] = gaussianSlowPath(layer, value);
+                a = this.a;
+                b = this.b;
+                c = this.c;
+            }
+        }
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    /**
+     * Reseeds a new generator from the mixed state of this one. Unlike {@code jump} this promises nothing about
+     * overlap, though an overlap is unlikely.
+     */
     @Override
     public SplittableGenerator split() {
         final long[] eSeed = {this.a, this.b, this.c};
@@ -66,19 +346,31 @@ public class Konadare192RNG implements SplittableGenerator {
         return split();
     }
 
+    /**
+     * @return {@code streamSize} generators, each 2<sup>48</sup> draws apart as handed out by {@code jump}. This
+     * generator is moved past them as the stream is consumed.
+     */
     @Override
     public Stream<SplittableGenerator> splits(final long streamSize) {
-        return null;
+        return splits().limit(streamSize);
     }
 
+    /**
+     * @return An endless stream of generators as for {@code splits(long)}. {@code source} is not used.
+     */
     @Override
     public Stream<SplittableGenerator> splits(final SplittableGenerator source) {
-        return null;
+        return splits();
     }
 
     @Override
     public Stream<SplittableGenerator> splits(final long streamSize, final SplittableGenerator source) {
-        return null;
+        return splits(streamSize);
+    }
+
+    @Override
+    public Stream<SplittableGenerator> splits() {
+        return Stream.generate(() -> jump(SPLIT_JUMP_LOG2));
     }
 
 
@@ -146,18 +438,91 @@ public class Konadare192RNG implements SplittableGenerator {
     }
 
     /**
-     * Reasonably good approximation of a standard normal random variate.
-     * Do not use for critical simulations -- both for performance and statistical reasons.
-     * @return A pseudo random {@code double} (quite) closely following the distribution of N(0, 1).
+     * Gives a standard normal variate by the ziggurat method. Most draws take one {@code nextLong}, a table lookup
+     * and a multiplication.
+     *
+     * @return A pseudo random {@code double} following the distribution of N(0, 1).
      */
     @Override
     public double nextGaussian() {
-        final int terms = 5;
-        double acc = 0.0;
-        for (int i = 0; i < terms; i++) {
-            acc += nextDouble();
+        final long bits = nextLong();
+        final int layer = (int) bits & (NORMAL_LAYERS - 1);
+        final long value = bits >> NORMAL_SHIFT;
+        if (Math.abs(value) < NORMAL_K[layer]) {
+            return value * NORMAL_W[layer];
+        }
+        return gaussianSlowPath(layer, value);
+    }
+
+    /**
+     * Finishes a normal draw that fell outside the rectangle of {@code layer}: into the tail beyond
+     * {@code NORMAL_R} for the base layer, otherwise into the wedge between the rectangle and the density, or
+     * else a fresh draw.
+     */
+    private double gaussianSlowPath(final int firstLayer, final long firstValue) {
+        int layer = firstLayer;
+        long value = firstValue;
+        while (true) {
+            if (0 == layer) {
+                double x;
+                double y;
+                do {
+                    x = -Math.log(1.0 - nextDouble()) / NORMAL_R;
+                    y = -Math.log(1.0 - nextDouble());
+                } while (y + y < x * x);
+                return 0 < value ? NORMAL_R + x : -NORMAL_R - x;
+            }
+            final double x = value * NORMAL_W[layer];
+            if (NORMAL_F[layer] + nextDouble() * (NORMAL_F[layer - 1] - NORMAL_F[layer]) < Math.exp(-0.5 * x * x)) {
+                return x;
+            }
+            final long bits = nextLong();
+            layer = (int) bits & (NORMAL_LAYERS - 1);
+            value = bits >> NORMAL_SHIFT;
+            if (Math.abs(value) < NORMAL_K[layer]) {
+                return value * NORMAL_W[layer];
+            }
         }
-        return (acc - (terms * 0.5)) * (12.0 / terms);
     }
 
+    /**
+     * Gives an exponential variate with mean 1 by the ziggurat method.
+     *
+     * @return A pseudo random {@code double} following the distribution of Exp(1).
+     */
+    @Override
+    public double nextExponential() {
+        final long bits = nextLong();
+        final int layer = (int) bits & (EXPONENTIAL_LAYERS - 1);
+        final long value = bits >>> EXPONENTIAL_SHIFT;
+        if (value < EXPONENTIAL_K[layer]) {
+            return value * EXPONENTIAL_W[layer];
+        }
+        return exponentialSlowPath(layer, value);
+    }
+
+    /**
+     * Like {@code gaussianSlowPath}. The tail of the exponential distribution beyond {@code EXPONENTIAL_R} is
+     * itself exponential, shifted by {@code EXPONENTIAL_R}.
+     */
+    private double exponentialSlowPath(final int firstLayer, final long firstValue) {
+        int layer = firstLayer;
+        long value = firstValue;
+        while (true) {
+            if (0 == layer) {
+                return EXPONENTIAL_R - Math.log(1.0 - nextDouble());
+            }
+            final double x = value * EXPONENTIAL_W[layer];
+            if (EXPONENTIAL_F[layer] + nextDouble() * (EXPONENTIAL_F[layer - 1] - EXPONENTIAL_F[layer])
+                    < Math.exp(-x)) {
+                return x;
+            }
+            final long bits = nextLong();
+            layer = (int) bits & (EXPONENTIAL_LAYERS - 1);
+            value = bits >>> EXPONENTIAL_SHIFT;
+            if (value < EXPONENTIAL_K[layer]) {
+                return value * EXPONENTIAL_W[layer];
+            }
+        }
+    }
 }
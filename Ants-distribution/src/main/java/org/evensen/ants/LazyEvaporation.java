@@ -0,0 +1,289 @@
+package org.evensen.ants;
+
+import java.util.Arrays;
+
+/**
+ * Book-keeping for pheromone levels that evaporate lazily, see {@code MyAntWorld.useLazyEvaporation}.
+ *
+ * <p>
+ * The world is split into square tiles of {@code TILE} cells. Each tile remembers the dispersal its stored levels are
+ * current as of, its stamp, and the true level of a cell is its stored level times {@code evaporation^dt}, where
+ * {@code dt} is the number of dispersals since the stamp. Bringing a tile up to date multiplies its cells by that
+ * factor once and moves its stamp to the current dispersal.
+ * </p>
+ *
+ * <p>
+ * Eager evaporation rounds after each of the {@code dt} multiplications by {@code evaporation}, whereas here the
+ * level is multiplied once by {@code evaporation^dt}, itself rounded once. Float multiplication does not associate,
+ * so the two can differ in the last bits: each rounding is off by at most half an ulp, which bounds the difference
+ * by {@code dt + 2} ulps of the level. Doing {@code dt} multiplications per cell instead would make every read of a
+ * quiet tile cost as much as the dispersals it skipped, so this is accepted rather than avoided. Levels never left
+ * to evaporate lazily, as with an active level of 0, are exactly those of eager dispersal.
+ * </p>
+ *
+ * <p>
+ * A tile is hot when a level in it was written since the last dispersal, or when some level in it may still be above
+ * the active level. Hot tiles and their eight neighbours are active: only they are dispersed, so pheromones spreading
+ * out of a hot tile always land in a tile that is dispersed too. All other tiles only evaporate. The highest level of
+ * a tile is tracked as an upper bound, which evaporates like the levels themselves.
+ * </p>
+ */
+final class LazyEvaporation {
+    static final int TILE_SHIFT = 5;
+    static final int TILE = 1 << TILE_SHIFT;
+    // Factors for up to this many dispersals are looked up rather than computed.
+    private static final int FACTORS = 1024;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int channels;
+    private final float evaporation;
+    private final float activeLevel;
+    private final float[] factors;
+    private final int[] stamps;
+    // The current factor of each tile, so that reading a level is one more lookup.
+    private final float[] tileFactors;
+    private final float[] maxima;
+    private final boolean[] written;
+    private final boolean[] hot;
+    private final int[] active;
+    private int activeCount;
+    private int dispersals;
+
+    /**
+     * @param channels    The number of pheromone channels, stored cell by cell as in {@code MyAntWorld}.
+     * @param evaporation The factor levels are multiplied by per dispersal where they do not spread.
+     * @param activeLevel Tiles with all levels at or below this are not dispersed, unless they border one that is.
+     */
+    LazyEvaporation(final int width, final int height, final int channels, final float evaporation,
+                    final float activeLevel) {
+        if (!(0.0f < evaporation && 1.0f >= evaporation) || !(0.0f <= activeLevel)) {
+            throw new IllegalArgumentException(
+                    "Invalid lazy evaporation (evaporation " + evaporation + ", active level " + activeLevel + ")");
+        }
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE - 1) >> TILE_SHIFT;
+        this.channels = channels;
+        final int tiles = this.tilesX * ((height + TILE - 1) >> TILE_SHIFT);
+        this.evaporation = evaporation;
+        this.activeLevel = activeLevel;
+        this.factors = new float[FACTORS];
+        for (int i = 0; i < FACTORS; i++) {
+            this.factors[i] = (float) Math.pow(evaporation, i);
+        }
+        this.stamps = new int[tiles];
+        this.tileFactors = new float[tiles];
+        Arrays.fill(this.tileFactors, 1.0f);
+        this.maxima = new float[tiles];
+        this.written = new boolean[tiles];
+        this.hot = new boolean[tiles];
+        this.active = new int[tiles];
+        // Levels may be anywhere when lazy evaporation starts.
+        Arrays.fill(this.maxima, Float.MAX_VALUE);
+    }
+
+    int tile(final int x, final int y) {
+        return (y >> TILE_SHIFT) * this.tilesX + (x >> TILE_SHIFT);
+    }
+
+    /**
+     * @return The factor to multiply the stored levels of {@code tile} by to get their true levels.
+     */
+    float factor(final int tile) {
+        return this.tileFactors[tile];
+    }
+
+    /**
+     * Brings the stored levels of {@code tile} up to date in every channel.
+     */
+    void materialize(final int tile, final float[] levels) {
+        if (this.stamps[tile] == this.dispersals) {
+            return;
+        }
+        final float factor = factor(tile);
+        final int x0 = getTileX(tile);
+        final int y0 = getTileY(tile);
+        final int x1 = Math.min(this.width, x0 + TILE);
+        final int y1 = Math.min(this.height, y0 + TILE);
+        for (int y = y0; y < y1; y++) {
+            // The channels of a row of the tile are contiguous.
+            for (int i = (y * this.width + x0) * this.channels; i < (y * this.width + x1) * this.channels; i++) {
+                levels[i] *= factor;
+            }
+        }
+        this.maxima[tile] *= factor;
+        this.stamps[tile] = this.dispersals;
+        this.tileFactors[tile] = 1.0f;
+    }
+
+    /**
+     * Notes that a level of {@code tile}, which must be up to date, was set to {@code level}.
+     */
+    void written(final int tile, final float level) {
+        this.maxima[tile] = Math.max(this.maxima[tile], level);
+        this.written[tile] = true;
+    }
+
+    /**
+     * Picks the tiles to disperse next.
+     *
+     * @return The number of active tiles, see {@code getActiveTile}.
+     */
+    int selectActive() {
+        final int tilesY = this.stamps.length / this.tilesX;
+        for (int t = 0; t < this.stamps.length; t++) {
+            this.hot[t] = this.written[t] || this.activeLevel < this.maxima[t] * factor(t);
+        }
+        this.activeCount = 0;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < this.tilesX; tx++) {
+                if (isNearHot(tx, ty, tilesY)) {
+                    this.active[this.activeCount++] = ty * this.tilesX + tx;
+                }
+            }
+        }
+        return this.activeCount;
+    }
+
+    private boolean isNearHot(final int tx, final int ty, final int tilesY) {
+        for (int y = Math.max(0, ty - 1); y <= Math.min(tilesY - 1, ty + 1); y++) {
+            for (int x = Math.max(0, tx - 1); x <= Math.min(this.tilesX - 1, tx + 1); x++) {
+                if (this.hot[y * this.tilesX + x]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Active tile {@code i} of the last {@code selectActive}, in row-major order.
+     */
+    int getActiveTile(final int i) {
+        return this.active[i];
+    }
+
+    /**
+     * Brings every tile that an active tile reads from up to date.
+     */
+    void materializeActive(final float[] levels) {
+        final int tilesY = this.stamps.length / this.tilesX;
+        for (int i = 0; i < this.activeCount; i++) {
+            final int tx = this.active[i] % this.tilesX;
+            final int ty = this.active[i] / this.tilesX;
+            for (int y = Math.max(0, ty - 1); y <= Math.min(tilesY - 1, ty + 1); y++) {
+                for (int x = Math.max(0, tx - 1); x <= Math.min(this.tilesX - 1, tx + 1); x++) {
+                    materialize(y * this.tilesX + x, levels);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends a dispersal in which every active tile was dispersed, {@code maxima[i]} being the highest level of active
+     * tile {@code i} afterwards.
+     */
+    void dispersed(final float[] maxima) {
+        this.dispersals++;
+        for (int i = 0; i < this.activeCount; i++) {
+            final int tile = this.active[i];
+            this.maxima[tile] = maxima[i];
+            this.stamps[tile] = this.dispersals;
+        }
+        updateFactors();
+        Arrays.fill(this.written, false);
+    }
+
+    private void updateFactors() {
+        for (int t = 0; t < this.stamps.length; t++) {
+            final int dt = this.dispersals - this.stamps[t];
+            this.tileFactors[t] = FACTORS > dt ? this.factors[dt] : (float) Math.pow(this.evaporation, dt);
+        }
+    }
+
+    /**
+     * Brings every tile up to date.
+     */
+    void materializeAll(final float[] levels) {
+        for (int t = 0; t < this.stamps.length; t++) {
+            materialize(t, levels);
+        }
+    }
+
+    /**
+     * Copies the true levels of channel {@code channel} to {@code destination}, cell {@code <x, y>} to index
+     * {@code y * width + x}.
+     */
+    void copy(final float[] levels, final int channel, final float[] destination) {
+        for (int t = 0; t < this.stamps.length; t++) {
+            final float factor = factor(t);
+            final int x0 = getTileX(t);
+            final int x1 = Math.min(this.width, x0 + TILE);
+            final int y1 = Math.min(this.height, getTileY(t) + TILE);
+            for (int y = getTileY(t); y < y1; y++) {
+                for (int i = y * this.width + x0; i < y * this.width + x1; i++) {
+                    destination[i] = levels[i * this.channels + channel] * factor;
+                }
+            }
+        }
+    }
+
+    float getActiveLevel() {
+        return this.activeLevel;
+    }
+
+    /**
+     * @return The number of dispersals so far, which the stamps count in.
+     */
+    int getDispersals() {
+        return this.dispersals;
+    }
+
+    /**
+     * @return The dispersal each tile's stored levels are current as of. The array is the live one, see
+     * {@code restoreDispersals}.
+     */
+    int[] getStamps() {
+        return this.stamps;
+    }
+
+    /**
+     * @return The upper bound of each tile's stored levels. The array is the live one.
+     */
+    float[] getMaxima() {
+        return this.maxima;
+    }
+
+    /**
+     * @return Whether a level of each tile was written since the last dispersal. The array is the live one.
+     */
+    boolean[] getWritten() {
+        return this.written;
+    }
+
+    /**
+     * Continues after {@code dispersals} dispersals, once the stamps, maxima and written tiles were filled in, see
+     * {@code Checkpoint}.
+     *
+     * @throws IllegalArgumentException If a stamp is not on {@code [0, dispersals]}.
+     */
+    void restoreDispersals(final int dispersals) {
+        for (final int stamp : this.stamps) {
+            if (0 > stamp || dispersals < stamp) {
+                throw new IllegalArgumentException("Stamp " + stamp + " is not on [0, " + dispersals + "]");
+            }
+        }
+        this.dispersals = dispersals;
+        updateFactors();
+    }
+
+    int getTileX(final int tile) {
+        return (tile % this.tilesX) << TILE_SHIFT;
+    }
+
+    int getTileY(final int tile) {
+        return (tile / this.tilesX) << TILE_SHIFT;
+    }
+}
@@ -7,6 +7,8 @@ import javafx.geometry.Insets;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.StackPane;
@@ -16,64 +18,94 @@ import javafx.stage.Stage;
 import org.evensen.ants.controller.Camera;
 import org.evensen.ants.controller.CameraController;
 import org.evensen.ants.controller.ResizeableCanvas;
+import org.evensen.ants.metrics.Phase;
+import org.evensen.ants.metrics.PhaseClock;
+import org.evensen.ants.metrics.RenderFrameEvent;
+import org.evensen.ants.metrics.SimulationMetrics;
 import org.evensen.ants.render.AntColonyRenderer;
 import org.evensen.ants.render.AntWorldRenderer;
 import org.evensen.ants.render.FoodRenderer;
 import org.evensen.ants.render.ObstacleRenderer;
+import org.evensen.ants.render.RenderPipeline;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.LinkedList;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Main extends Application {
-    private static final int WORLD_WIDTH = 400;
-    private static final int WORLD_HEIGHT = 200;
-    private static final int ANTS = 10000;
-    private static final float PHEROMONE_RATE = 0.7f;
     private static final long MODEL_UPDATE_INTERVAL = 10_000_000L; // Update every 10 ms.
-    private static final long VIEW_UPDATE_INTERVAL = 40_000_000L; // Update every 25 ms.
+    private static final int MAX_CATCH_UP_EPOCHS = 10;
+    private static final long VIEW_UPDATE_INTERVAL = 15_000_000L; // Update on every 60 Hz pulse, about 16 ms.
     private static final double MARGIN = 20.0;
-    private static final int FOOD_SOURCES = Math.max(2, (WORLD_WIDTH * WORLD_HEIGHT / 50000));
+    private static final long METRICS_REPORT_INTERVAL = 5_000L; // Log metrics every 5 s.
+    private static final int RENDER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final String TITLE = "Pelles & Felix myrfarm";
 
-    private final AntWorld world;
+    private AntWorld world;
     //
     // Pencil radius is 2% of the world size.
     //
-    private static final float PENCIL_RADIUS = ((WORLD_WIDTH * 0.02f) + (WORLD_HEIGHT * 0.02f)) / 4.0f;
+    private float pencilRadius;
 
 
-    private final AntColony colony;
+    private AntColony colony;
+    private Simulation simulation;
+    private Path checkpoint;
+    private FrameRecorder recorder;
+    private SimulationLoop simulationLoop;
+    private final FrameExchange frames;
     private final boolean drawAnts;
     private final ObstacleRenderer obstacleRenderer;
+    private final AntWorldRenderer antWorldRenderer;
     private final FoodRenderer foodRenderer;
-    private long epochCounter;
-    private long lastModelUpdate;
+    private final AntColonyRenderer antColonyRenderer;
+    private RenderPipeline renderPipeline;
+    private SimulationFrame frame;
+    private final PhaseClock frameClock;
     private long lastViewUpdate;
-    private int frame;
-    private long lastFrameReset;
-    private final AtomicBoolean modelShouldBeRunning;
     private Collection<AntHazard> hazards;
+    private Stage stage;
 
     public Main() {
-
-        // Create a new world with size WORLD_WIDTH * WORLD_HEIGHT and 4 food sources.
-        this.world = new MyAntWorld(WORLD_WIDTH, WORLD_HEIGHT, 4, new MyDispersalPolicy());
-
-        this.colony = new AntColony(ANTS, PHEROMONE_RATE, this.world);
+        this.frames = new FrameExchange();
         this.drawAnts = true;
         this.obstacleRenderer = new ObstacleRenderer();
         this.foodRenderer = new FoodRenderer();
-        this.epochCounter = 1;
+        this.antWorldRenderer = new AntWorldRenderer();
+        this.antColonyRenderer = new AntColonyRenderer();
+        this.frameClock = new PhaseClock(SimulationMetrics.global());
+    }
+
+    /**
+     * Builds the world and colony from the application parameters, see {@code SimulationConfig}.
+     */
+    @Override
+    public void init() throws Exception {
+        final SimulationConfig config = SimulationConfig.parse(getParameters().getRaw());
+        this.simulation = config.createSimulation();
+        this.checkpoint = config.getCheckpoint();
+        this.recorder = config.createRecorder();
+        this.world = this.simulation.getWorld();
+        this.pencilRadius = ((this.world.getWidth() * 0.02f) + (this.world.getHeight() * 0.02f)) / 4.0f;
+
+        this.colony = this.simulation.getColony();
+        this.simulationLoop = new SimulationLoop(() -> {
+            this.simulation.step();
+            if (null != this.recorder) {
+                this.recorder.record(this.simulation.getEpoch(), this.colony, this.world);
+            }
+            //   updateHazards();
+            this.frames.publish(this.simulation.getEpoch(), this.colony, this.world);
+        }, MODEL_UPDATE_INTERVAL, MAX_CATCH_UP_EPOCHS, SimulationLoop.Mode.FIXED_STEP);
         this.hazards = new LinkedList<>();
         this.hazards.add(new AntHazard() {
-            private int x = WORLD_WIDTH / 2;
-            private int y = WORLD_HEIGHT / 2;
+            private int x = Main.this.world.getWidth() / 2;
+            private int y = Main.this.world.getHeight() / 2;
 
             @Override
             public void update(final AntWorld w) {
-                // this.x = (this.x + 1) % WORLD_WIDTH;
+                // this.x = (this.x + 1) % w.getWidth();
             }
 
             @Override
@@ -94,39 +126,20 @@ public class Main extends Application {
                 }
             }
         });
-        this.modelShouldBeRunning = new AtomicBoolean(false);
     }
 
-    private void startModelTimer() {
-        final Timer timer = new Timer();
-        this.modelShouldBeRunning.set(true);
-
-        final TimerTask modelUpdate = new java.util.TimerTask() {
-
-            @Override
-            public void run() {
-                if (Main.this.modelShouldBeRunning.get()) {
-                    final long now = System.nanoTime();
-                    final long elapsedModelNanos = now - Main.this.lastModelUpdate;
-                    if (MODEL_UPDATE_INTERVAL < elapsedModelNanos) {
-                        synchronized (Main.this.colony) {
-                            Main.this.colony.updateAnts(Main.this.world);
-                        }
-                        if (0 == Main.this.epochCounter % 5) {
-                            Main.this.world.dispersePheromones();
-//                            Main.this.obstacleRenderer.dirty();
-                        }
-                        //   updateHazards();
-                        Main.this.lastModelUpdate = now;
-                        Main.this.epochCounter++;
-                    }
-                } else {
-                    cancel();
-                }
-            }
-        };
+    /**
+     * Cycles the simulation loop through its modes: real time, catch-up and fast forward.
+     */
+    private void cycleSimulationMode() {
+        final SimulationLoop.Mode[] modes = SimulationLoop.Mode.values();
+        final SimulationLoop.Mode next = modes[(this.simulationLoop.getMode().ordinal() + 1) % modes.length];
+        this.simulationLoop.setMode(next);
+        showSimulationMode();
+    }
 
-        timer.scheduleAtFixedRate(modelUpdate, 0, MODEL_UPDATE_INTERVAL / 1_000_000);
+    private void showSimulationMode() {
+        this.stage.setTitle(TITLE + " (" + this.simulationLoop.getMode() + ")");
     }
 
     @Override
@@ -144,32 +157,41 @@ public class Main extends Application {
         final Camera camera = canvas.getCamera();
         final CameraController cameraController = canvas.createCameraController();
 
-        startModelTimer();
+        SimulationMetrics.global().registerMBean();
+        SimulationMetrics.global().startReporting(METRICS_REPORT_INTERVAL);
+        //
+        // The cached layers are re-rendered only when the world reports a change.
+        //
+        this.world.addWorldChangeListener(this.obstacleRenderer);
+        this.world.addWorldChangeListener(this.foodRenderer);
+        this.simulationLoop.start();
+        this.renderPipeline = new RenderPipeline(this.world, this.obstacleRenderer, this.antWorldRenderer,
+                this.foodRenderer, this.antColonyRenderer, RENDER_THREADS);
 
         final EventHandler<MouseEvent> mouseEventHandler = (event) -> {
 
             //
             // Transform into world coordinates.
             //
-            final float worldX = (float) canvas.canvasCoordinateX(event.getX()) * WORLD_WIDTH;
-            final float worldY = (float) canvas.canvasCoordinateY(event.getY()) * WORLD_HEIGHT;
+            final float worldX = (float) canvas.canvasCoordinateX(event.getX()) * Main.this.world.getWidth();
+            final float worldY = (float) canvas.canvasCoordinateY(event.getY()) * Main.this.world.getHeight();
             final Position p = new Position(worldX, worldY);
 
             //
-            // Add/erase points within the radius.
+            // Add/erase points within the radius. The world may only be changed by the simulation thread, so the
+            // stroke is handed to the loop, which applies it between epochs.
             //
-            for (float x = -PENCIL_RADIUS; PENCIL_RADIUS > x; x += 1.0f) {
-                for (float y = -PENCIL_RADIUS; PENCIL_RADIUS > y; y += 1.0f) {
-                    if (PENCIL_RADIUS * PENCIL_RADIUS > x * x + y * y) {
-                        Main.this.world.setObstacle(p.offset(x, y), !event.isShiftDown());
+            final float r = Main.this.pencilRadius;
+            final boolean add = !event.isShiftDown();
+            Main.this.simulationLoop.submit(() -> {
+                for (float x = -r; r > x; x += 1.0f) {
+                    for (float y = -r; r > y; y += 1.0f) {
+                        if (r * r > x * x + y * y) {
+                            Main.this.world.setObstacle(p.offset(x, y), add);
+                        }
                     }
                 }
-            }
-
-            //
-            // Mark obstacle renderer as dirty.
-            //
-            Main.this.obstacleRenderer.dirty();
+            });
         };
 
         canvas.setOnMouseDragged(mouseEventHandler);
@@ -180,20 +202,30 @@ public class Main extends Application {
             // This method called by FX, parameter is the current time
             @Override
             public void handle(final long now) {
-                final long elapsedModelNanos = now - Main.this.lastModelUpdate;
                 final long elapsedViewNanos = now - Main.this.lastViewUpdate;
                 if (VIEW_UPDATE_INTERVAL < elapsedViewNanos) {
-                    ++Main.this.frame;
-                    if (1_000_000_000 < now - Main.this.lastFrameReset) {
-                        final float antEfficiency = (float) (
-                                Main.this.world.getFoodCount() / (float) Main.this.epochCounter / ANTS *
-                                        Math.hypot(Main.this.world.getWidth(), Main.this.world.getHeight()));
-                        System.out.println(
-                                "frames per second: " + Main.this.frame + ", ant efficiency: " + antEfficiency + " (" +
-                                        Main.this.epochCounter + " epochs)");
-                        Main.this.frame = 0;
-                        Main.this.lastFrameReset = now;
+                    final SimulationMetrics metrics = SimulationMetrics.global();
+                    final RenderFrameEvent event = new RenderFrameEvent();
+                    event.begin();
+                    final long uploadsBefore = metrics.getImageUploads();
+                    Main.this.frameClock.start();
+
+                    //
+                    // Pixels are prepared in the background; here they are only uploaded once done. A new frame is
+                    // taken from the model only when the pipeline is idle, since the pipeline reads it.
+                    //
+                    final RenderPipeline pipeline = Main.this.renderPipeline;
+                    final boolean uploaded = pipeline.upload();
+                    if (pipeline.isIdle()) {
+                        Main.this.frame = Main.this.frames.latest();
                     }
+                    final SimulationFrame simulationFrame = Main.this.frame;
+                    cameraController.step();
+                    final int worldWidth = Main.this.world.getWidth();
+                    final int worldHeight = Main.this.world.getHeight();
+                    final WorldRegion visible = camera.getVisibleCells(worldWidth, worldHeight);
+                    pipeline.submit(simulationFrame, canvas.getWidth(), canvas.getHeight(), visible,
+                            camera.getPixelsPerCell(worldWidth, worldHeight));
 
                     //
                     // Reset canvas transform so that it can be ensured that every pixel is cleared.
@@ -204,21 +236,19 @@ public class Main extends Application {
                     g.restore();
 
                     g.save();
-                    cameraController.step();
                     camera.setCoordinateSpaceOf(g);
 
                     //
-                    // Remap the drawing coordinates from [0.0, 1.0] to the world coordinates [0, WORLD_WIDTH]
-                    // and [0.0, WORLD_HEIGHT].
+                    // Remap the drawing coordinates from [0.0, 1.0] to the world coordinates [0, width]
+                    // and [0.0, height].
                     //
-                    g.scale(1.0 / WORLD_WIDTH, 1.0 / WORLD_HEIGHT);
-                    // Main.this.camera.adjust(g, WORLD_WIDTH, WORLD_HEIGHT);
+                    g.scale(1.0 / worldWidth, 1.0 / worldHeight);
 
                     //
                     // Draw background.
                     //
                     g.setFill(javafx.scene.paint.Color.BEIGE.darker().saturate());
-                    g.fillRect(0, 0, WORLD_WIDTH, WORLD_HEIGHT);
+                    g.fillRect(0, 0, worldWidth, worldHeight);
 
                     //
                     // Draw world and ants.
@@ -226,16 +256,32 @@ public class Main extends Application {
                     g.save();
                     g.setGlobalAlpha(0.75);
 
-                    synchronized (Main.this.world) {
-                        Main.this.obstacleRenderer.render(g, Main.this.world);
-                        g.restore();
-                        AntWorldRenderer.render(g, Main.this.world);
-                        Main.this.foodRenderer.dirty();
-                        Main.this.foodRenderer.render(g, Main.this.world);
-                        AntColonyRenderer.render(g, Main.this.colony);
+                    //
+                    // The model keeps running while we draw; everything dynamic is read from the latest frame.
+                    //
+                    if (null != visible) {
+                        Main.this.obstacleRenderer.render(g, Main.this.world, visible);
+                    }
+                    g.restore();
+                    if (null != visible) {
+                        Main.this.antWorldRenderer.render(g);
+                        Main.this.foodRenderer.render(g, Main.this.world, visible);
+                        Main.this.antColonyRenderer.render(g);
                     }
 
                     g.restore();
+                    Main.this.frameClock.lap(Phase.FRAME);
+                    if (event.shouldCommit()) {
+                        event.epoch = simulationFrame.getEpoch();
+                        if (uploaded) {
+                            event.obstacleNanos = pipeline.getObstacleNanos();
+                            event.pheromoneNanos = pipeline.getPheromoneNanos();
+                            event.foodNanos = pipeline.getFoodNanos();
+                            event.antNanos = pipeline.getAntNanos();
+                        }
+                        event.imageUploads = (int) (metrics.getImageUploads() - uploadsBefore);
+                        event.commit();
+                    }
                     Main.this.lastViewUpdate = now;
                 }
             }
@@ -243,34 +289,54 @@ public class Main extends Application {
 
         final Scene scene = new Scene(root);
 
-        scene.setOnKeyPressed(cameraController.getKeyPressedEventHandler());
+        final EventHandler<KeyEvent> cameraKeyPressed = cameraController.getKeyPressedEventHandler();
+        scene.setOnKeyPressed(event -> {
+            if (KeyCode.F == event.getCode()) {
+                cycleSimulationMode();
+            } else {
+                cameraKeyPressed.handle(event);
+            }
+        });
         scene.setOnKeyReleased(cameraController.getKeyReleasedEventHandler());
         canvas.setOnScroll(cameraController.getScrollEventHandler());
 
         stage.setScene(scene);
-        stage.setTitle("Pelles & Felix myrfarm");
+        this.stage = stage;
+        showSimulationMode();
         Rectangle2D screenBounds = Screen.getPrimary().getBounds();
-        float scale = Math.min((float) (screenBounds.getWidth() - 2 * MARGIN) / WORLD_WIDTH,
-                (float) (screenBounds.getHeight() - 2 * MARGIN) / WORLD_HEIGHT) * 0.5f;
-        stage.setWidth(WORLD_WIDTH * scale + 2 * MARGIN);
-        stage.setHeight(WORLD_HEIGHT * scale + 2 * MARGIN);
-        stage.setOnCloseRequest(event -> this.modelShouldBeRunning.set(false));
+        float scale = Math.min((float) (screenBounds.getWidth() - 2 * MARGIN) / this.world.getWidth(),
+                (float) (screenBounds.getHeight() - 2 * MARGIN) / this.world.getHeight()) * 0.5f;
+        stage.setWidth(this.world.getWidth() * scale + 2 * MARGIN);
+        stage.setHeight(this.world.getHeight() * scale + 2 * MARGIN);
+        stage.setOnCloseRequest(event -> {
+            try {
+                this.simulationLoop.stop();
+                this.renderPipeline.close();
+                if (null != this.checkpoint) {
+                    Checkpoint.write(this.checkpoint, this.simulation);
+                }
+                if (null != this.recorder) {
+                    this.recorder.close();
+                }
+            } catch (final IOException e) {
+                System.err.println("Could not save the run: " + e.getMessage());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
         stage.show();
 
         this.lastViewUpdate = System.nanoTime() + 500_000_000L;
-        this.lastModelUpdate = System.nanoTime() + 5_000_000_000L;
         timer.start();  // Start simulation
     }
 
     private void updateHazards() {
-        synchronized (this.colony) {
-            for (AntHazard h : this.hazards) {
-                h.update(this.world);
+        for (AntHazard h : this.hazards) {
+            h.update(this.world);
 
-                for (Ant a : this.colony.getAnts()) {
-                    if (a.getPosition().isWithinRadius(h.getPosition(), h.getRadius())) {
-                        h.damage(a);
-                    }
+            for (Ant a : this.colony.getAnts()) {
+                if (a.getPosition().isWithinRadius(h.getPosition(), h.getRadius())) {
+                    h.damage(a);
                 }
             }
         }
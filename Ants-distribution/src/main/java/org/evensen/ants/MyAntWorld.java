@@ -1,47 +1,151 @@
 package org.evensen.ants;
 
-import java.util.ArrayList;
+import org.evensen.ants.metrics.DispersalEvent;
+
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class MyAntWorld implements AntWorld {
+    private static final int HOME_RADIUS = 20;
+    // Obstacles are kept this far from home, so that ants can get out.
+    private static final int HOME_CLEARING = 20;
+    // Food and foraging pheromones.
+    private static final int DEFAULT_CHANNELS = 2;
+    // Dead ants decay by this factor with every dispersal, and are gone once fewer than DEAD_ANT_MIN are left.
+    private static final float DEAD_ANT_DECAY = 0.99f;
+    private static final float DEAD_ANT_MIN = 0.01f;
     private final int width;
     private final int height;
-    private float[][] foodPheromone;
-    private float[][] foragingPheromone;
+    private final int channels;
+    // Pheromone levels are stored cell by cell, row by row, the channels of cell <x, y> from index
+    // (y * width + x) * channels, so that one read of a cell gets all of its channels.
+    private float[] pheromones;
+    // The levels before the last eager dispersal, overwritten by the next one.
+    private float[] spare;
     private final boolean[][] foodMatrix;
+    // Dead ants per cell, stored like the obstacles. Only the first deadCellCount cells of deadCells hold any, so
+    // decaying them costs nothing where no ant died.
+    private final float[] deadAnts;
+    private int[] deadCells;
+    private int deadCellCount;
+    // Obstacles are stored like the pheromones. Edited and read by the simulation thread only, see setObstacle.
+    private final boolean[] obstacles;
+    private final List<WorldChangeListener> listeners;
     private final Position homePosition;
     private final List<FoodSource> foodSources;
     private final DispersalPolicy dispersalPolicy;
+    // Draws the places of food sources, seeded by foodSeed so that runs can be repeated.
+    private final Konadare192RNG foodRng;
+    private final long foodSeed;
+    private final FoodPlacement foodPlacement;
+    private long foodCount;
+    private long pheromoneDrops;
+    // Null while every dispersal rewrites every cell, see useLazyEvaporation.
+    private LazyEvaporation lazy;
+    // Dispersed levels of the active tiles, TILE * TILE cells per tile, before they are copied back.
+    private float[] activeLevels;
+    private float[] activeMaxima;
+    // The thread of the last dispersal, which alone may edit the stamps and maxima of lazy evaporation.
+    private volatile Thread dispersingThread;
 
     public MyAntWorld(final int worldWidth, final int worldHeight, final int sources, final DispersalPolicy policy) {
+        this(worldWidth, worldHeight, sources, policy, new boolean[worldWidth * worldHeight]);
+    }
+
+    /**
+     * A world with the given obstacles, e.g. from {@code TerrainGenerator}. Obstacles around home are removed, and
+     * food sources are only placed where they do not overlap any obstacle.
+     *
+     * @param obstacles Stored row by row, cell {@code <x, y>} at index {@code y * worldWidth + x}. The world keeps
+     *                  and edits the array.
+     */
+    public MyAntWorld(final int worldWidth, final int worldHeight, final int sources, final DispersalPolicy policy,
+                      final boolean[] obstacles) {
+        this(worldWidth, worldHeight, sources, policy, obstacles, DEFAULT_CHANNELS);
+    }
+
+    /**
+     * A world with the given obstacles and {@code channels} pheromone channels: those of food and foraging pheromones
+     * and {@code channels - 2} more.
+     *
+     * @throws IllegalArgumentException If there are fewer than two channels or {@code policy} can not disperse them.
+     */
+    public MyAntWorld(final int worldWidth, final int worldHeight, final int sources, final DispersalPolicy policy,
+                      final boolean[] obstacles, final int channels) {
+        this(worldWidth, worldHeight, sources, policy, obstacles, channels, defaultFoodSeed(worldWidth, worldHeight));
+    }
+
+    /**
+     * A world as above whose food sources are placed by draws from {@code foodSeed}, so that runs of the same size
+     * can have different layouts.
+     *
+     * @throws IllegalArgumentException If there are fewer than two channels or {@code policy} can not disperse them.
+     */
+    public MyAntWorld(final int worldWidth, final int worldHeight, final int sources, final DispersalPolicy policy,
+                      final boolean[] obstacles, final int channels, final long foodSeed) {
+        this(worldWidth, worldHeight, policy, foodSeed, new Konadare192RNG(foodSeed), obstacles, channels);
+        if (obstacles.length != worldWidth * worldHeight) {
+            throw new IllegalArgumentException("Expected " + worldWidth * worldHeight + " obstacle cells (was "
+                    + obstacles.length + ")");
+        }
+        clearHome();
+        final List<FoodSource> placed = this.foodPlacement.place(sources);
+        for (final FoodSource foodSource : placed) {
+            this.foodPlacement.stamp(this.foodMatrix, foodSource.getPosition(), true);
+        }
+        this.foodSources.addAll(placed);
+    }
+
+    /**
+     * An empty world without food sources, to be filled by {@code Checkpoint}.
+     *
+     * @param foodRng The food placement generator as it was, drawn from since it was seeded with {@code foodSeed}.
+     */
+    MyAntWorld(final int worldWidth, final int worldHeight, final DispersalPolicy policy, final long foodSeed,
+               final Konadare192RNG foodRng, final int channels) {
+        this(worldWidth, worldHeight, policy, foodSeed, foodRng, new boolean[worldWidth * worldHeight], channels);
+    }
+
+    private MyAntWorld(final int worldWidth, final int worldHeight, final DispersalPolicy policy, final long foodSeed,
+                       final Konadare192RNG foodRng, final boolean[] obstacles, final int channels) {
+        if (DEFAULT_CHANNELS > channels || !policy.canDisperse(channels)) {
+            throw new IllegalArgumentException("Can not disperse " + channels + " pheromone channels with " + policy);
+        }
         this.dispersalPolicy = policy;
+        this.foodSeed = foodSeed;
+        this.foodRng = foodRng;
         this.width = worldWidth;
         this.height = worldHeight;
         this.foodMatrix = new boolean[worldWidth][worldHeight];
-        this.foragingPheromone = new float[worldWidth][worldHeight];
-        this.foodPheromone = new float[worldWidth][worldHeight];
+        this.channels = channels;
+        this.pheromones = new float[worldWidth * worldHeight * channels];
+        this.obstacles = obstacles;
+        this.deadAnts = new float[worldWidth * worldHeight];
+        this.deadCells = new int[0];
+        this.foodPlacement = new FoodPlacement(worldWidth, worldHeight, FoodSource.getRadius(), obstacles, foodRng);
+        this.listeners = new CopyOnWriteArrayList<>();
         this.homePosition = new Position(worldWidth, worldHeight / 2);
-        this.foodSources = new ArrayList<>();
-        for (int i = 0; i < sources; i++) {
-            placeFoodSource();
-        }
-        for (FoodSource foodSource : this.foodSources){
-            updateFoodMatrix(foodSource.getPosition(), true);
-        }
+        // Food sources are read by the renderers while the model updates them; writes are rare.
+        this.foodSources = new CopyOnWriteArrayList<>();
     }
 
-    private void updateFoodMatrix(Position p, boolean c){
-        if (p.isInBounds(this.width, this.height)){
-            int radius = FoodSource.getRadius();
-            int x = (int) p.getX();
-            int y = (int) p.getY();
-            for (int a = Math.max(0, x - radius); a <= Math.min(this.width - 1, x + radius); a++) {
-                for (int b = Math.max(0, y - radius); b <= Math.min(this.height - 1, y + radius); b++) {
-                    Position ab = new Position(a,b);
-                    if (ab.isWithinRadius(p, radius)) {
-                        this.foodMatrix[a][b] = c;
-                    }
+    /**
+     * @return The seed food sources are placed from when none is given, which only depends on the world size.
+     */
+    public static long defaultFoodSeed(final int worldWidth, final int worldHeight) {
+        return Hasher.hash(worldWidth, worldHeight);
+    }
+
+    private void clearHome() {
+        final int radius = HOME_RADIUS + HOME_CLEARING;
+        final int hx = (int) this.homePosition.getX();
+        final int hy = (int) this.homePosition.getY();
+        for (int y = Math.max(0, hy - radius); y <= Math.min(this.height - 1, hy + radius); y++) {
+            for (int x = Math.max(0, hx - radius); x <= Math.min(this.width - 1, hx + radius); x++) {
+                if (radius * radius >= (x - hx) * (x - hx) + (y - hy) * (y - hy)) {
+                    this.obstacles[y * this.width + x] = false;
                 }
             }
         }
@@ -64,43 +168,30 @@ public class MyAntWorld implements AntWorld {
         FoodSource foodSource = findFoodSource(p);
         if (foodSource != null && !foodSource.takeFood()) {
             this.foodSources.remove(foodSource);
-            updateFoodMatrix(foodSource.getPosition(), false);
+            this.foodPlacement.remove(foodSource);
+            this.foodPlacement.stamp(this.foodMatrix, foodSource.getPosition(), false);
+            final WorldRegion region = foodRegion(foodSource);
+            for (final WorldChangeListener l : this.listeners) {
+                l.foodSourceRemoved(region);
+            }
             placeFoodSource();
         }
     }
     private FoodSource findFoodSource(Position p2) {
-        int radius = FoodSource.getRadius();
-        for (FoodSource foodSource : this.foodSources) {
-            if (foodSource != null && p2.isWithinRadius(foodSource.getPosition(), radius)) {
-                return foodSource;
-            }
-        }
-        return null;
+        return this.foodPlacement.find(p2);
     }
     private void placeFoodSource() {
-        Random random = new Random();
-        int diff = FoodSource.getRadius();
-        int x = random.nextInt(diff, this.width - diff);
-        int y = random.nextInt(diff, this.height - diff);
-        while (avoidTwoAtOnePoint(x, y, diff)){
-            x = random.nextInt(diff, this.width - diff);
-            y = random.nextInt(diff, this.height - diff);
-        }
-        Position foodPosition = new Position(x, y);
-        FoodSource foodSource = new FoodSource(foodPosition);
+        final FoodSource foodSource = this.foodPlacement.place();
+        this.foodPlacement.stamp(this.foodMatrix, foodSource.getPosition(), true);
         this.foodSources.add(foodSource);
-        updateFoodMatrix(foodSource.getPosition(), true);
+        final WorldRegion region = foodRegion(foodSource);
+        for (final WorldChangeListener l : this.listeners) {
+            l.foodSourceAdded(region);
+        }
     }
 
-    private boolean avoidTwoAtOnePoint(int x, int y, int diff){
-        for (int xdiff = -diff; xdiff <= diff; xdiff++){
-            for (int ydiff = -diff; ydiff <= diff; ydiff++){
-                if (this.foodMatrix[x+xdiff][y+ydiff]){
-                    return true;
-                }
-            }
-        }
-        return false;
+    private WorldRegion foodRegion(final FoodSource foodSource) {
+        return WorldRegion.around(foodSource.getPosition(), FoodSource.getRadius(), this.width, this.height);
     }
 
     @Override
@@ -113,133 +204,447 @@ public class MyAntWorld implements AntWorld {
     }
     @Override
     public boolean isObstacle(Position p){
-        return !p.isInBounds(this.width, this.height);
+        return !p.isInBounds(this.width, this.height) || this.obstacles[index(p)];
     }
     @Override
     public void dropForagingPheromone(Position p, float amount){
-        if (p.isInBounds(this.width, this.height)){
-            int x = (int) p.getX();
-            int y = (int) p.getY();
-            float oldAmount = this.foragingPheromone[x][y];
-            this.foragingPheromone[x][y] = Math.min(1, oldAmount + amount);
-        }
+        dropPheromone(FORAGING_PHEROMONE, p, amount);
     }
     @Override
     public void dropFoodPheromone(Position p, float amount){
-        if (p.isInBounds(this.width, this.height)){
-            int x = (int) p.getX();
-            int y = (int) p.getY();
-            float oldAmount = this.foodPheromone[x][y];
-            this.foodPheromone[x][y] = Math.min(1, oldAmount + amount);
-        }
+        dropPheromone(FOOD_PHEROMONE, p, amount);
     }
     @Override
     public float getForagingStrength(Position p){
-        if (p.isInBounds(this.width, this.height)){
-            return this.foragingPheromone[(int) p.getX()][(int) p.getY()];
-        }
-        return 0;
+        return getPheromoneLevel(FORAGING_PHEROMONE, p);
     }
     @Override
     public float getFoodStrength(Position p){
-        if (p.isInBounds(this.width, this.height)){
-            return this.foodPheromone[(int) p.getX()][(int) p.getY()];
+        return getPheromoneLevel(FOOD_PHEROMONE, p);
+    }
+    @Override
+    public int getPheromoneChannels() {
+        return this.channels;
+    }
+    @Override
+    public void dropPheromone(final int channel, final Position p, final float amount) {
+        Objects.checkIndex(channel, this.channels);
+        this.pheromoneDrops++;
+        addPheromone(channel, p, amount);
+    }
+
+    /**
+     * Tops up the food pheromones at every food source, as every dispersal does. Not counted as drops, which are
+     * the ants' doing.
+     */
+    private void refreshFoodSources() {
+        for (final FoodSource foodSource : this.foodSources) {
+            addPheromone(FOOD_PHEROMONE, foodSource.getPosition(), 1);
+        }
+    }
+
+    private void addPheromone(final int channel, final Position p, final float amount) {
+        if (p.isInBounds(this.width, this.height)) {
+            materialize(p);
+            final int i = index(p) * this.channels + channel;
+            this.pheromones[i] = Math.min(1, this.pheromones[i] + amount);
+            written(p, this.pheromones[i]);
+        }
+    }
+    @Override
+    public float getPheromoneLevel(final int channel, final Position p) {
+        Objects.checkIndex(channel, this.channels);
+        if (p.isInBounds(this.width, this.height)) {
+            final float level = this.pheromones[index(p) * this.channels + channel];
+            return null == this.lazy ? level : level * this.lazy.factor(this.lazy.tile((int) p.getX(), (int) p.getY()));
         }
         return 0;
     }
     @Override
-    public void dropFood(Position p){
+    public void copyPheromones(final float[] food, final float[] foraging) {
+        copyChannel(FOOD_PHEROMONE, food);
+        copyChannel(FORAGING_PHEROMONE, foraging);
+    }
 
+    private void copyChannel(final int channel, final float[] destination) {
+        if (null != this.lazy) {
+            this.lazy.copy(this.pheromones, channel, destination);
+            return;
+        }
+        for (int i = 0; i < this.width * this.height; i++) {
+            destination[i] = this.pheromones[i * this.channels + channel];
+        }
+    }
+
+    /**
+     * Stops rewriting every cell in every dispersal. Instead, each tile of cells remembers when it was last dispersed,
+     * and its levels are multiplied by the evaporation of the dispersal policy once per dispersal since then when they
+     * are read or written. Only tiles that were written since the last dispersal or still hold a level above
+     * {@code activeLevel}, and the tiles next to those, are dispersed. See {@code LazyEvaporation}.
+     *
+     * <p>
+     * Quiet tiles only evaporate, so levels of at most {@code activeLevel} stop spreading once no trail is near. With
+     * an {@code activeLevel} of 0 the levels are exactly those of eager dispersal. Where the policy does not spread
+     * levels at all, they are those of eager dispersal for any {@code activeLevel}, except that a level left to
+     * evaporate for {@code dt} dispersals may differ from it by up to {@code dt + 2} ulps, as {@code LazyEvaporation}
+     * rounds the evaporation of those dispersals once rather than {@code dt} times.
+     * </p>
+     *
+     * @throws IllegalArgumentException If the dispersal policy does not tell how levels evaporate.
+     */
+    public void useLazyEvaporation(final float activeLevel) {
+        materialize();
+        this.lazy = new LazyEvaporation(this.width, this.height, this.channels, this.dispersalPolicy.getEvaporation(),
+                activeLevel);
+    }
+
+    /**
+     * Brings every stored level up to date, so that the arrays hold the true levels.
+     */
+    private void materialize() {
+        if (null != this.lazy) {
+            this.lazy.materializeAll(this.pheromones);
+        }
+    }
+
+    private void materialize(final Position p) {
+        if (null != this.lazy) {
+            this.lazy.materialize(this.lazy.tile((int) p.getX(), (int) p.getY()), this.pheromones);
+        }
+    }
+
+    private void written(final Position p, final float level) {
+        if (null != this.lazy) {
+            this.lazy.written(this.lazy.tile((int) p.getX(), (int) p.getY()), level);
+        }
+    }
+    private int index(final Position p) {
+        return (int) p.getY() * this.width + (int) p.getX();
+    }
+    @Override
+    public void dropFood(Position p){
+        this.foodCount++;
     }
     @Override
     public float getDeadAntCount(Position p){
-        return 0;
+        return p.isInBounds(this.width, this.height) ? this.deadAnts[index(p)] : 0;
+    }
+    @Override
+    public void addDeadAnt(final Position p) {
+        if (p.isInBounds(this.width, this.height)) {
+            final int i = index(p);
+            if (0.0f == this.deadAnts[i]) {
+                listDeadCell(i);
+            }
+            this.deadAnts[i] += 1.0f;
+        }
+    }
+
+    private void listDeadCell(final int i) {
+        if (this.deadCells.length == this.deadCellCount) {
+            this.deadCells = Arrays.copyOf(this.deadCells, Math.max(16, 2 * this.deadCellCount));
+        }
+        this.deadCells[this.deadCellCount++] = i;
+    }
+
+    private void decayDeadAnts() {
+        for (int k = this.deadCellCount - 1; 0 <= k; k--) {
+            final int i = this.deadCells[k];
+            this.deadAnts[i] *= DEAD_ANT_DECAY;
+            if (DEAD_ANT_MIN > this.deadAnts[i]) {
+                this.deadAnts[i] = 0.0f;
+                this.deadCells[k] = this.deadCells[--this.deadCellCount];
+            }
+        }
     }
 
     @Override
     public long getFoodCount(){
-        return 0;
+        return this.foodCount;
+    }
+    @Override
+    public long getPheromoneDropCount() {
+        return this.pheromoneDrops;
     }
     @Override
     public boolean isHome(final Position p) {
-        return p.isWithinRadius(this.homePosition, 20);
+        return p.isWithinRadius(this.homePosition, HOME_RADIUS);
     }
     @Override
     public void dispersePheromones() {
-        float[][] tempFoodPhero = new float[this.width][this.height];
-        float[][] tempForagePhero = new float[this.width][this.height];
+        this.dispersingThread = Thread.currentThread();
+        decayDeadAnts();
+        if (null != this.lazy) {
+            disperseActiveTiles();
+            return;
+        }
+        final DispersalEvent event = new DispersalEvent();
+        event.begin();
+        long cellsTouched = 0;
+        final float[] dispersed = null != this.spare ? this.spare : new float[this.pheromones.length];
+
+        refreshFoodSources();
 
-        for (FoodSource foodSource : this.foodSources) {
-            dropFoodPheromone(foodSource.getPosition(), 1);
+        for (int y = 0; y < this.height; y++) {
+            cellsTouched += disperseRow(y, 0, this.width, dispersed, y * this.width * this.channels);
         }
 
-        for (int x = 0; x < this.width; x++) {
-            for (int y = 0; y < this.height; y++) {
-                if (!isObstacle(new Position(x, y))) {
-                    // call dispersalPolicy on each cell
-                    float[] pheroValues = this.dispersalPolicy.getDispersedValue(this, new Position(x, y));
-                    tempFoodPhero[x][y] = pheroValues[0];
-                    tempForagePhero[x][y] = pheroValues[1];
+        this.spare = this.pheromones;
+        this.pheromones = dispersed;
+        if (event.shouldCommit()) {
+            event.cellsTouched = cellsTouched;
+            event.commit();
+        }
+    }
+
+    /**
+     * Disperses every channel of cells {@code <fromX, y>} to {@code <toX - 1, y>} into {@code destination}, starting
+     * at {@code offset}. The policy is given one run of cells without obstacles at a time; levels under obstacles are
+     * cleared.
+     *
+     * @return The number of cells dispersed.
+     */
+    private int disperseRow(final int y, final int fromX, final int toX, final float[] destination, final int offset) {
+        final int row = y * this.width;
+        int cells = 0;
+        int x = fromX;
+        while (x < toX) {
+            final int k = offset + (x - fromX) * this.channels;
+            if (this.obstacles[row + x]) {
+                Arrays.fill(destination, k, k + this.channels, 0.0f);
+                x++;
+            } else {
+                int end = x + 1;
+                while (end < toX && !this.obstacles[row + end]) {
+                    end++;
                 }
+                this.dispersalPolicy.disperseRow(this, this.pheromones, this.channels, y, x, end, destination, k);
+                cells += end - x;
+                x = end;
             }
         }
+        return cells;
+    }
 
-        this.foodPheromone = tempFoodPhero;
-        this.foragingPheromone = tempForagePhero;
+    /**
+     * Disperses the active tiles of lazy evaporation, see {@code LazyEvaporation}.
+     */
+    private void disperseActiveTiles() {
+        final DispersalEvent event = new DispersalEvent();
+        event.begin();
+        refreshFoodSources();
+        final int tileLevels = LazyEvaporation.TILE * LazyEvaporation.TILE * this.channels;
+        final int active = this.lazy.selectActive();
+        this.lazy.materializeActive(this.pheromones);
+        if (null == this.activeMaxima || this.activeMaxima.length < active) {
+            this.activeLevels = new float[active * tileLevels];
+            this.activeMaxima = new float[active];
+        }
+
+        long cellsTouched = 0;
+        for (int t = 0; t < active; t++) {
+            final int tile = this.lazy.getActiveTile(t);
+            final int x0 = this.lazy.getTileX(tile);
+            final int y0 = this.lazy.getTileY(tile);
+            final int x1 = Math.min(this.width, x0 + LazyEvaporation.TILE);
+            float max = 0.0f;
+            for (int y = y0; y < Math.min(this.height, y0 + LazyEvaporation.TILE); y++) {
+                final int k = t * tileLevels + (y - y0) * LazyEvaporation.TILE * this.channels;
+                cellsTouched += disperseRow(y, x0, x1, this.activeLevels, k);
+                for (int i = k; i < k + (x1 - x0) * this.channels; i++) {
+                    max = Math.max(max, this.activeLevels[i]);
+                }
+            }
+            this.activeMaxima[t] = max;
+        }
+
+        for (int t = 0; t < active; t++) {
+            final int tile = this.lazy.getActiveTile(t);
+            final int x0 = this.lazy.getTileX(tile);
+            final int y0 = this.lazy.getTileY(tile);
+            final int levels = Math.min(this.width - x0, LazyEvaporation.TILE) * this.channels;
+            for (int y = y0; y < Math.min(this.height, y0 + LazyEvaporation.TILE); y++) {
+                final int k = t * tileLevels + (y - y0) * LazyEvaporation.TILE * this.channels;
+                System.arraycopy(this.activeLevels, k, this.pheromones, (y * this.width + x0) * this.channels, levels);
+            }
+        }
+        this.lazy.dispersed(this.activeMaxima);
+        if (event.shouldCommit()) {
+            event.cellsTouched = cellsTouched;
+            event.commit();
+        }
     }
 
     public void selfContainedDisperse() {
         final float K = 0.5f;
         final float F = 0.95f;
 
-        for (FoodSource foodSource : this.foodSources) {
-            dropFoodPheromone(foodSource.getPosition(), 1);
-        }
-        float[][] tempFoodPhero = new float[this.width][this.height];
-        float[][] tempForagePhero = new float[this.width][this.height];
+        refreshFoodSources();
+        float[] tempPhero = new float[this.pheromones.length];
 
         for (int x = 0; x < this.width; x++) {
             for (int y = 0; y < this.height; y++) {
-                float sumFoodPhero = 0;
-                float sumForagePhero = 0;
-                if (!isObstacle(new Position(x, y))) {
-                    float foodPhero = this.foodPheromone[x][y];
-                    float foragePhero = this.foragingPheromone[x][y];
+                if (isObstacle(new Position(x, y))) {
+                    continue;
+                }
+                for (int c = 0; c < this.channels; c++) {
+                    float sumPhero = 0;
+                    float phero = this.pheromones[(y * this.width + x) * this.channels + c];
 
                     // loop through immediate neighbours
                     for (int i = x - 1; i <= x + 1; i++) {
                         for (int j = y - 1; j <= y + 1; j++) {
                             // don't evaluate own position & check for bounds
                             if (!(i == x && j == y) && new Position (i, j).isInBounds(this.width, this.height)) {
-                                sumFoodPhero += this.foodPheromone[i][j];
-                                sumForagePhero += this.foragingPheromone[i][j];
+                                sumPhero += this.pheromones[(j * this.width + i) * this.channels + c];
                             // if not in bounds (& not own position) -> we're looking at an edge position
                             // so add own value
                             } else if (!(i == x && j == y)) {
-                                sumFoodPhero += foodPhero;
-                                sumForagePhero += foragePhero;
+                                sumPhero += phero;
                             }
                         }
                     }
                     // do the K and F calculations
-                    sumFoodPhero = ((1 - K) * sumFoodPhero) / 8 + (K * foodPhero);
-                    sumForagePhero = ((1 - K) * sumForagePhero) / 8 + (K * foragePhero);
+                    sumPhero = ((1 - K) * sumPhero) / 8 + (K * phero);
+                    tempPhero[(y * this.width + x) * this.channels + c] = sumPhero * F;
                 }
-                tempFoodPhero[x][y] = sumFoodPhero * F;
-                tempForagePhero[x][y] = sumForagePhero * F;
             }
         }
         // overwrite old pheromone matrix
-        this.foodPheromone = tempFoodPhero;
-        this.foragingPheromone = tempForagePhero;
+        this.pheromones = tempPhero;
     }
 
+    /**
+     * <p>
+     * With lazy evaporation this also brings the cell's tile up to date and marks it written, which must never race
+     * with a dispersal, so an edit from any thread but the one that dispersed last is refused. Views hand their edits
+     * to {@code SimulationLoop.submit}, which applies them between epochs on the simulation thread.
+     * </p>
+     *
+     * @throws IllegalStateException If lazy evaporation is used and this is not the simulation thread.
+     */
     @Override
     public void setObstacle(final Position p, final boolean add) {
+        final Thread dispersing = this.dispersingThread;
+        if (null != this.lazy && null != dispersing && Thread.currentThread() != dispersing) {
+            throw new IllegalStateException("Obstacles of a lazily evaporating world must be edited by the "
+                    + "simulation thread " + dispersing.getName() + ", see SimulationLoop.submit");
+        }
+        if (p.isInBounds(this.width, this.height) && this.obstacles[index(p)] != add) {
+            this.obstacles[index(p)] = add;
+            // The levels under a new obstacle are cleared by the next dispersal.
+            materialize(p);
+            written(p, 0.0f);
+            final WorldRegion region = WorldRegion.around(p, 0, this.width, this.height);
+            for (final WorldChangeListener l : this.listeners) {
+                l.obstaclesChanged(region);
+            }
+        }
     }
 
     @Override
     public void hitObstacle(final Position p, final float strength) {
 
     }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // State for Checkpoint. The arrays are the live ones, so only the simulation thread may use them.
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return The book-keeping of lazy evaporation, or {@code null} if every dispersal rewrites every cell.
+     */
+    LazyEvaporation getLazyEvaporation() {
+        return this.lazy;
+    }
+
+    /**
+     * Evaporates lazily from the stored levels as they are, without bringing them up to date first. The book-keeping
+     * returned is to be filled in to match the levels, see {@code LazyEvaporation.restoreDispersals}.
+     *
+     * @throws IllegalArgumentException If the dispersal policy does not tell how levels evaporate.
+     */
+    LazyEvaporation restoreLazyEvaporation(final float activeLevel) {
+        this.lazy = new LazyEvaporation(this.width, this.height, this.channels, this.dispersalPolicy.getEvaporation(),
+                activeLevel);
+        return this.lazy;
+    }
+
+    /**
+     * @return The pheromone levels as stored, cell by cell, the channels of cell {@code <x, y>} from index
+     * {@code (y * width + x) * getPheromoneChannels()}.
+     */
+    float[] getPheromones() {
+        return this.pheromones;
+    }
+
+    /**
+     * @return The dead ants per cell, row by row. After filling it, call {@code restoreDeadAnts}.
+     */
+    float[] getDeadAnts() {
+        return this.deadAnts;
+    }
+
+    /**
+     * Lists the cells holding dead ants after {@code getDeadAnts()} was filled.
+     */
+    void restoreDeadAnts() {
+        this.deadCellCount = 0;
+        for (int i = 0; i < this.deadAnts.length; i++) {
+            if (0.0f != this.deadAnts[i]) {
+                listDeadCell(i);
+            }
+        }
+    }
+
+    boolean[] getObstacles() {
+        return this.obstacles;
+    }
+
+    /**
+     * @return The cells covered by food sources, indexed {@code [x][y]}.
+     */
+    boolean[][] getFoodMatrix() {
+        return this.foodMatrix;
+    }
+
+    List<FoodSource> getFoodSources() {
+        return this.foodSources;
+    }
+
+    Konadare192RNG getFoodRng() {
+        return this.foodRng;
+    }
+
+    /**
+     * @return The seed the food placement generator started from.
+     */
+    public long getFoodSeed() {
+        return this.foodSeed;
+    }
+
+    /**
+     * Adds a food source as it was, without touching the food matrix or telling any listener.
+     *
+     * @throws IllegalArgumentException If it is off the map or overlaps a source restored before.
+     */
+    void restoreFoodSource(final FoodSource foodSource) {
+        this.foodPlacement.add(foodSource);
+        this.foodSources.add(foodSource);
+    }
+
+    void restoreCounts(final long foodCount, final long pheromoneDrops) {
+        this.foodCount = foodCount;
+        this.pheromoneDrops = pheromoneDrops;
+    }
+
+    @Override
+    public void addWorldChangeListener(final WorldChangeListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removeWorldChangeListener(final WorldChangeListener listener) {
+        this.listeners.remove(listener);
+    }
 }
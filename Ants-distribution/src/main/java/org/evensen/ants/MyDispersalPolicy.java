@@ -39,4 +39,77 @@ public class MyDispersalPolicy implements DispersalPolicy {
         result[1] = sumForagePhero * this.f;
         return result;
     }
+
+    // Sums the neighbours in the same order as getDispersedValue, so both give the same levels to the bit.
+    @Override
+    public void disperseRow(final AntWorld w, final float[] levels, final int channels, final int y, final int fromX,
+                            final int toX, final float[] destination, final int offset) {
+        final int width = w.getWidth();
+        final int height = w.getHeight();
+        if (0 == y || height - 1 == y) {
+            disperseEdge(w, levels, channels, y, fromX, toX, destination, offset);
+            return;
+        }
+        final int from = Math.max(fromX, 1);
+        final int to = Math.max(from, Math.min(toX, width - 1));
+        disperseEdge(w, levels, channels, y, fromX, from, destination, offset);
+        // Away from the edges every level has its neighbours at the same offsets, whatever its channel, so the levels
+        // of the whole run are dispersed in one flat loop.
+        final int stride = width * channels;
+        final int first = (y * width + from) * channels;
+        final int last = (y * width + to) * channels;
+        final int shift = offset + (from - fromX) * channels - first;
+        for (int i = first; i < last; i++) {
+            float sum = 0;
+            sum += levels[i - channels - stride];
+            sum += levels[i - channels];
+            sum += levels[i - channels + stride];
+            sum += levels[i - stride];
+            sum += levels[i + stride];
+            sum += levels[i + channels - stride];
+            sum += levels[i + channels];
+            sum += levels[i + channels + stride];
+            destination[i + shift] = disperse(sum, levels[i]);
+        }
+        disperseEdge(w, levels, channels, y, to, toX, destination, offset + (to - fromX) * channels);
+    }
+
+    /**
+     * Disperses cells next to the edge of the world, where neighbours off the map count as the cell itself.
+     */
+    private void disperseEdge(final AntWorld w, final float[] levels, final int channels, final int y, final int fromX,
+                              final int toX, final float[] destination, final int offset) {
+        final int width = w.getWidth();
+        final int height = w.getHeight();
+        int k = offset;
+        for (int x = fromX; x < toX; x++) {
+            for (int c = 0; c < channels; c++) {
+                final float own = levels[(y * width + x) * channels + c];
+                float sum = 0;
+                for (int i = x - 1; i <= x + 1; i++) {
+                    for (int j = y - 1; j <= y + 1; j++) {
+                        if (!(i == x && j == y)) {
+                            sum += 0 <= i && width > i && 0 <= j && height > j
+                                    ? levels[(j * width + i) * channels + c] : own;
+                        }
+                    }
+                }
+                destination[k++] = disperse(sum, own);
+            }
+        }
+    }
+
+    @Override
+    public boolean canDisperse(final int channels) {
+        return 0 < channels;
+    }
+
+    private float disperse(final float sum, final float own) {
+        return (((1 - this.k) * sum) / 8 + (this.k * own)) * this.f;
+    }
+
+    @Override
+    public float getEvaporation() {
+        return this.f;
+    }
 }
@@ -7,7 +7,6 @@ import java.util.TreeSet;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.random.RandomGenerator.SplittableGenerator;
 
 import static org.evensen.ants.GraphicsMath.TAU;
 
@@ -27,6 +26,9 @@ public class PellAnt implements Ant {
     private static final float[] RADII_WEIGHTS;
     private static final int DEFAULT_HIT_POINTS = 10;
     private static final float PHEROMONE_STRENGTH = 0.001f;
+    // The number of angles a scan looks at, and the noise applied to each, drawn in bulk once per scan.
+    private static final int SCAN_STEPS;
+    private static final ThreadLocal<double[]> SCENT_NOISE;
 
     static {
         RADII_WEIGHTS = new float[(int) ((SCAN_RADIUS - MIN_SCAN_RADIUS) / RADIUS_INCREMENT + 1)];
@@ -35,6 +37,12 @@ public class PellAnt implements Ant {
             RADII_WEIGHTS[i] = radius * radius;
             i++;
         }
+        int steps = 0;
+        for (float angle = -SCAN_ANGLE / 2.0f; SCAN_ANGLE / 2.0 >= angle; angle += SCAN_INCREMENT) {
+            steps++;
+        }
+        SCAN_STEPS = steps;
+        SCENT_NOISE = ThreadLocal.withInitial(() -> new double[SCAN_STEPS]);
     }
 
     private static final class BehaviourState {
@@ -103,10 +111,16 @@ public class PellAnt implements Ant {
     private final BehaviourState foragingState;
     private BehaviourState currentState;
 
-    private final float pheromoneRate;
-    private final SplittableGenerator rng;
-    private final float moveRate;
-    private final float carryingMoveRate;
+    private float pheromoneRate;
+    // Each move draws from its own substream, keyed by the ant and the number of moves it has made, so what an ant
+    // draws does not depend on the order the ants move in or on which worker moves them.
+    private final Konadare192RNG rng;
+    private final long seed;
+    private final int worker;
+    private final int id;
+    private long moves;
+    private float moveRate;
+    private float carryingMoveRate;
     private final Action currentGoal;
     private Position position;
     private boolean carriesFood;
@@ -115,19 +129,69 @@ public class PellAnt implements Ant {
 
     private int hitPoints;
 
-    public PellAnt(final Position startingPosition, final float pheromoneRate) {
+    /**
+     * @param seed   The seed of the colony.
+     * @param worker The worker moving the ant, and {@code id} its number among that worker's ants. Together they
+     *               pick the ant's substreams of {@code seed}, see {@code Konadare192RNG.substream}.
+     */
+    public PellAnt(final Position startingPosition, final float pheromoneRate, final long seed, final int worker,
+                   final int id) {
+        this.seed = seed;
+        this.worker = worker;
+        this.id = id;
+        this.rng = Konadare192RNG.substream(seed, worker, id, 0);
+        this.currentGoal = Action.FORAGING;
+        this.carryingState = getCarryingState();
+        this.foragingState = getForagingState();
+        begin(startingPosition, pheromoneRate);
+    }
+
+    /**
+     * Turns this dead ant into a new one with the same id, so that the colony can reuse the objects and ids of dead
+     * ants. The new life draws from the substream of the move after the last one of the old life, and moves on from
+     * there, so no substream of this id is drawn from twice.
+     */
+    void hatch(final Position startingPosition, final float pheromoneRate) {
+        this.moves++;
+        this.rng.reseed(this.seed, this.worker, this.id, this.moves);
+        begin(startingPosition, pheromoneRate);
+    }
+
+    private void begin(final Position startingPosition, final float pheromoneRate) {
         this.position = startingPosition;
-        this.rng = new Konadare192RNG(startingPosition.hashCode() * 9999L + Float.hashCode(pheromoneRate));
         this.pheromoneRate = pheromoneRate + this.rng.nextFloat() * pheromoneRate * 0.1f;
         this.direction = this.rng.nextFloat() * TAU;
         this.moveRate = MOVE_RATE + this.rng.nextFloat() * MOVE_RATE * 0.1f;
         this.carryingMoveRate = this.moveRate * CARRYING_MOVE_SCALE;
-        this.currentGoal = Action.FORAGING;
         this.hitPoints = DEFAULT_HIT_POINTS;
         this.carriesFood = false;
+        this.pheromonesLeft = 0.0f;
+        this.currentState = this.foragingState;
+    }
+
+    /**
+     * Continues an ant from its state, see {@code Checkpoint}.
+     */
+    PellAnt(final Position position, final float direction, final float pheromoneRate, final float moveRate,
+            final float pheromonesLeft, final int hitPoints, final boolean carriesFood, final long seed,
+            final int worker, final int id, final long moves) {
+        this.position = position;
+        this.seed = seed;
+        this.worker = worker;
+        this.id = id;
+        this.moves = moves;
+        this.rng = Konadare192RNG.substream(seed, worker, id, moves);
+        this.pheromoneRate = pheromoneRate;
+        this.direction = direction;
+        this.moveRate = moveRate;
+        this.carryingMoveRate = this.moveRate * CARRYING_MOVE_SCALE;
+        this.currentGoal = Action.FORAGING;
+        this.hitPoints = hitPoints;
+        this.pheromonesLeft = pheromonesLeft;
+        this.carriesFood = carriesFood;
         this.carryingState = getCarryingState();
         this.foragingState = getForagingState();
-        this.currentState = this.foragingState;
+        this.currentState = carriesFood ? this.carryingState : this.foragingState;
     }
 
     @Override
@@ -157,7 +221,10 @@ public class PellAnt implements Ant {
         final float strongestScent = 0;
         final float strongestAngle = this.direction;
         final SortedSet<Scent> bestScents = new TreeSet<>();
+        final double[] noise = SCENT_NOISE.get();
+        this.rng.nextGaussians(noise, 0, SCAN_STEPS);
 
+        int step = 0;
         for (float i = -SCAN_ANGLE / 2.0f; SCAN_ANGLE / 2.0 >= i; i += SCAN_INCREMENT) {
             final float theta = this.direction + i;
             float scentAcc = 0.0f;
@@ -176,7 +243,7 @@ public class PellAnt implements Ant {
                 radiusIndex++;
             }
             scentAcc -= negativeScentAcc;
-            scentAcc *= ((float) this.rng.nextGaussian() * SCENT_DEVIATION + 2.0f);
+            scentAcc *= ((float) noise[step++] * SCENT_DEVIATION + 2.0f);
             if (scentAcc > 0) {
                 bestScents.add(new Scent(theta, scentAcc));
             }
@@ -265,6 +332,8 @@ public class PellAnt implements Ant {
         if (isDead()) {
             return;
         }
+        this.moves++;
+        this.rng.reseed(this.seed, this.worker, this.id, this.moves);
         replenishPheromones(w);
         final boolean hasPheromones = 1.0E-4f < this.pheromonesLeft;
 
@@ -305,6 +374,38 @@ public class PellAnt implements Ant {
         return this.carriesFood;
     }
 
+    float getPheromoneRate() {
+        return this.pheromoneRate;
+    }
+
+    float getMoveRate() {
+        return this.moveRate;
+    }
+
+    float getPheromonesLeft() {
+        return this.pheromonesLeft;
+    }
+
+    int getHitPoints() {
+        return this.hitPoints;
+    }
+
+    long getSeed() {
+        return this.seed;
+    }
+
+    int getWorker() {
+        return this.worker;
+    }
+
+    int getId() {
+        return this.id;
+    }
+
+    long getMoves() {
+        return this.moves;
+    }
+
     private enum Action {
         FORAGING,
         CARRYING
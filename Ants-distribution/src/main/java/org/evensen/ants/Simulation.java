@@ -0,0 +1,76 @@
+package org.evensen.ants;
+
+import org.evensen.ants.metrics.Phase;
+import org.evensen.ants.metrics.PhaseClock;
+import org.evensen.ants.metrics.SimulationMetrics;
+
+/**
+ * Advances a world and its colony one epoch at a time.
+ */
+public class Simulation {
+    private static final int DISPERSAL_INTERVAL = 5;
+
+    private final AntWorld world;
+    private final AntColony colony;
+    private long epoch;
+    private long lastFoodCount;
+    private long lastDropCount;
+    private final PhaseClock epochClock;
+    private final PhaseClock dispersalClock;
+
+    public Simulation(final AntWorld world, final AntColony colony) {
+        this.world = world;
+        this.colony = colony;
+        this.epoch = 0;
+        this.epochClock = new PhaseClock(SimulationMetrics.global());
+        this.dispersalClock = new PhaseClock(SimulationMetrics.global());
+    }
+
+    /**
+     * Continues a simulation after {@code epoch} epochs, see {@code Checkpoint}.
+     */
+    Simulation(final AntWorld world, final AntColony colony, final long epoch) {
+        this(world, colony);
+        this.epoch = epoch;
+        this.lastFoodCount = world.getFoodCount();
+        this.lastDropCount = world.getPheromoneDropCount();
+    }
+
+    /**
+     * Runs one epoch: every ant moves once and every {@code DISPERSAL_INTERVAL}th epoch the pheromones disperse.
+     */
+    public void step() {
+        final SimulationMetrics metrics = SimulationMetrics.global();
+        this.epochClock.start();
+        this.colony.updateAnts(this.world);
+        this.epoch++;
+        if (0 == this.epoch % DISPERSAL_INTERVAL) {
+            this.dispersalClock.start();
+            this.world.dispersePheromones();
+            this.dispersalClock.lap(Phase.DISPERSAL);
+        }
+        this.epochClock.lap(Phase.EPOCH);
+
+        final long food = this.world.getFoodCount();
+        final long drops = this.world.getPheromoneDropCount();
+        metrics.countFoodDelivered(food - this.lastFoodCount);
+        metrics.countPheromoneDrops(drops - this.lastDropCount);
+        this.lastFoodCount = food;
+        this.lastDropCount = drops;
+    }
+
+    /**
+     * @return The number of completed epochs.
+     */
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    public AntWorld getWorld() {
+        return this.world;
+    }
+
+    public AntColony getColony() {
+        return this.colony;
+    }
+}
@@ -0,0 +1,379 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * World, colony and run parameters of a simulation.
+ *
+ * <p>
+ * Parameters are given as {@code --key=value} arguments, or as {@code key=value} lines of a properties file named by
+ * {@code --config=<file>}. Arguments override values from the file, which override the defaults.
+ * </p>
+ *
+ * <table>
+ *     <caption>Keys</caption>
+ *     <tr><td>{@code width}, {@code height}</td><td>World size in cells.</td></tr>
+ *     <tr><td>{@code ants}</td><td>Number of ants in the colony.</td></tr>
+ *     <tr><td>{@code pheromone-rate}</td><td>Probability that an ant drops pheromones when moving.</td></tr>
+ *     <tr><td>{@code seed}</td><td>Seed of the ants' random draws. Optional. See {@code AntColony}.</td></tr>
+ *     <tr><td>{@code food-sources}</td><td>Number of food sources in the world at any time.</td></tr>
+ *     <tr><td>{@code food-seed}</td><td>Seed of where food sources are placed. Optional; without it the layout only
+ *     depends on the world size. See {@code MyAntWorld}.</td></tr>
+ *     <tr><td>{@code epochs}</td><td>Number of epochs of a batch run.</td></tr>
+ *     <tr><td>{@code report-interval}</td><td>Epochs between progress reports of a batch run.</td></tr>
+ *     <tr><td>{@code restore}</td><td>Checkpoint file to resume from instead of building a new world and colony.
+ *     Optional; the world, colony, food and evaporation parameters are then ignored.</td></tr>
+ *     <tr><td>{@code checkpoint}</td><td>File to save the simulation to when it stops, and after every progress
+ *     report of a batch run. Optional. See {@code Checkpoint}.</td></tr>
+ *     <tr><td>{@code record}</td><td>Directory to record the run to. Optional. See {@code FrameRecorder}.</td></tr>
+ *     <tr><td>{@code record-interval}</td><td>Epochs between recorded epochs.</td></tr>
+ *     <tr><td>{@code terrain-seed}</td><td>Seed of the obstacle terrain. Optional; without it the world has no
+ *     obstacles. See {@code TerrainGenerator}.</td></tr>
+ *     <tr><td>{@code terrain-scale}</td><td>Size of the largest terrain features, in cells.</td></tr>
+ *     <tr><td>{@code terrain-octaves}</td><td>Number of terrain noise octaves.</td></tr>
+ *     <tr><td>{@code terrain-wall}</td><td>Thickness of the terrain walls, between 0 and 0.5.</td></tr>
+ *     <tr><td>{@code terrain-cache}</td><td>Directory to cache generated terrain in. Optional.</td></tr>
+ *     <tr><td>{@code lazy-evaporation}</td><td>Pheromone level below which quiet parts of the world only evaporate
+ *     instead of being dispersed, e.g. {@code 0.0001}. Optional; without it every cell is dispersed every time. See
+ *     {@code MyAntWorld.useLazyEvaporation}.</td></tr>
+ *     <tr><td>{@code pheromone-channels}</td><td>Number of pheromone channels of the world, at least the two of food
+ *     and foraging pheromones.</td></tr>
+ * </table>
+ */
+public final class SimulationConfig {
+    private static final List<String> KEYS =
+            List.of("width", "height", "ants", "pheromone-rate", "seed", "food-sources", "food-seed", "epochs",
+                    "report-interval", "restore", "checkpoint", "record", "record-interval", "terrain-seed",
+                    "terrain-scale", "terrain-octaves", "terrain-wall", "terrain-cache", "lazy-evaporation",
+                    "pheromone-channels");
+
+    // Kept for toString; every value is parsed once, by the constructor.
+    private final Properties values;
+    private final int width;
+    private final int height;
+    private final int ants;
+    private final float pheromoneRate;
+    private final long seed;
+    private final int foodSources;
+    private final long foodSeed;
+    private final long epochs;
+    private final long reportInterval;
+    private final Path restore;
+    private final Path checkpoint;
+    private final Path record;
+    private final long recordInterval;
+    private final boolean terrain;
+    private final long terrainSeed;
+    private final double terrainScale;
+    private final int terrainOctaves;
+    private final double terrainWall;
+    private final Path terrainCache;
+    private final float lazyEvaporation;
+    private final int pheromoneChannels;
+
+    /**
+     * @throws IllegalArgumentException If a value is malformed.
+     */
+    private SimulationConfig(final Properties values) {
+        this.values = values;
+        this.width = getInt("width");
+        this.height = getInt("height");
+        this.ants = getInt("ants");
+        this.pheromoneRate = getFloat("pheromone-rate");
+        this.seed = null == values.getProperty("seed") ? AntColony.DEFAULT_SEED : getLong("seed");
+        this.foodSources = getInt("food-sources");
+        this.foodSeed = null == values.getProperty("food-seed")
+                ? MyAntWorld.defaultFoodSeed(this.width, this.height) : getLong("food-seed");
+        this.epochs = getLong("epochs");
+        this.reportInterval = getLong("report-interval");
+        this.restore = getPath("restore");
+        this.checkpoint = getPath("checkpoint");
+        this.record = getPath("record");
+        this.recordInterval = getLong("record-interval");
+        this.terrain = null != values.getProperty("terrain-seed");
+        this.terrainSeed = this.terrain ? getLong("terrain-seed") : 0;
+        this.terrainScale = getDouble("terrain-scale");
+        this.terrainOctaves = getInt("terrain-octaves");
+        this.terrainWall = getDouble("terrain-wall");
+        this.terrainCache = getPath("terrain-cache");
+        this.lazyEvaporation = null == values.getProperty("lazy-evaporation") ? Float.NaN
+                : getFloat("lazy-evaporation");
+        this.pheromoneChannels = getInt("pheromone-channels");
+    }
+
+    /**
+     * @return A configuration with the default values only.
+     */
+    public static SimulationConfig defaults() {
+        final Properties p = new Properties();
+        p.setProperty("width", "400");
+        p.setProperty("height", "200");
+        p.setProperty("ants", "10000");
+        p.setProperty("pheromone-rate", "0.7");
+        p.setProperty("food-sources", "4");
+        p.setProperty("epochs", "10000");
+        p.setProperty("report-interval", "1000");
+        p.setProperty("record-interval", "100");
+        p.setProperty("terrain-scale", "200");
+        p.setProperty("terrain-octaves", "4");
+        p.setProperty("terrain-wall", "0.01");
+        p.setProperty("pheromone-channels", "2");
+        return new SimulationConfig(p);
+    }
+
+    /**
+     * Parses {@code --key=value} arguments on top of the defaults.
+     *
+     * @param args Command line arguments.
+     * @return The resulting configuration.
+     * @throws IllegalArgumentException If an argument is malformed or names an unknown key.
+     * @throws IOException              If a configuration file is given but can not be read.
+     */
+    public static SimulationConfig parse(final List<String> args) throws IOException {
+        final Properties p = defaults().values;
+        for (final String arg : args) {
+            final String[] kv = split(arg);
+            if ("config".equals(kv[0])) {
+                final Properties file = new Properties();
+                try (final Reader r = Files.newBufferedReader(Path.of(kv[1]))) {
+                    file.load(r);
+                }
+                for (final String key : file.stringPropertyNames()) {
+                    p.setProperty(checkKey(key), file.getProperty(key).trim());
+                }
+            }
+        }
+        for (final String arg : args) {
+            final String[] kv = split(arg);
+            if (!"config".equals(kv[0])) {
+                p.setProperty(checkKey(kv[0]), kv[1]);
+            }
+        }
+        final SimulationConfig config = new SimulationConfig(p);
+        config.validate();
+        return config;
+    }
+
+    private static String[] split(final String arg) {
+        final int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || 0 > eq) {
+            throw new IllegalArgumentException("Expected --key=value (was " + arg + ")");
+        }
+        return new String[]{arg.substring(2, eq), arg.substring(eq + 1)};
+    }
+
+    private static String checkKey(final String key) {
+        if (!KEYS.contains(key)) {
+            throw new IllegalArgumentException("Unknown parameter " + key + ", expected one of " + KEYS);
+        }
+        return key;
+    }
+
+    private void validate() {
+        if (2 * FoodSource.getRadius() >= Math.min(this.width, this.height)) {
+            throw new IllegalArgumentException(
+                    "World must be larger than a food source (was " + this.width + "x" + this.height + ")");
+        }
+        if (0 > this.ants || 0 > this.foodSources || 0 > this.epochs) {
+            throw new IllegalArgumentException("Counts must not be negative: " + this.values);
+        }
+        if (0 >= this.reportInterval || 0 >= this.recordInterval) {
+            throw new IllegalArgumentException("Intervals must be positive: " + this.values);
+        }
+        createTerrain();
+        if (2 > this.pheromoneChannels) {
+            throw new IllegalArgumentException("pheromone-channels must be at least 2 (was " + this.pheromoneChannels
+                    + ")");
+        }
+        if (0.0f > this.lazyEvaporation) {
+            throw new IllegalArgumentException("lazy-evaporation must not be negative (was " + this.lazyEvaporation
+                    + ")");
+        }
+    }
+
+    private double getDouble(final String key) {
+        try {
+            return Double.parseDouble(this.values.getProperty(key));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number (was " + this.values.getProperty(key) + ")");
+        }
+    }
+
+    private float getFloat(final String key) {
+        try {
+            return Float.parseFloat(this.values.getProperty(key));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number (was " + this.values.getProperty(key) + ")");
+        }
+    }
+
+    private int getInt(final String key) {
+        try {
+            return Integer.parseInt(this.values.getProperty(key));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer (was " + this.values.getProperty(key) + ")");
+        }
+    }
+
+    private long getLong(final String key) {
+        try {
+            return Long.parseLong(this.values.getProperty(key));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer (was " + this.values.getProperty(key) + ")");
+        }
+    }
+
+    private Path getPath(final String key) {
+        final String path = this.values.getProperty(key);
+        return null == path ? null : Path.of(path);
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getAnts() {
+        return this.ants;
+    }
+
+    public float getPheromoneRate() {
+        return this.pheromoneRate;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public int getFoodSources() {
+        return this.foodSources;
+    }
+
+    public long getFoodSeed() {
+        return this.foodSeed;
+    }
+
+    public long getEpochs() {
+        return this.epochs;
+    }
+
+    public long getReportInterval() {
+        return this.reportInterval;
+    }
+
+    /**
+     * @return The checkpoint to resume from, or {@code null} if a new simulation is to be built.
+     */
+    public Path getRestore() {
+        return this.restore;
+    }
+
+    /**
+     * @return The file to save checkpoints to, or {@code null} if none are to be saved.
+     */
+    public Path getCheckpoint() {
+        return this.checkpoint;
+    }
+
+    /**
+     * @return The directory to record the run to, or {@code null} if it is not to be recorded.
+     */
+    public Path getRecord() {
+        return this.record;
+    }
+
+    public long getRecordInterval() {
+        return this.recordInterval;
+    }
+
+    public int getPheromoneChannels() {
+        return this.pheromoneChannels;
+    }
+
+    /**
+     * @return The active level of lazy evaporation, or {@code NaN} if every cell is to be dispersed every time.
+     */
+    public float getLazyEvaporation() {
+        return this.lazyEvaporation;
+    }
+
+    /**
+     * @return The generator of the obstacle terrain, or {@code null} if the world has no obstacles.
+     */
+    public TerrainGenerator createTerrain() {
+        return this.terrain ? new TerrainGenerator(this.terrainSeed, this.terrainScale, this.terrainOctaves,
+                this.terrainWall, this.terrainCache) : null;
+    }
+
+    /**
+     * @return A recorder for the run, or {@code null} if it is not to be recorded.
+     * @throws IOException If the recording can not be started.
+     */
+    public FrameRecorder createRecorder() throws IOException {
+        final Path directory = getRecord();
+        return null == directory ? null : new FrameRecorder(directory, getRecordInterval());
+    }
+
+    /**
+     * @return The simulation restored from {@code getRestore()} if it is given, otherwise a new one with the world
+     * and colony of this configuration.
+     * @throws IOException If the checkpoint can not be read.
+     */
+    public Simulation createSimulation() throws IOException {
+        final Path restore = getRestore();
+        if (null != restore) {
+            // The checkpoint holds the world's evaporation, lazy or not; restarting it would change the run.
+            return Checkpoint.read(restore, new MyDispersalPolicy());
+        }
+        final AntWorld world = createWorld();
+        return new Simulation(world, createColony(world));
+    }
+
+    private void configureEvaporation(final MyAntWorld world) {
+        final float activeLevel = getLazyEvaporation();
+        if (!Float.isNaN(activeLevel)) {
+            world.useLazyEvaporation(activeLevel);
+        }
+    }
+
+    /**
+     * @return A new world as described by this configuration.
+     * @throws IOException If the terrain cache can not be used.
+     */
+    public AntWorld createWorld() throws IOException {
+        final TerrainGenerator terrain = createTerrain();
+        final boolean[] obstacles = null == terrain
+                ? new boolean[getWidth() * getHeight()] : terrain.generate(getWidth(), getHeight());
+        final MyAntWorld world = new MyAntWorld(getWidth(), getHeight(), getFoodSources(), new MyDispersalPolicy(),
+                obstacles, getPheromoneChannels(), getFoodSeed());
+        configureEvaporation(world);
+        return world;
+    }
+
+    /**
+     * @return A new colony living in {@code world}, as described by this configuration.
+     */
+    public AntColony createColony(final AntWorld world) {
+        return new AntColony(getAnts(), getPheromoneRate(), world, getSeed());
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (final String key : KEYS) {
+            if (null == this.values.getProperty(key)) {
+                continue;
+            }
+            sb.append(0 == sb.length() ? "" : " ").append(key).append('=').append(this.values.getProperty(key));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,172 @@
+package org.evensen.ants;
+
+import java.util.List;
+
+/**
+ * A snapshot of the simulation state after an epoch, laid out in primitive arrays so that it can be handed over to
+ * the view without sharing any mutable model objects.
+ *
+ * <p>
+ * Frames are recycled by {@code FrameExchange} and {@code FrameRecorder}, and filled from a recording by
+ * {@code FrameLog}. The model only writes into a frame that no reader can see, and a
+ * frame is never modified while it is held by a reader, so from the reader's point of view it is immutable.
+ * </p>
+ */
+public final class SimulationFrame {
+    public static final byte FLAG_CARRYING_FOOD = 1;
+    public static final byte FLAG_DEAD = 1 << 1;
+
+    private long epoch;
+    private int width;
+    private int height;
+    private int antCount;
+    private float[] antX;
+    private float[] antY;
+    private int[] antId;
+    private float[] antDirection;
+    private byte[] antFlags;
+    private float[] foodPheromone;
+    private float[] foragingPheromone;
+
+    SimulationFrame() {
+        this.antX = new float[0];
+        this.antY = new float[0];
+        this.antId = new int[0];
+        this.antDirection = new float[0];
+        this.antFlags = new byte[0];
+        this.foodPheromone = new float[0];
+        this.foragingPheromone = new float[0];
+    }
+
+    /**
+     * Copies the current state of {@code colony} and {@code world} into this frame, reusing the arrays of this frame
+     * whenever they are large enough.
+     */
+    void capture(final long epoch, final AntColony colony, final AntWorld world) {
+        this.epoch = epoch;
+        this.width = world.getWidth();
+        this.height = world.getHeight();
+
+        final List<Ant> ants = colony.getAnts();
+        final int n = ants.size();
+        if (this.antX.length < n) {
+            this.antX = new float[n];
+            this.antY = new float[n];
+            this.antId = new int[n];
+            this.antDirection = new float[n];
+            this.antFlags = new byte[n];
+        }
+        for (int i = 0; i < n; i++) {
+            final Ant ant = ants.get(i);
+            final Position p = ant.getPosition();
+            this.antX[i] = p.getX();
+            this.antY[i] = p.getY();
+            this.antId[i] = ant instanceof PellAnt ? ((PellAnt) ant).getId() : i;
+            this.antDirection[i] = ant.getDirection();
+            this.antFlags[i] = (byte) ((ant.hasFood() ? FLAG_CARRYING_FOOD : 0) | (ant.isDead() ? FLAG_DEAD : 0));
+        }
+        this.antCount = n;
+
+        final int cells = this.width * this.height;
+        if (this.foodPheromone.length != cells) {
+            this.foodPheromone = new float[cells];
+            this.foragingPheromone = new float[cells];
+        }
+        world.copyPheromones(this.foodPheromone, this.foragingPheromone);
+    }
+
+    /**
+     * Makes this frame hold {@code antCount} ants in a {@code width} by {@code height} world after {@code epoch}, to
+     * be filled with {@code setAnt} and {@code setPheromones}.
+     */
+    void reset(final long epoch, final int width, final int height, final int antCount) {
+        this.epoch = epoch;
+        this.width = width;
+        this.height = height;
+        if (this.antX.length < antCount) {
+            this.antX = new float[antCount];
+            this.antY = new float[antCount];
+            this.antId = new int[antCount];
+            this.antDirection = new float[antCount];
+            this.antFlags = new byte[antCount];
+        }
+        this.antCount = antCount;
+        if (this.foodPheromone.length != width * height) {
+            this.foodPheromone = new float[width * height];
+            this.foragingPheromone = new float[width * height];
+        }
+    }
+
+    void setAnt(final int i, final int id, final float x, final float y, final float direction, final byte flags) {
+        this.antX[i] = x;
+        this.antY[i] = y;
+        this.antId[i] = id;
+        this.antDirection[i] = direction;
+        this.antFlags[i] = flags;
+    }
+
+    void setPheromones(final int index, final float food, final float foraging) {
+        this.foodPheromone[index] = food;
+        this.foragingPheromone[index] = foraging;
+    }
+
+    /**
+     * @return The epoch this frame was captured after.
+     */
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getAntCount() {
+        return this.antCount;
+    }
+
+    public float getAntX(final int i) {
+        return this.antX[i];
+    }
+
+    public float getAntY(final int i) {
+        return this.antY[i];
+    }
+
+    /**
+     * @return The id of ant {@code i}, which stays the same from frame to frame while the ant lives, unlike {@code i}.
+     * Ants of other kinds than {@code PellAnt} are numbered by their place in the colony.
+     */
+    public int getAntId(final int i) {
+        return this.antId[i];
+    }
+
+    public float getAntDirection(final int i) {
+        return this.antDirection[i];
+    }
+
+    /**
+     * @return A bit set of {@code FLAG_CARRYING_FOOD} and {@code FLAG_DEAD} for ant {@code i}.
+     */
+    public byte getAntFlags(final int i) {
+        return this.antFlags[i];
+    }
+
+    /**
+     * Gives the food pheromone level of cell {@code <x, y>}, stored at index {@code y * width + x}.
+     */
+    public float getFoodPheromone(final int index) {
+        return this.foodPheromone[index];
+    }
+
+    /**
+     * Gives the foraging pheromone level of cell {@code <x, y>}, stored at index {@code y * width + x}.
+     */
+    public float getForagingPheromone(final int index) {
+        return this.foragingPheromone[index];
+    }
+}
@@ -0,0 +1,142 @@
+package org.evensen.ants;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a simulation from a dedicated thread.
+ *
+ * <p>
+ * The pacing can be changed at any time with {@code setMode}. How long epochs take and how many run per second is
+ * recorded by {@code Simulation} in {@code SimulationMetrics}.
+ * </p>
+ *
+ * <p>
+ * Only the loop thread may change the simulation. Other threads, such as the view editing obstacles, hand their
+ * changes to {@code submit}; they are run between epochs.
+ * </p>
+ */
+public class SimulationLoop {
+    /**
+     * How epochs are paced against the wall clock.
+     */
+    public enum Mode {
+        /**
+         * One epoch per step. Steps that are missed because an epoch took too long are dropped, so the simulation
+         * slows down instead of trying to catch up.
+         */
+        FIXED_STEP,
+        /**
+         * One epoch per step, but missed steps are made up for by running epochs back to back. At most
+         * {@code maxCatchUpEpochs} steps of backlog are kept; anything beyond that is dropped.
+         */
+        CATCH_UP,
+        /**
+         * Epochs run back to back as fast as possible.
+         */
+        MAX_SPEED
+    }
+
+    private final Runnable epoch;
+    private final long stepNanos;
+    private final int maxCatchUpEpochs;
+    private final Queue<Runnable> edits;
+    private volatile Mode mode;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param epoch            Runs one epoch.
+     * @param stepNanos        The wall clock time of one step in {@code FIXED_STEP} and {@code CATCH_UP} mode.
+     * @param maxCatchUpEpochs The largest backlog, in steps, that {@code CATCH_UP} mode will make up for.
+     * @param mode             The initial mode.
+     */
+    public SimulationLoop(final Runnable epoch, final long stepNanos, final int maxCatchUpEpochs, final Mode mode) {
+        if (0 >= stepNanos) {
+            throw new IllegalArgumentException("step must be positive (was " + stepNanos + ")");
+        }
+        if (0 >= maxCatchUpEpochs) {
+            throw new IllegalArgumentException("catch-up limit must be positive (was " + maxCatchUpEpochs + ")");
+        }
+        this.epoch = epoch;
+        this.stepNanos = stepNanos;
+        this.maxCatchUpEpochs = maxCatchUpEpochs;
+        this.mode = mode;
+        this.edits = new ConcurrentLinkedQueue<>();
+    }
+
+    public synchronized void start() {
+        if (null != this.thread) {
+            throw new IllegalStateException("Simulation loop already started");
+        }
+        this.running = true;
+        this.thread = new Thread(this::run, "simulation");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the loop after the epoch currently running, if any, and waits for the loop thread to finish.
+     */
+    public synchronized void stop() throws InterruptedException {
+        this.running = false;
+        if (null != this.thread) {
+            LockSupport.unpark(this.thread);
+            this.thread.join();
+            this.thread = null;
+        }
+    }
+
+    public Mode getMode() {
+        return this.mode;
+    }
+
+    public void setMode(final Mode mode) {
+        this.mode = mode;
+        final Thread t = this.thread;
+        if (null != t) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Runs {@code edit} on the loop thread before the next epoch, or when the loop stops if that comes first. May be
+     * called from any thread; edits run in the order they were submitted.
+     */
+    public void submit(final Runnable edit) {
+        this.edits.add(edit);
+    }
+
+    private void applyEdits() {
+        for (Runnable edit = this.edits.poll(); null != edit; edit = this.edits.poll()) {
+            edit.run();
+        }
+    }
+
+    private void run() {
+        long nextStep = System.nanoTime();
+
+        while (this.running) {
+            final Mode m = this.mode;
+            long now = System.nanoTime();
+            if (Mode.MAX_SPEED == m) {
+                nextStep = now;
+            } else if (now < nextStep) {
+                LockSupport.parkNanos(nextStep - now);
+                continue;
+            }
+
+            applyEdits();
+            this.epoch.run();
+
+            now = System.nanoTime();
+            if (Mode.FIXED_STEP == m) {
+                nextStep = Math.max(nextStep + this.stepNanos, now);
+            } else if (Mode.CATCH_UP == m) {
+                nextStep = Math.max(nextStep + this.stepNanos, now - this.stepNanos * this.maxCatchUpEpochs);
+            }
+        }
+        applyEdits();
+    }
+}
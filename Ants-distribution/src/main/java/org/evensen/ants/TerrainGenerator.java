@@ -0,0 +1,181 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Generates maze-like obstacle terrain from {@code FractalNoise}.
+ *
+ * <p>
+ * A cell is an obstacle where the noise is within {@code wall} of its middle value 0.5. The noise crosses its middle
+ * along winding contour lines, so the obstacles form walls of roughly even thickness that split the world into
+ * irregular rooms and corridors, about {@code scale} cells across. Wider walls close more of the gaps between rooms.
+ * </p>
+ *
+ * <p>
+ * The world is generated in square tiles of {@code TILE} cells, in parallel. The noise is sampled in world
+ * coordinates, so a tile only depends on where it is and on the parameters, not on the world size. If a cache
+ * directory is given, every tile is stored there, one bit per cell, under a subdirectory named by every bit of the
+ * seed and parameters, and later runs with the same parameters load the tiles instead of generating them. Tiles are
+ * written to a temporary file first and then moved into place, so runs sharing a cache never see half a tile. A tile
+ * file of the wrong size is generated and written again.
+ * </p>
+ */
+public final class TerrainGenerator {
+    static final int TILE = 256;
+    private static final int TILE_BYTES = TILE * TILE / Byte.SIZE;
+    // Part of the cache key. Must change whenever the same parameters would give different terrain.
+    private static final int VERSION = 2;
+    private static final double PERSISTENCE = 0.6;
+    private static final int FIRST_OCTAVE = 0;
+    // Every octave is 0.5 at the corners of its noise lattice; shifting the samples keeps those corners from lining up.
+    private static final double OFFSET = 0.318;
+
+    private final long seed;
+    private final double scale;
+    private final int octaves;
+    private final double wall;
+    private final Path cache;
+    private final AtomicInteger tilesGenerated;
+    private final AtomicInteger tilesLoaded;
+
+    /**
+     * @param seed    Gives rise to a unique terrain.
+     * @param scale   The size of the largest features, in cells.
+     * @param octaves The number of noise octaves; each one adds details half the size of the one before.
+     * @param wall    How close to its middle value the noise must be for a cell to be an obstacle, between 0 and 0.5.
+     * @param cache   The directory to cache tiles in, or {@code null} to always generate them.
+     */
+    public TerrainGenerator(final long seed, final double scale, final int octaves, final double wall,
+                            final Path cache) {
+        if (!(0.0 < scale) || 0 >= octaves || !(0.0 <= wall && 0.5 >= wall)) {
+            throw new IllegalArgumentException(
+                    "Invalid terrain (scale " + scale + ", octaves " + octaves + ", wall " + wall + ")");
+        }
+        this.seed = seed;
+        this.scale = scale;
+        this.octaves = octaves;
+        this.wall = wall;
+        this.cache = null == cache ? null : cache.resolve(key());
+        this.tilesGenerated = new AtomicInteger();
+        this.tilesLoaded = new AtomicInteger();
+    }
+
+    /**
+     * @return The obstacles of a {@code width} by {@code height} world, row by row, cell {@code <x, y>} at index
+     * {@code y * width + x}.
+     * @throws IOException If the cache directory can not be read or written.
+     */
+    public boolean[] generate(final int width, final int height) throws IOException {
+        final boolean[] obstacles = new boolean[width * height];
+        final int tilesX = (width + TILE - 1) / TILE;
+        final int tilesY = (height + TILE - 1) / TILE;
+        if (null != this.cache) {
+            Files.createDirectories(this.cache);
+        }
+        try {
+            IntStream.range(0, tilesX * tilesY).parallel().forEach(t -> {
+                try {
+                    fill(obstacles, width, height, t % tilesX, t / tilesX);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return obstacles;
+    }
+
+    /**
+     * @return The name of this terrain's cache directory. It holds the exact bits of the seed and parameters rather
+     * than a hash of them, so that two different terrains never share tiles.
+     */
+    private String key() {
+        return String.format("v%d-%016x-%016x-%d-%016x-%016x-%d", VERSION, this.seed,
+                Double.doubleToLongBits(this.scale), this.octaves, Double.doubleToLongBits(this.wall),
+                Double.doubleToLongBits(PERSISTENCE), FIRST_OCTAVE);
+    }
+
+    /**
+     * @return The number of tiles generated from noise by this generator so far.
+     */
+    public int getTilesGenerated() {
+        return this.tilesGenerated.get();
+    }
+
+    /**
+     * @return The number of tiles loaded from the cache by this generator so far.
+     */
+    public int getTilesLoaded() {
+        return this.tilesLoaded.get();
+    }
+
+    private void fill(final boolean[] obstacles, final int width, final int height, final int tileX, final int tileY)
+            throws IOException {
+        final byte[] tile = loadOrGenerate(tileX, tileY);
+        final int x0 = tileX * TILE;
+        final int y0 = tileY * TILE;
+        final int columns = Math.min(TILE, width - x0);
+        final int rows = Math.min(TILE, height - y0);
+        for (int y = 0; y < rows; y++) {
+            final int row = (y0 + y) * width + x0;
+            for (int x = 0; x < columns; x++) {
+                final int bit = y * TILE + x;
+                obstacles[row + x] = 0 != (tile[bit >>> 3] & (1 << (bit & 7)));
+            }
+        }
+    }
+
+    private byte[] loadOrGenerate(final int tileX, final int tileY) throws IOException {
+        final Path file = null == this.cache ? null : this.cache.resolve("tile-" + tileX + "-" + tileY + ".bin");
+        if (null != file) {
+            try {
+                final byte[] tile = Files.readAllBytes(file);
+                if (TILE_BYTES == tile.length) {
+                    this.tilesLoaded.incrementAndGet();
+                    return tile;
+                }
+            } catch (final NoSuchFileException e) {
+                // Not generated yet.
+            }
+        }
+        final byte[] tile = generateTile(tileX, tileY);
+        this.tilesGenerated.incrementAndGet();
+        if (null != file) {
+            final Path temporary = Files.createTempFile(this.cache, "tile-", ".tmp");
+            try {
+                Files.write(temporary, tile);
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        return tile;
+    }
+
+    private byte[] generateTile(final int tileX, final int tileY) {
+        final byte[] tile = new byte[TILE_BYTES];
+        final float[] noise = new float[TILE];
+        final int lastOctave = FIRST_OCTAVE + this.octaves - 1;
+        final double x0 = tileX * TILE / this.scale + OFFSET;
+        for (int y = 0; y < TILE; y++) {
+            final double ny = (tileY * TILE + y) / this.scale + OFFSET;
+            FractalNoise.fillRow(noise, 0, TILE, x0, 1.0 / this.scale, ny, PERSISTENCE, FIRST_OCTAVE, lastOctave,
+                    this.seed);
+            for (int x = 0; x < TILE; x++) {
+                if (this.wall > Math.abs(noise[x] - 0.5)) {
+                    final int bit = y * TILE + x;
+                    tile[bit >>> 3] |= (byte) (1 << (bit & 7));
+                }
+            }
+        }
+        return tile;
+    }
+}
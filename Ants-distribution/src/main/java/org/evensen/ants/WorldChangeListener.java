@@ -0,0 +1,38 @@
+package org.evensen.ants;
+
+/**
+ * Notified by an {@code AntWorld} when something that only changes now and then, and is therefore worth caching,
+ * changes. Pheromone levels are not covered; they change every epoch.
+ *
+ * <p>
+ * Notifications are made on the simulation thread, the only thread that may change the world; edits from the view
+ * reach it through {@code SimulationLoop.submit}. A notification is made after the change, so a listener that hands
+ * the region to another thread through a concurrent structure lets that thread see the change when it takes the
+ * region. Listeners should only record what changed and return quickly.
+ * </p>
+ */
+public interface WorldChangeListener {
+    /**
+     * A food source was placed.
+     *
+     * @param region Every cell that may now contain food from the new source.
+     */
+    default void foodSourceAdded(final WorldRegion region) {
+    }
+
+    /**
+     * A food source ran out and was removed.
+     *
+     * @param region Every cell that may have contained food from the removed source.
+     */
+    default void foodSourceRemoved(final WorldRegion region) {
+    }
+
+    /**
+     * Obstacles were added or removed.
+     *
+     * @param region Every cell whose obstacle state may have changed.
+     */
+    default void obstaclesChanged(final WorldRegion region) {
+    }
+}
@@ -0,0 +1,100 @@
+package org.evensen.ants;
+
+/**
+ * An axis aligned rectangle of cells, {@code <minX, minY>} to {@code <maxX, maxY>} inclusive.
+ */
+public final class WorldRegion {
+    private final int minX;
+    private final int minY;
+    private final int maxX;
+    private final int maxY;
+
+    public WorldRegion(final int minX, final int minY, final int maxX, final int maxY) {
+        if (minX > maxX || minY > maxY) {
+            throw new IllegalArgumentException(
+                    "Empty region <" + minX + ", " + minY + "> to <" + maxX + ", " + maxY + ">");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * @return Every cell of a world of {@code width} by {@code height} cells.
+     */
+    public static WorldRegion whole(final int width, final int height) {
+        return new WorldRegion(0, 0, width - 1, height - 1);
+    }
+
+    /**
+     * @return The cells within {@code radius} cells of {@code p} along both axes, clipped to a world of
+     * {@code width} by {@code height} cells.
+     */
+    public static WorldRegion around(final Position p, final int radius, final int width, final int height) {
+        final int x = (int) p.getX();
+        final int y = (int) p.getY();
+        return new WorldRegion(Math.max(0, x - radius), Math.max(0, y - radius),
+                Math.min(width - 1, x + radius), Math.min(height - 1, y + radius));
+    }
+
+    public int getMinX() {
+        return this.minX;
+    }
+
+    public int getMinY() {
+        return this.minY;
+    }
+
+    public int getMaxX() {
+        return this.maxX;
+    }
+
+    public int getMaxY() {
+        return this.maxY;
+    }
+
+    /**
+     * @return The number of columns of cells in this region.
+     */
+    public int getWidth() {
+        return this.maxX - this.minX + 1;
+    }
+
+    /**
+     * @return The number of rows of cells in this region.
+     */
+    public int getHeight() {
+        return this.maxY - this.minY + 1;
+    }
+
+    /**
+     * @return The smallest region containing both this region and {@code other}.
+     */
+    public WorldRegion union(final WorldRegion other) {
+        return new WorldRegion(Math.min(this.minX, other.minX), Math.min(this.minY, other.minY),
+                Math.max(this.maxX, other.maxX), Math.max(this.maxY, other.maxY));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (null == o || getClass() != o.getClass()) {
+            return false;
+        }
+        final WorldRegion r = (WorldRegion) o;
+        return this.minX == r.minX && this.minY == r.minY && this.maxX == r.maxX && this.maxY == r.maxY;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((this.minX * 31 + this.minY) * 31 + this.maxX) * 31 + this.maxY;
+    }
+
+    @Override
+    public String toString() {
+        return "WorldRegion{<" + this.minX + ", " + this.minY + "> to <" + this.maxX + ", " + this.maxY + ">}";
+    }
+}
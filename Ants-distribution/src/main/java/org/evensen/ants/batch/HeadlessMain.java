@@ -0,0 +1,98 @@
+package org.evensen.ants.batch;
+
+import org.evensen.ants.AntColony;
+import org.evensen.ants.AntWorld;
+import org.evensen.ants.Checkpoint;
+import org.evensen.ants.FrameRecorder;
+import org.evensen.ants.Simulation;
+import org.evensen.ants.SimulationConfig;
+import org.evensen.ants.metrics.SimulationMetrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs a simulation without any user interface, as fast as possible, and reports its throughput.
+ *
+ * <p>
+ * Nothing in this package depends on JavaFX, so it runs on display-less machines with only the compiled classes on
+ * the class path, e.g. {@code mvn exec:java -Dexec.args="--width=4000 --height=2000 --epochs=100000"}.
+ * See {@code SimulationConfig} for the accepted parameters. Latencies and rates are available over JMX while it
+ * runs, and logged every {@code METRICS_REPORT_INTERVAL} milliseconds, see {@code SimulationMetrics}. With {@code --restore=<file>} it resumes a saved run, and with
+ * {@code --checkpoint=<file>} it saves the run after every progress report and at the end, see {@code Checkpoint}.
+ * With {@code --record=<directory>} it records the run for later analysis, see {@code FrameRecorder}.
+ * </p>
+ */
+public final class HeadlessMain {
+    // The rates of SimulationMetrics are only updated by its reports.
+    private static final long METRICS_REPORT_INTERVAL = 5_000L;
+
+    private HeadlessMain() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final SimulationConfig config;
+        try {
+            config = SimulationConfig.parse(List.of(args));
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.out.println("config: " + config);
+
+        final Simulation simulation = config.createSimulation();
+        final AntWorld world = simulation.getWorld();
+        final AntColony colony = simulation.getColony();
+        final Path checkpoint = config.getCheckpoint();
+        final FrameRecorder recorder = config.createRecorder();
+        SimulationMetrics.global().registerMBean();
+        SimulationMetrics.global().startReporting(METRICS_REPORT_INTERVAL);
+
+        final long start = System.nanoTime();
+        long lastReport = start;
+        // A restored run starts with the counts of the saved one; only what this run adds is reported.
+        final long firstEpoch = simulation.getEpoch();
+        final long firstMoves = colony.getMoveCount();
+        final long firstFood = world.getFoodCount();
+        long lastEpoch = firstEpoch;
+        long lastMoves = firstMoves;
+        long lastFood = firstFood;
+        while (simulation.getEpoch() < config.getEpochs()) {
+            simulation.step();
+            if (null != recorder) {
+                recorder.record(simulation.getEpoch(), colony, world);
+            }
+            if (0 == simulation.getEpoch() % config.getReportInterval()) {
+                final long now = System.nanoTime();
+                report("progress", simulation.getEpoch(), simulation.getEpoch() - lastEpoch,
+                        colony.getMoveCount() - lastMoves, world.getFoodCount() - lastFood, now - lastReport);
+                lastReport = now;
+                lastEpoch = simulation.getEpoch();
+                lastMoves = colony.getMoveCount();
+                lastFood = world.getFoodCount();
+                if (null != checkpoint) {
+                    Checkpoint.write(checkpoint, simulation);
+                }
+            }
+        }
+        if (null != checkpoint) {
+            Checkpoint.write(checkpoint, simulation);
+        }
+        if (null != recorder) {
+            recorder.close();
+            System.out.println("recording: dropped-epochs=" + recorder.getDroppedFrames());
+        }
+        SimulationMetrics.global().stopReporting();
+        report("total", simulation.getEpoch(), simulation.getEpoch() - firstEpoch,
+                colony.getMoveCount() - firstMoves, world.getFoodCount() - firstFood, System.nanoTime() - start);
+    }
+
+    private static void report(final String label, final long epoch, final long epochs, final long moves,
+                               final long food, final long nanos) {
+        final double seconds = nanos / 1_000_000_000.0;
+        System.out.printf("%s: epoch=%d epochs/s=%.1f ant-moves/s=%.0f food-delivered=%d food/s=%.1f%n",
+                label, epoch, epochs / seconds, moves / seconds, food, food / seconds);
+    }
+}
@@ -1,10 +1,16 @@
 package org.evensen.ants.controller;
 
+import org.evensen.ants.WorldRegion;
+
 public class Camera {
     private double minX;
     private double maxX;
     private double minY;
     private double maxY;
+    private double canvasWidth;
+    private double canvasHeight;
+    private double viewportWidth;
+    private double viewportHeight;
 
     public Camera(final double minX, final double maxX, final double minY, final double maxY) {
         this.minX = minX;
@@ -22,6 +28,18 @@ public class Camera {
         g.translate(offsetX(), offsetY());
     }
 
+    /**
+     * Tells the camera the size of the canvas it is drawn on, and how many pixels of it the width and height of the
+     * camera span. Called by {@code ResizeableCanvas} whenever it is resized.
+     */
+    public void setViewport(final double canvasWidth, final double canvasHeight,
+                            final double viewportWidth, final double viewportHeight) {
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+    }
+
     public void move(final double x, final double y) {
         this.minX += x;
         this.maxX += x;
@@ -55,4 +73,69 @@ public class Camera {
     public double offsetY() {
         return this.minY;
     }
+
+    /**
+     * @return How many pixels one unit of the coordinate space of the camera spans horizontally.
+     */
+    public double getPixelsPerUnitX() {
+        return this.viewportWidth / getWidth();
+    }
+
+    /**
+     * @return How many pixels one unit of the coordinate space of the camera spans vertically.
+     */
+    public double getPixelsPerUnitY() {
+        return this.viewportHeight / getHeight();
+    }
+
+    /**
+     * @return The leftmost coordinate visible on the canvas.
+     */
+    public double getVisibleMinX() {
+        return -offsetX();
+    }
+
+    /**
+     * @return The rightmost coordinate visible on the canvas.
+     */
+    public double getVisibleMaxX() {
+        return getVisibleMinX() + this.canvasWidth / getPixelsPerUnitX();
+    }
+
+    /**
+     * @return The topmost coordinate visible on the canvas.
+     */
+    public double getVisibleMinY() {
+        return -offsetY();
+    }
+
+    /**
+     * @return The bottommost coordinate visible on the canvas.
+     */
+    public double getVisibleMaxY() {
+        return getVisibleMinY() + this.canvasHeight / getPixelsPerUnitY();
+    }
+
+    /**
+     * @return How many pixels one cell spans of a world of {@code worldWidth} by {@code worldHeight} cells that is
+     * drawn over the unit square, along the axis where it spans the fewest.
+     */
+    public double getPixelsPerCell(final int worldWidth, final int worldHeight) {
+        return Math.min(getPixelsPerUnitX() / worldWidth, getPixelsPerUnitY() / worldHeight);
+    }
+
+    /**
+     * @return The cells that are at least partly visible of a world of {@code worldWidth} by {@code worldHeight} cells
+     * that is drawn over the unit square, or {@code null} if none is.
+     */
+    public WorldRegion getVisibleCells(final int worldWidth, final int worldHeight) {
+        final int cellMinX = Math.max(0, (int) Math.floor(getVisibleMinX() * worldWidth));
+        final int cellMinY = Math.max(0, (int) Math.floor(getVisibleMinY() * worldHeight));
+        final int cellMaxX = Math.min(worldWidth - 1, (int) Math.ceil(getVisibleMaxX() * worldWidth) - 1);
+        final int cellMaxY = Math.min(worldHeight - 1, (int) Math.ceil(getVisibleMaxY() * worldHeight) - 1);
+        if (cellMinX > cellMaxX || cellMinY > cellMaxY) {
+            return null;
+        }
+        return new WorldRegion(cellMinX, cellMinY, cellMaxX, cellMaxY);
+    }
 }
@@ -82,11 +82,12 @@ public class ResizeableCanvas extends Canvas {
         setWidth(width);
         setHeight(height);
 
+        final double viewportWidth = width * Math.min(1.0, this.aspectRatio / (width / height));
+        final double viewportHeight = height * Math.min(1.0, (1.0 / this.aspectRatio) / (height / width));
         final GraphicsContext g = getGraphicsContext2D();
         g.setTransform(new Affine());
-        g.scale(width, height);
-        g.scale(Math.min(1.0, this.aspectRatio / (width / height)),
-                Math.min(1.0, (1.0 / this.aspectRatio) / (height / width)));
+        g.scale(viewportWidth, viewportHeight);
+        this.camera.setViewport(width, height, viewportWidth, viewportHeight);
 
     }
 
@@ -0,0 +1,50 @@
+package org.evensen.ants.metrics;
+
+/**
+ * The most a hot path is allowed to allocate per unit of work. Checked by the allocation budget tests, so a budget
+ * should only be raised deliberately and should be lowered whenever a path stops allocating.
+ */
+public enum AllocationBudget {
+    /**
+     * {@code PellAnt.move}, per ant moved.
+     */
+    ANT_MOVE(3072),
+    /**
+     * {@code MyAntWorld.dispersePheromones} through {@code MyDispersalPolicy.disperseRow}, per cell.
+     */
+    DISPERSAL(1),
+    /**
+     * Compositing the pheromone and home layers, per cell.
+     */
+    PHEROMONE_PIXELS(1),
+    /**
+     * Building the filtered food layer, per canvas pixel.
+     */
+    FOOD_PIXELS(48),
+    /**
+     * Building the filtered obstacle layer, per canvas pixel.
+     */
+    OBSTACLE_PIXELS(48),
+    /**
+     * Rasterizing the ant layer, in detail or as a density, per ant.
+     */
+    ANT_PIXELS(1);
+
+    private final long bytesPerUnit;
+
+    AllocationBudget(final long bytesPerUnit) {
+        this.bytesPerUnit = bytesPerUnit;
+    }
+
+    public long getBytesPerUnit() {
+        return this.bytesPerUnit;
+    }
+
+    /**
+     * @param bytes Bytes allocated while doing {@code units} units of work.
+     * @return {@code true} if the allocation is within this budget.
+     */
+    public boolean isWithin(final long bytes, final long units) {
+        return bytes <= this.bytesPerUnit * units;
+    }
+}
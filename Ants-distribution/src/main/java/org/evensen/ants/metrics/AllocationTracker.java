@@ -0,0 +1,44 @@
+package org.evensen.ants.metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures heap allocation of the current thread through {@code com.sun.management.ThreadMXBean}.
+ * On JVMs without that extension every measurement is 0 and {@code isSupported()} returns {@code false}.
+ */
+public enum AllocationTracker {
+    ;
+    private static final com.sun.management.ThreadMXBean THREADS;
+
+    static {
+        com.sun.management.ThreadMXBean threads = null;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t
+                && t.isThreadAllocatedMemorySupported()) {
+            t.setThreadAllocatedMemoryEnabled(true);
+            threads = t;
+        }
+        THREADS = threads;
+    }
+
+    public static boolean isSupported() {
+        return null != THREADS;
+    }
+
+    /**
+     * @return The total number of bytes allocated by the current thread so far.
+     */
+    public static long allocatedBytes() {
+        return null == THREADS ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Runs {@code r} on the current thread.
+     *
+     * @return The number of bytes allocated while running {@code r}.
+     */
+    public static long measure(final Runnable r) {
+        final long before = allocatedBytes();
+        r.run();
+        return allocatedBytes() - before;
+    }
+}
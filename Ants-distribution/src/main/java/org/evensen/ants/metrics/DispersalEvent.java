@@ -0,0 +1,24 @@
+package org.evensen.ants.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One pass of pheromone dispersal and evaporation over a world.
+ * Disabled unless turned on by a recording setting, see {@code ants.jfc}.
+ */
+@Name("org.evensen.ants.Dispersal")
+@Label("Pheromone Dispersal")
+@Category({"Ants", "Simulation"})
+@Description("One pass of pheromone dispersal and evaporation")
+@StackTrace(false)
+@Enabled(false)
+public class DispersalEvent extends Event {
+    @Label("Cells Touched")
+    public long cellsTouched;
+}
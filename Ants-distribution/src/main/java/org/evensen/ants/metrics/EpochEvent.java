@@ -0,0 +1,34 @@
+package org.evensen.ants.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One epoch of a colony: sorting and moving every ant once.
+ * Disabled unless turned on by a recording setting, see {@code ants.jfc}.
+ */
+@Name("org.evensen.ants.Epoch")
+@Label("Epoch")
+@Category({"Ants", "Simulation"})
+@Description("Sorting and moving every ant of a colony once")
+@StackTrace(false)
+@Enabled(false)
+public class EpochEvent extends Event {
+    @Label("Epoch")
+    public long epoch;
+
+    @Label("Ants")
+    public int antCount;
+
+    @Label("Ants Moved")
+    public long moved;
+
+    @Label("Food Delivered")
+    @Description("Food delivered home during this epoch")
+    public long foodDelivered;
+}
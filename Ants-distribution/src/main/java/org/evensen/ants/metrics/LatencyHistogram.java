@@ -0,0 +1,134 @@
+package org.evensen.ants.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of latencies in nanoseconds with a relative precision of about 6%.
+ *
+ * <p>
+ * Values below 16 ns get a bucket each; above that every power of two is split into 16 buckets. Recording is
+ * wait-free and may be done from any thread; snapshots can be taken concurrently and are consistent enough for
+ * monitoring, not for accounting.
+ * </p>
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.max = new AtomicLong();
+    }
+
+    public void record(final long nanos) {
+        final long v = Math.max(0, nanos);
+        this.counts.incrementAndGet(bucketOf(v));
+        long m = this.max.get();
+        while (v > m && !this.max.compareAndSet(m, v)) {
+            m = this.max.get();
+        }
+    }
+
+    /**
+     * @return A copy of the current counts.
+     */
+    public Snapshot snapshot() {
+        final long[] c = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = this.counts.get(i);
+        }
+        return new Snapshot(c, this.max.get());
+    }
+
+    static int bucketOf(final long v) {
+        if (SUB_BUCKETS > v) {
+            return (int) v;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(v);
+        final int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return The largest value that falls into bucket {@code i}.
+     */
+    static long upperBoundOf(final int i) {
+        if (SUB_BUCKETS > i) {
+            return i;
+        }
+        final int exponent = i / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = i % SUB_BUCKETS;
+        final long lower = (1L << exponent) | (sub << (exponent - SUB_BITS));
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Counts of a histogram at some point in time.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long max;
+        private final long total;
+
+        private Snapshot(final long[] counts, final long max) {
+            this.counts = counts;
+            this.max = max;
+            long t = 0;
+            for (final long c : counts) {
+                t += c;
+            }
+            this.total = t;
+        }
+
+        /**
+         * Gives the values recorded since {@code earlier} was taken. The maximum of the result is the upper bound of
+         * its highest non-empty bucket, since exact values are not kept.
+         *
+         * @param earlier A snapshot of the same histogram taken before this one.
+         * @return The difference between the snapshots.
+         */
+        public Snapshot since(final Snapshot earlier) {
+            final long[] c = new long[this.counts.length];
+            long m = 0;
+            for (int i = 0; i < c.length; i++) {
+                c[i] = this.counts[i] - earlier.counts[i];
+                if (0 < c[i]) {
+                    m = Math.min(this.max, upperBoundOf(i));
+                }
+            }
+            return new Snapshot(c, m);
+        }
+
+        public long getCount() {
+            return this.total;
+        }
+
+        public long getMax() {
+            return this.max;
+        }
+
+        /**
+         * @param quantile A value in {@code [0, 1]}, e.g. {@code 0.99} for the 99th percentile.
+         * @return An upper bound of the value at {@code quantile}, in nanoseconds, or 0 if nothing was recorded.
+         */
+        public long getValueAt(final double quantile) {
+            if (0 == this.total) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(quantile * this.total));
+            long seen = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return Math.min(this.max, upperBoundOf(i));
+                }
+            }
+            return this.max;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.evensen.ants.metrics;
+
+/**
+ * The parts of the simulation and of the view whose latencies are recorded.
+ */
+public enum Phase {
+    /**
+     * A whole epoch, including sorting, moving the ants and dispersal when it happens.
+     */
+    EPOCH,
+    /**
+     * Sorting the colony before moving it.
+     */
+    SORT,
+    /**
+     * Moving every ant once.
+     */
+    ANT_UPDATE,
+    /**
+     * One pass of pheromone dispersal and evaporation.
+     */
+    DISPERSAL,
+    /**
+     * Preparing the pixels of the obstacle layer, on the render thread.
+     */
+    RENDER_OBSTACLES,
+    /**
+     * Preparing the pixels of the pheromone and home layer, on the render thread.
+     */
+    RENDER_PHEROMONES,
+    /**
+     * Preparing the pixels of the food layer, on the render thread.
+     */
+    RENDER_FOOD,
+    /**
+     * Preparing the pixels of the ant layer, on the render thread.
+     */
+    RENDER_ANTS,
+    /**
+     * Copying the state of a recorded epoch, on the simulation thread. See {@code FrameRecorder}.
+     */
+    RECORD_CAPTURE,
+    /**
+     * Encoding and writing a recorded epoch, on the recorder thread.
+     */
+    RECORD_WRITE,
+    /**
+     * A whole frame on the JavaFX application thread: uploading the prepared layers and drawing.
+     */
+    FRAME
+}
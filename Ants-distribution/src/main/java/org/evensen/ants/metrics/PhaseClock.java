@@ -0,0 +1,39 @@
+package org.evensen.ants.metrics;
+
+/**
+ * Times consecutive phases on one thread, recording both latency and allocated bytes of each phase into
+ * {@code SimulationMetrics}. Each thread needs its own clock, and nested phases need a clock each.
+ */
+public final class PhaseClock {
+    private final SimulationMetrics metrics;
+    private long time;
+    private long bytes;
+
+    public PhaseClock(final SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Marks the beginning of the first phase.
+     */
+    public void start() {
+        this.time = System.nanoTime();
+        this.bytes = AllocationTracker.allocatedBytes();
+    }
+
+    /**
+     * Records the phase that started at the previous call to {@code start} or {@code lap} and starts the next one.
+     *
+     * @return The duration of the recorded phase in nanoseconds.
+     */
+    public long lap(final Phase phase) {
+        final long now = System.nanoTime();
+        final long allocated = AllocationTracker.allocatedBytes();
+        final long elapsed = now - this.time;
+        this.metrics.record(phase, elapsed);
+        this.metrics.recordAllocation(phase, allocated - this.bytes);
+        this.time = now;
+        this.bytes = allocated;
+        return elapsed;
+    }
+}
@@ -0,0 +1,51 @@
+package org.evensen.ants.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One rendered frame with the time spent on each layer. Layers are prepared on the render thread and uploaded
+ * with the frame that follows, so their timings are 0 for frames that uploaded nothing.
+ * Disabled unless turned on by a recording setting, see {@code ants.jfc}.
+ */
+@Name("org.evensen.ants.RenderFrame")
+@Label("Render Frame")
+@Category({"Ants", "Rendering"})
+@Description("One rendered frame of the world and its ants")
+@StackTrace(false)
+@Enabled(false)
+public class RenderFrameEvent extends Event {
+    @Label("Epoch")
+    @Description("The epoch of the simulation frame that was rendered")
+    public long epoch;
+
+    @Label("Obstacles")
+    @Description("Time the render pipeline spent preparing this layer, if it was uploaded during this frame")
+    @Timespan(Timespan.NANOSECONDS)
+    public long obstacleNanos;
+
+    @Label("Pheromones")
+    @Description("Time the render pipeline spent preparing this layer, if it was uploaded during this frame")
+    @Timespan(Timespan.NANOSECONDS)
+    public long pheromoneNanos;
+
+    @Label("Food")
+    @Description("Time the render pipeline spent preparing this layer, if it was uploaded during this frame")
+    @Timespan(Timespan.NANOSECONDS)
+    public long foodNanos;
+
+    @Label("Ants")
+    @Description("Time the render pipeline spent preparing this layer, if it was uploaded during this frame")
+    @Timespan(Timespan.NANOSECONDS)
+    public long antNanos;
+
+    @Label("Image Uploads")
+    @Description("Number of images whose pixels were written during this frame")
+    public int imageUploads;
+}
@@ -0,0 +1,309 @@
+package org.evensen.ants.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Latency histograms and allocated bytes per {@code Phase}, and throughput counters for the simulation and the view.
+ *
+ * <p>
+ * There is one process wide instance, {@code global()}, that the model and the renderers record into. It can be
+ * exposed over JMX with {@code registerMBean} and logged periodically with {@code startReporting}; the log line is a
+ * single line of {@code key=value} pairs covering the last period.
+ * </p>
+ */
+public final class SimulationMetrics implements SimulationMetricsMXBean {
+    private static final String OBJECT_NAME = "org.evensen.ants:type=SimulationMetrics";
+    private static final SimulationMetrics GLOBAL = new SimulationMetrics();
+
+    private final Map<Phase, LatencyHistogram> latencies;
+    private final Map<Phase, LongAdder> allocations;
+    private final LongAdder antMoves;
+    private final LongAdder pheromoneDrops;
+    private final LongAdder foodDelivered;
+    private final LongAdder imageUploads;
+    private final LongAdder skippedFrames;
+    private ScheduledExecutorService reporter;
+
+    // Updated by the reporter only.
+    private Map<Phase, LatencyHistogram.Snapshot> lastSnapshots;
+    private final Map<Phase, Long> lastAllocations;
+    private long lastMoves;
+    private long lastDrops;
+    private long lastFood;
+    private long lastSkipped;
+    private long lastReport;
+    private volatile double antMovesPerSecond;
+    private volatile double pheromoneDropsPerSecond;
+    private volatile double foodDeliveredPerSecond;
+    private volatile double epochsPerSecond;
+    private volatile double framesPerSecond;
+
+    SimulationMetrics() {
+        this.latencies = new EnumMap<>(Phase.class);
+        this.allocations = new EnumMap<>(Phase.class);
+        this.lastAllocations = new EnumMap<>(Phase.class);
+        for (final Phase p : Phase.values()) {
+            this.latencies.put(p, new LatencyHistogram());
+            this.allocations.put(p, new LongAdder());
+            this.lastAllocations.put(p, 0L);
+        }
+        this.antMoves = new LongAdder();
+        this.pheromoneDrops = new LongAdder();
+        this.foodDelivered = new LongAdder();
+        this.imageUploads = new LongAdder();
+        this.skippedFrames = new LongAdder();
+        this.lastSnapshots = snapshots();
+        this.lastReport = System.nanoTime();
+    }
+
+    public static SimulationMetrics global() {
+        return GLOBAL;
+    }
+
+    public void record(final Phase phase, final long nanos) {
+        this.latencies.get(phase).record(nanos);
+    }
+
+    /**
+     * Records the bytes allocated during one run of {@code phase}, see {@code AllocationTracker}.
+     */
+    public void recordAllocation(final Phase phase, final long bytes) {
+        this.allocations.get(phase).add(bytes);
+    }
+
+    /**
+     * @return The mean number of bytes allocated per run of {@code phase} since start.
+     */
+    public double getAllocatedBytesPerRun(final Phase phase) {
+        final long runs = this.latencies.get(phase).snapshot().getCount();
+        return 0 == runs ? 0.0 : this.allocations.get(phase).sum() / (double) runs;
+    }
+
+    public LatencyHistogram.Snapshot getLatency(final Phase phase) {
+        return this.latencies.get(phase).snapshot();
+    }
+
+    public void countAntMoves(final long moves) {
+        this.antMoves.add(moves);
+    }
+
+    public void countPheromoneDrops(final long drops) {
+        this.pheromoneDrops.add(drops);
+    }
+
+    public void countFoodDelivered(final long food) {
+        this.foodDelivered.add(food);
+    }
+
+    /**
+     * Counts images whose pixels were written by a renderer.
+     */
+    public void countImageUploads(final int uploads) {
+        this.imageUploads.add(uploads);
+    }
+
+    public void countSkippedFrames(final int frames) {
+        this.skippedFrames.add(frames);
+    }
+
+    /**
+     * Registers this instance with the platform MBean server. Registering more than once has no effect.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final InstanceAlreadyExistsException e) {
+            // Already visible.
+        } catch (final JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Starts updating the rates and printing a log line every {@code periodMillis} milliseconds from a daemon thread.
+     */
+    public synchronized void startReporting(final long periodMillis) {
+        if (null != this.reporter) {
+            return;
+        }
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        this.reporter.scheduleAtFixedRate(() -> System.out.println(report()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopReporting() {
+        if (null != this.reporter) {
+            this.reporter.shutdownNow();
+            this.reporter = null;
+        }
+    }
+
+    /**
+     * Updates the rates and gives a log line covering the time since the previous call.
+     */
+    synchronized String report() {
+        final long now = System.nanoTime();
+        final double seconds = (now - this.lastReport) / 1.0e9;
+        final Map<Phase, LatencyHistogram.Snapshot> current = snapshots();
+        final long moves = this.antMoves.sum();
+        final long drops = this.pheromoneDrops.sum();
+        final long food = this.foodDelivered.sum();
+        final long skipped = this.skippedFrames.sum();
+
+        this.antMovesPerSecond = (moves - this.lastMoves) / seconds;
+        this.pheromoneDropsPerSecond = (drops - this.lastDrops) / seconds;
+        this.foodDeliveredPerSecond = (food - this.lastFood) / seconds;
+
+        final StringBuilder sb = new StringBuilder("metrics");
+        for (final Phase p : Phase.values()) {
+            final LatencyHistogram.Snapshot s = current.get(p).since(this.lastSnapshots.get(p));
+            if (Phase.EPOCH == p) {
+                this.epochsPerSecond = s.getCount() / seconds;
+            } else if (Phase.FRAME == p) {
+                this.framesPerSecond = s.getCount() / seconds;
+            }
+            final long allocated = this.allocations.get(p).sum();
+            if (0 < s.getCount()) {
+                final String key = p.name().toLowerCase(Locale.ROOT);
+                sb.append(String.format(Locale.ROOT,
+                        " %s_n=%d %s_p50_ms=%.3f %s_p99_ms=%.3f %s_max_ms=%.3f %s_alloc_kb=%.1f",
+                        key, s.getCount(), key, millis(s.getValueAt(0.5)), key, millis(s.getValueAt(0.99)),
+                        key, millis(s.getMax()),
+                        key, (allocated - this.lastAllocations.get(p)) / 1024.0 / s.getCount()));
+            }
+            this.lastAllocations.put(p, allocated);
+        }
+        sb.append(String.format(Locale.ROOT,
+                " epochs_per_s=%.1f frames_per_s=%.1f skipped_frames=%d ant_moves_per_s=%.0f drops_per_s=%.0f"
+                        + " food_per_s=%.1f",
+                this.epochsPerSecond, this.framesPerSecond, skipped - this.lastSkipped, this.antMovesPerSecond,
+                this.pheromoneDropsPerSecond, this.foodDeliveredPerSecond));
+
+        this.lastSnapshots = current;
+        this.lastMoves = moves;
+        this.lastDrops = drops;
+        this.lastFood = food;
+        this.lastSkipped = skipped;
+        this.lastReport = now;
+        return sb.toString();
+    }
+
+    private Map<Phase, LatencyHistogram.Snapshot> snapshots() {
+        final Map<Phase, LatencyHistogram.Snapshot> m = new EnumMap<>(Phase.class);
+        for (final Phase p : Phase.values()) {
+            m.put(p, this.latencies.get(p).snapshot());
+        }
+        return m;
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1.0e6;
+    }
+
+    private Map<String, Double> byPhase(final ToDoubleFunction<LatencyHistogram.Snapshot> f) {
+        final Map<String, Double> m = new LinkedHashMap<>();
+        for (final Phase p : Phase.values()) {
+            m.put(p.name(), f.applyAsDouble(this.latencies.get(p).snapshot()));
+        }
+        return m;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyCounts() {
+        final Map<String, Long> m = new LinkedHashMap<>();
+        for (final Phase p : Phase.values()) {
+            m.put(p.name(), this.latencies.get(p).snapshot().getCount());
+        }
+        return m;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Millis() {
+        return byPhase(s -> millis(s.getValueAt(0.5)));
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Millis() {
+        return byPhase(s -> millis(s.getValueAt(0.99)));
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMaxMillis() {
+        return byPhase(s -> millis(s.getMax()));
+    }
+
+    @Override
+    public Map<String, Double> getAllocatedBytesPerRun() {
+        final Map<String, Double> m = new LinkedHashMap<>();
+        for (final Phase p : Phase.values()) {
+            m.put(p.name(), getAllocatedBytesPerRun(p));
+        }
+        return m;
+    }
+
+    @Override
+    public long getAntMoves() {
+        return this.antMoves.sum();
+    }
+
+    @Override
+    public long getPheromoneDrops() {
+        return this.pheromoneDrops.sum();
+    }
+
+    @Override
+    public long getFoodDelivered() {
+        return this.foodDelivered.sum();
+    }
+
+    @Override
+    public long getImageUploads() {
+        return this.imageUploads.sum();
+    }
+
+    @Override
+    public long getSkippedFrames() {
+        return this.skippedFrames.sum();
+    }
+
+    @Override
+    public double getAntMovesPerSecond() {
+        return this.antMovesPerSecond;
+    }
+
+    @Override
+    public double getPheromoneDropsPerSecond() {
+        return this.pheromoneDropsPerSecond;
+    }
+
+    @Override
+    public double getFoodDeliveredPerSecond() {
+        return this.foodDeliveredPerSecond;
+    }
+
+    @Override
+    public double getEpochsPerSecond() {
+        return this.epochsPerSecond;
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return this.framesPerSecond;
+    }
+}
@@ -0,0 +1,48 @@
+package org.evensen.ants.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@code SimulationMetrics}, registered as {@code org.evensen.ants:type=SimulationMetrics}.
+ * Latency maps are keyed by {@code Phase} name and cover everything recorded since start.
+ */
+public interface SimulationMetricsMXBean {
+    Map<String, Long> getLatencyCounts();
+
+    Map<String, Double> getLatencyP50Millis();
+
+    Map<String, Double> getLatencyP99Millis();
+
+    Map<String, Double> getLatencyMaxMillis();
+
+    /**
+     * Mean bytes allocated per run of each phase, see {@code AllocationTracker}.
+     */
+    Map<String, Double> getAllocatedBytesPerRun();
+
+    long getAntMoves();
+
+    long getPheromoneDrops();
+
+    long getFoodDelivered();
+
+    long getImageUploads();
+
+    /**
+     * Frames the view asked for while the render pipeline was still busy with the previous one.
+     */
+    long getSkippedFrames();
+
+    /**
+     * Rates are measured over the last reporting period.
+     */
+    double getAntMovesPerSecond();
+
+    double getPheromoneDropsPerSecond();
+
+    double getFoodDeliveredPerSecond();
+
+    double getEpochsPerSecond();
+
+    double getFramesPerSecond();
+}
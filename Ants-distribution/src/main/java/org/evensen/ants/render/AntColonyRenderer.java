@@ -1,54 +1,343 @@
 package org.evensen.ants.render;
 
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
-import org.evensen.ants.AntColony;
-import org.evensen.ants.Ant;
-
-import java.util.List;
-import java.util.ArrayList;
-
-
-public enum AntColonyRenderer {
-    ;
-    private static final Color FORAGING_ANT_COLOR = Color.color(0.4, 0.4, 1.0, 0.5);
-    private static final Color FOOD_CARRYING_ANT_COLOR = Color.color(0.7, 0.7, 0.0, 0.5);
-    private static final Color DEAD_ANT_COLOR = Color.color(0.8, 0.0, 0.0, 0.5);
-    private static long renderingTime = 0;
-    private static long renders = 0;
-
-    public static void render(final GraphicsContext g, final AntColony colony) {
-        long startTime = System.nanoTime();
-        renders++;
-        g.save();
-
-        g.setLineWidth(0.5);
-        g.setFill(Color.BLACK);
-        List<Ant> colonyView = new ArrayList<>(colony.getAnts());
-
-        for (final Ant ant : colonyView) {
-            final float antX1 = (float) (Math.cos(ant.getDirection()) + ant.getPosition().getX());
-            final float antX2 = (float) (Math.cos(ant.getDirection() + Math.PI) + ant.getPosition().getX());
-            final float antY1 = (float) (Math.sin(ant.getDirection()) + ant.getPosition().getY());
-            final float antY2 = (float) (Math.sin(ant.getDirection() + Math.PI) + ant.getPosition().getY());
-            Color tailColor;
-            if(ant.isDead()) {
-                tailColor = DEAD_ANT_COLOR;
+import org.evensen.ants.SimulationFrame;
+import org.evensen.ants.WorldRegion;
+import org.evensen.ants.metrics.SimulationMetrics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Draws the ants of a frame as one image.
+ *
+ * <p>
+ * The ants are rasterized straight into an int buffer, in parallel bands of rows, off the JavaFX application thread.
+ * The image covers only the visible cells, so ants outside the view cost no more than a comparison. When a cell
+ * covers at least {@code DETAIL_PIXELS_PER_CELL} pixels on screen every ant is drawn with its tail and
+ * head. When the view is zoomed out further the ants would be smaller than a pixel, so each pixel instead shows the
+ * ants within it as a density: its colour is the mix of the foraging, food carrying and dead ants it covers and its
+ * opacity that of as many ants drawn on top of each other. Either way the cost is one pass over the ants and one over
+ * the pixels, and no drawing commands per ant reach the toolkit.
+ * </p>
+ *
+ * <p>
+ * In detail, the ants in view are first sorted into bins of {@code BIN_ROWS} rows by the row of their centre, with a
+ * counting sort. A band then only visits the bins of ants that can reach it, so each ant is drawn by the one or two
+ * bands it touches rather than looked at by every band. Ants are drawn bin by bin, in colony order within a bin, so
+ * the pixels do not depend on how the rows are split into bands.
+ * </p>
+ */
+public class AntColonyRenderer {
+    private static final double DETAIL_PIXELS_PER_CELL = 2.0;
+    private static final int MAX_DETAIL_SCALE = 8;
+    private static final int BIN_ROWS = 8;
+    private static final int FORAGING_ANT_COLOR = Argb.convertToARGB(Color.color(0.4, 0.4, 1.0, 0.5));
+    private static final int FOOD_CARRYING_ANT_COLOR = Argb.convertToARGB(Color.color(0.7, 0.7, 0.0, 0.5));
+    private static final int DEAD_ANT_COLOR = Argb.convertToARGB(Color.color(0.8, 0.0, 0.0, 0.5));
+    private static final int FORAGING_TAIL = Argb.premultiply(FORAGING_ANT_COLOR);
+    private static final int FOOD_CARRYING_TAIL = Argb.premultiply(FOOD_CARRYING_ANT_COLOR);
+    private static final int DEAD_TAIL = Argb.premultiply(DEAD_ANT_COLOR);
+    private static final int HEAD_COLOR = 0xFF000000;
+    private static final int[] DENSITY_ALPHA = densityAlpha(0.5, 12);
+
+    private int width;
+    private int height;
+    private int originX;
+    private int originY;
+    private int scale;
+    private int cellsPerPixel;
+    private int[] pixels;
+    private int[] foraging;
+    private int[] carrying;
+    private int[] dead;
+    // The ants of bin b are binnedAnts[binStarts[b]] to binnedAnts[binStarts[b + 1] - 1]; antBins holds each ant's
+    // bin while sorting, or -1 if it is out of view.
+    private int[] binStarts;
+    private int[] binnedAnts;
+    private int[] antBins;
+    private boolean pending;
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private WritableImage image;
+    private double imageX;
+    private double imageY;
+    private double imageWidth;
+    private double imageHeight;
+
+    /**
+     * @return The opacity of {@code n} ants of opacity {@code alpha} on top of each other, indexed by {@code n}.
+     */
+    private static int[] densityAlpha(final double alpha, final int n) {
+        final int[] table = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            table[i] = (int) Math.round(255.0 * (1.0 - Math.pow(1.0 - alpha, i)));
+        }
+        return table;
+    }
+
+    /**
+     * Rasterizes the ants of {@code frame} within {@code visible}, without touching the toolkit. Called by the
+     * {@code RenderPipeline} only.
+     *
+     * @param pixelsPerCell How many pixels one cell of the world covers on screen, which decides the level of detail.
+     * @return {@code true} if there is an image to upload.
+     */
+    public boolean prepare(final SimulationFrame frame, final WorldRegion visible, final double pixelsPerCell,
+                           final ScanlineBands bands) {
+        final int detail = DETAIL_PIXELS_PER_CELL <= pixelsPerCell
+                ? Math.min(MAX_DETAIL_SCALE, (int) Math.ceil(pixelsPerCell)) : 0;
+        final int cells = 0 < detail ? 1 : Math.max(1, (int) (1.0 / pixelsPerCell));
+        final int w = 0 < detail ? visible.getWidth() * detail : -Math.floorDiv(-visible.getWidth(), cells);
+        final int h = 0 < detail ? visible.getHeight() * detail : -Math.floorDiv(-visible.getHeight(), cells);
+        if (null == this.pixels || w != this.width || h != this.height) {
+            this.width = w;
+            this.height = h;
+            this.pixels = new int[w * h];
+            this.foraging = null;
+        }
+        this.originX = visible.getMinX();
+        this.originY = visible.getMinY();
+        this.scale = detail;
+        this.cellsPerPixel = cells;
+        if (0 < detail) {
+            bin(frame);
+            bands.render(h, (fromY, toY) -> rasterize(frame, fromY, toY));
+        } else {
+            if (null == this.foraging) {
+                this.foraging = new int[w * h];
+                this.carrying = new int[w * h];
+                this.dead = new int[w * h];
+            }
+            count(frame);
+            bands.render(h, this::shade);
+        }
+        this.pending = true;
+        return true;
+    }
+
+    /**
+     * @return How far from its centre, in pixels, an ant drawn at the current scale may reach.
+     */
+    private float reach() {
+        return 1.5f * this.scale + Math.max(1, Math.round(0.5f * this.scale));
+    }
+
+    /**
+     * Sorts the ants in view into bins by the row of their centre. Ants just above or below the image go into the
+     * first or last bin.
+     */
+    private void bin(final SimulationFrame frame) {
+        final int n = frame.getAntCount();
+        final int bins = (this.height + BIN_ROWS - 1) / BIN_ROWS;
+        if (null == this.binStarts || this.binStarts.length < bins + 1) {
+            this.binStarts = new int[bins + 1];
+        }
+        if (null == this.antBins || this.antBins.length < n) {
+            this.antBins = new int[n];
+            this.binnedAnts = new int[n];
+        }
+        Arrays.fill(this.binStarts, 0, bins + 1, 0);
+        final float reach = reach();
+        for (int i = 0; i < n; i++) {
+            final float y = (frame.getAntY(i) - this.originY) * this.scale;
+            final float x = (frame.getAntX(i) - this.originX) * this.scale;
+            if (y + reach < 0.0f || y - reach >= this.height || x + reach < 0.0f || x - reach >= this.width) {
+                this.antBins[i] = -1;
+                continue;
+            }
+            final int b = Math.max(0, Math.min(bins - 1, (int) Math.floor(y) / BIN_ROWS));
+            this.antBins[i] = b;
+            this.binStarts[b + 1]++;
+        }
+        for (int b = 0; b < bins; b++) {
+            this.binStarts[b + 1] += this.binStarts[b];
+        }
+        // Filling a bin moves its start to the start of the next one; shifting the starts back restores them.
+        for (int i = 0; i < n; i++) {
+            final int b = this.antBins[i];
+            if (0 <= b) {
+                this.binnedAnts[this.binStarts[b]++] = i;
+            }
+        }
+        System.arraycopy(this.binStarts, 0, this.binStarts, 1, bins);
+        this.binStarts[0] = 0;
+    }
+
+    private void rasterize(final SimulationFrame frame, final int fromY, final int toY) {
+        Arrays.fill(this.pixels, fromY * this.width, toY * this.width, 0x00000000);
+        final int s = this.scale;
+        final int thickness = Math.max(1, Math.round(0.5f * s));
+        final float reach = reach();
+        final int bins = (this.height + BIN_ROWS - 1) / BIN_ROWS;
+        final int firstBin = Math.max(0, (int) Math.floor(fromY - reach) / BIN_ROWS);
+        final int lastBin = Math.min(bins - 1, (int) Math.floor(toY - 1 + reach) / BIN_ROWS);
+        for (int k = this.binStarts[firstBin]; k < this.binStarts[lastBin + 1]; k++) {
+            final int i = this.binnedAnts[k];
+            final float y = (frame.getAntY(i) - this.originY) * s;
+            if (y + reach < fromY || y - reach >= toY) {
+                continue;
+            }
+            final float x = (frame.getAntX(i) - this.originX) * s;
+            final double direction = frame.getAntDirection(i);
+            final float dx = (float) Math.cos(direction) * s;
+            final float dy = (float) Math.sin(direction) * s;
+            final byte flags = frame.getAntFlags(i);
+            final int tailColor;
+            if (0 != (flags & SimulationFrame.FLAG_DEAD)) {
+                tailColor = DEAD_TAIL;
+            } else {
+                tailColor = 0 != (flags & SimulationFrame.FLAG_CARRYING_FOOD) ? FOOD_CARRYING_TAIL : FORAGING_TAIL;
+            }
+            drawTail(x - dx, y - dy, x + dx, y + dy, thickness, tailColor, fromY, toY);
+            drawHead(x + dx, y + dy, 0.5f * s, fromY, toY);
+        }
+    }
+
+    /**
+     * Draws a line {@code thickness} pixels wide, visiting each pixel once so that translucent colours are not
+     * blended twice.
+     */
+    private void drawTail(final float x0, final float y0, final float x1, final float y1, final int thickness,
+                          final int color, final int fromY, final int toY) {
+        final float lx = x1 - x0;
+        final float ly = y1 - y0;
+        final int half = (thickness - 1) / 2;
+        if (Math.abs(ly) > Math.abs(lx)) {
+            final int first = Math.max(fromY, (int) Math.floor(Math.min(y0, y1)));
+            final int last = Math.min(toY - 1, (int) Math.floor(Math.max(y0, y1)));
+            for (int y = first; y <= last; y++) {
+                final float t = Math.max(0.0f, Math.min(1.0f, (y + 0.5f - y0) / ly));
+                final int x = (int) Math.floor(x0 + lx * t) - half;
+                for (int k = 0; k < thickness; k++) {
+                    blend(x + k, y, color);
+                }
+            }
+        } else {
+            final int first = (int) Math.floor(Math.min(x0, x1));
+            final int last = (int) Math.floor(Math.max(x0, x1));
+            for (int x = first; x <= last; x++) {
+                final float t = 0.0f == lx ? 0.0f : Math.max(0.0f, Math.min(1.0f, (x + 0.5f - x0) / lx));
+                final int y = (int) Math.floor(y0 + ly * t) - half;
+                for (int k = Math.max(0, fromY - y); k < Math.min(thickness, toY - y); k++) {
+                    blend(x, y + k, color);
+                }
+            }
+        }
+    }
+
+    private void drawHead(final float cx, final float cy, final float radius, final int fromY, final int toY) {
+        final int firstY = Math.max(fromY, (int) Math.floor(cy - radius));
+        final int lastY = Math.min(toY - 1, (int) Math.floor(cy + radius));
+        for (int y = firstY; y <= lastY; y++) {
+            for (int x = (int) Math.floor(cx - radius); x <= (int) Math.floor(cx + radius); x++) {
+                final float ox = x + 0.5f - cx;
+                final float oy = y + 0.5f - cy;
+                if (ox * ox + oy * oy <= radius * radius || (x == (int) Math.floor(cx) && y == (int) Math.floor(cy))) {
+                    blend(x, y, HEAD_COLOR);
+                }
+            }
+        }
+    }
+
+    private void blend(final int x, final int y, final int color) {
+        if (0 <= x && x < this.width && 0 <= y && y < this.height) {
+            final int i = y * this.width + x;
+            this.pixels[i] = Argb.over(color, this.pixels[i]);
+        }
+    }
+
+    /**
+     * Counts the ants of each kind within each pixel.
+     */
+    private void count(final SimulationFrame frame) {
+        final int cells = this.cellsPerPixel;
+        for (int i = 0; i < frame.getAntCount(); i++) {
+            final int x = Math.floorDiv((int) Math.floor(frame.getAntX(i)) - this.originX, cells);
+            final int y = Math.floorDiv((int) Math.floor(frame.getAntY(i)) - this.originY, cells);
+            if (0 > x || x >= this.width || 0 > y || y >= this.height) {
+                continue;
+            }
+            final int p = y * this.width + x;
+            final byte flags = frame.getAntFlags(i);
+            if (0 != (flags & SimulationFrame.FLAG_DEAD)) {
+                this.dead[p]++;
+            } else if (0 != (flags & SimulationFrame.FLAG_CARRYING_FOOD)) {
+                this.carrying[p]++;
             } else {
-                tailColor = ant.hasFood() ? FOOD_CARRYING_ANT_COLOR : FORAGING_ANT_COLOR;
+                this.foraging[p]++;
             }
-            g.setStroke(tailColor);
-            g.strokeLine(antX1, antY1, antX2, antY2);
-            g.fillOval((antX1 - 0.5f), (antY1 - 0.5f), 1, 1);
         }
-        g.restore();
-        long lastRenderingTime = (System.nanoTime() - startTime);
-        renderingTime += lastRenderingTime;
-        /*
-        System.out.println(
-                "Mean ant rendering time: " + renderingTime / 1_000_000_000.0 / renders + "\tlast render time: " +
-                        lastRenderingTime / 1_000_000_000.0);
+    }
 
-         */
+    /**
+     * Turns the counts of the rows {@code [fromY, toY)} into pixels, and clears them for the next frame.
+     */
+    private void shade(final int fromY, final int toY) {
+        for (int i = fromY * this.width; i < toY * this.width; i++) {
+            final int f = this.foraging[i];
+            final int c = this.carrying[i];
+            final int d = this.dead[i];
+            final int n = f + c + d;
+            if (0 == n) {
+                this.pixels[i] = 0x00000000;
+                continue;
+            }
+            final int r = (f * ((FORAGING_ANT_COLOR >> 16) & 0xFF) + c * ((FOOD_CARRYING_ANT_COLOR >> 16) & 0xFF)
+                    + d * ((DEAD_ANT_COLOR >> 16) & 0xFF)) / n;
+            final int g = (f * ((FORAGING_ANT_COLOR >> 8) & 0xFF) + c * ((FOOD_CARRYING_ANT_COLOR >> 8) & 0xFF)
+                    + d * ((DEAD_ANT_COLOR >> 8) & 0xFF)) / n;
+            final int b = (f * (FORAGING_ANT_COLOR & 0xFF) + c * (FOOD_CARRYING_ANT_COLOR & 0xFF)
+                    + d * (DEAD_ANT_COLOR & 0xFF)) / n;
+            final int a = DENSITY_ALPHA[Math.min(n, DENSITY_ALPHA.length - 1)];
+            this.pixels[i] = Argb.premultiply((a << 24) | (r << 16) | (g << 8) | b);
+            this.foraging[i] = 0;
+            this.carrying[i] = 0;
+            this.dead[i] = 0;
+        }
+    }
+
+    /**
+     * Copies the pixels of the last {@code prepare} into the {@code PixelBuffer}. Called by the
+     * {@code RenderPipeline} only, on the JavaFX application thread.
+     */
+    public void upload() {
+        if (!this.pending) {
+            return;
+        }
+        if (null == this.pixelBuffer
+                || this.width != this.pixelBuffer.getWidth() || this.height != this.pixelBuffer.getHeight()) {
+            final IntBuffer front = ByteBuffer.allocateDirect(this.width * this.height * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            front.put(0, this.pixels);
+            this.pixelBuffer = new PixelBuffer<>(this.width, this.height, front, PixelFormat.getIntArgbPreInstance());
+            this.image = new WritableImage(this.pixelBuffer);
+        } else {
+            this.pixelBuffer.updateBuffer(b -> {
+                b.getBuffer().put(0, this.pixels);
+                return null;
+            });
+        }
+        final double cellsPerImagePixel = 0 < this.scale ? 1.0 / this.scale : this.cellsPerPixel;
+        this.imageX = this.originX;
+        this.imageY = this.originY;
+        this.imageWidth = this.width * cellsPerImagePixel;
+        this.imageHeight = this.height * cellsPerImagePixel;
+        SimulationMetrics.global().countImageUploads(1);
+        this.pending = false;
+    }
+
+    /**
+     * Draws the ants as of the last {@code upload}, in world coordinates.
+     */
+    public void render(final GraphicsContext g) {
+        if (null != this.image) {
+            g.drawImage(this.image, this.imageX, this.imageY, this.imageWidth, this.imageHeight);
+        }
     }
 }
@@ -1,72 +1,261 @@
 package org.evensen.ants.render;
 
+import javafx.geometry.Rectangle2D;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelBuffer;
 import javafx.scene.image.PixelFormat;
-import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
+import org.evensen.ants.AntWorld;
+import org.evensen.ants.GraphicsMath;
+import org.evensen.ants.Position;
+import org.evensen.ants.SimulationFrame;
+import org.evensen.ants.WorldRegion;
+import org.evensen.ants.metrics.SimulationMetrics;
 
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
-public enum AntWorldRenderer {
-    ;
-    private static final int HOME_COLOR = convertToARGB(Color.color(1.0, 0.2, 0.1, 0.8));
-    private static final int BASE_FOOD_CARRYING_SCENT_COLOR = convertToBaseRGB(Color.color(0.8, 0.8, 0.0));
-    private static final int BASE_FORAGING_SCENT_COLOR = convertToBaseRGB(Color.color(0.0, 0.4, 0.7));
+/**
+ * Draws the foraging pheromone, food pheromone and home layers, in that order, as one image of the visible cells.
+ *
+ * <p>
+ * The layers are composited in a single pass, in parallel bands of rows, into a back buffer off the JavaFX
+ * application thread. Uploading copies only the changed span of each row into a direct buffer shared with a
+ * {@code PixelBuffer}, and hands just the bounding box of the changes to the toolkit.
+ * </p>
+ *
+ * <p>
+ * Only the visible cells are composited. While a cell covers at least a pixel on screen there is one pixel per cell;
+ * when the view is zoomed out further each pixel shows a square tile of cells, with the strongest pheromone levels
+ * within it so that thin trails do not fade away.
+ * </p>
+ */
+public class AntWorldRenderer {
+    private static final int HOME_COLOR = Argb.premultiply(Argb.convertToARGB(Color.color(1.0, 0.2, 0.1, 0.8)));
+    private static final int[] FOOD_CARRYING_SCENT_COLORS =
+            Argb.alphaRamp(Argb.convertToBaseRGB(Color.color(0.8, 0.8, 0.0)));
+    private static final int[] FORAGING_SCENT_COLORS =
+            Argb.alphaRamp(Argb.convertToBaseRGB(Color.color(0.0, 0.4, 0.7)));
 
-    private static int convertToBaseRGB(Color color) {
-        return ((int) Math.round(255.0 * color.getRed()) << 16)
-                | ((int) Math.round(255.0 * color.getGreen()) << 8)
-                | ((int) Math.round(255.0 * color.getBlue()));
-    }
+    private int worldWidth;
+    private int worldHeight;
+    private int width;
+    private int height;
+    private int originX;
+    private int originY;
+    private int tile;
+    private int visibleWidth;
+    private int visibleHeight;
+    private int[] pixels;
+    private int[] rowMinX;
+    private int[] rowMaxX;
+    private boolean pending;
+    private boolean[] home;
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private WritableImage image;
+    private int dirtyMinX;
+    private int dirtyMinY;
+    private int dirtyMaxX;
+    private int dirtyMaxY;
+    private double imageTile;
+    private double imageX;
+    private double imageY;
+    private double imageWidth;
+    private double imageHeight;
 
-    private static int convertToARGB(Color color) {
-        return ((int) Math.round(255.0 * color.getOpacity()) << 24)
-                | ((int) Math.round(255.0 * color.getRed()) << 16)
-                | ((int) Math.round(255.0 * color.getGreen()) << 8)
-                | ((int) Math.round(255.0 * color.getBlue()));
+    private static int pheromoneAlpha(float strength) {
+        return Math.max(0, Math.min(255, Math.round(GraphicsMath.bias(strength * 15f, 0.97f) * 255.0f)));
     }
 
-    private static int pheromoneAlpha(float strength) {
-        return Math.min(255, (Math.round(org.evensen.ants.GraphicsMath.bias(strength * 15f, 0.97f) * 255.0f))) << 24;
+    /**
+     * Composites the layers of {@code frame} within {@code visible} into the back buffer, without touching the
+     * toolkit. Called by the {@code RenderPipeline} only.
+     *
+     * @param pixelsPerCell How many pixels one cell of the world covers on screen, which decides the tile size.
+     * @return {@code true} if any pixel changed since the previous call.
+     */
+    public boolean prepare(final SimulationFrame frame, final AntWorld world, final WorldRegion visible,
+                           final double pixelsPerCell, final ScanlineBands bands) {
+        if (null == this.home || frame.getWidth() != this.worldWidth || frame.getHeight() != this.worldHeight) {
+            allocateHome(frame.getWidth(), frame.getHeight(), world);
+        }
+        final int cells = 1.0 <= pixelsPerCell ? 1 : Math.max(1, (int) (1.0 / pixelsPerCell));
+        final int w = -Math.floorDiv(-visible.getWidth(), cells);
+        final int h = -Math.floorDiv(-visible.getHeight(), cells);
+        if (null == this.pixels || w != this.width || h != this.height) {
+            this.width = w;
+            this.height = h;
+            this.pixels = new int[w * h];
+            this.rowMinX = new int[h];
+            this.rowMaxX = new int[h];
+        }
+        final boolean moved = visible.getMinX() != this.originX || visible.getMinY() != this.originY
+                || visible.getWidth() != this.visibleWidth || visible.getHeight() != this.visibleHeight
+                || cells != this.tile;
+        this.originX = visible.getMinX();
+        this.originY = visible.getMinY();
+        this.visibleWidth = visible.getWidth();
+        this.visibleHeight = visible.getHeight();
+        this.tile = cells;
+        if (1 == cells) {
+            bands.render(this.height, (fromY, toY) -> composite(frame, fromY, toY));
+        } else {
+            bands.render(this.height, (fromY, toY) -> compositeTiles(frame, fromY, toY));
+        }
+        if (moved) {
+            //
+            // Every pixel now shows other cells, and the image has to be drawn elsewhere even if none changed.
+            //
+            Arrays.fill(this.rowMinX, 0);
+            Arrays.fill(this.rowMaxX, this.width - 1);
+        }
+
+        int minX = this.width;
+        int maxX = -1;
+        this.dirtyMinY = this.height;
+        this.dirtyMaxY = -1;
+        for (int y = 0; y < this.height; y++) {
+            if (0 <= this.rowMaxX[y]) {
+                minX = Math.min(minX, this.rowMinX[y]);
+                maxX = Math.max(maxX, this.rowMaxX[y]);
+                this.dirtyMinY = Math.min(this.dirtyMinY, y);
+                this.dirtyMaxY = y;
+            }
+        }
+        this.dirtyMinX = minX;
+        this.dirtyMaxX = maxX;
+        this.pending = 0 <= maxX;
+        return 0 <= maxX;
     }
 
-    public static void render(GraphicsContext g, org.evensen.ants.AntWorld world) {
-        g.save();
-     //   g.setGlobalBlendMode(BlendMode.ADD);
+    private void composite(final SimulationFrame frame, final int fromY, final int toY) {
+        final int[] dst = this.pixels;
+        final boolean[] isHome = this.home;
+        for (int y = fromY; y < toY; y++) {
+            int minX = this.width;
+            int maxX = -1;
+            int i = (this.originY + y) * this.worldWidth + this.originX;
+            int j = y * this.width;
+            for (int x = 0; x < this.width; x++) {
+                int c = Argb.over(FOOD_CARRYING_SCENT_COLORS[pheromoneAlpha(frame.getFoodPheromone(i))],
+                        FORAGING_SCENT_COLORS[pheromoneAlpha(frame.getForagingPheromone(i))]);
+                if (isHome[i]) {
+                    c = Argb.over(HOME_COLOR, c);
+                }
+                if (dst[j] != c) {
+                    dst[j] = c;
+                    minX = Math.min(minX, x);
+                    maxX = x;
+                }
+                i++;
+                j++;
+            }
+            this.rowMinX[y] = minX;
+            this.rowMaxX[y] = maxX;
+        }
+    }
 
-        final int[] foodPheromonePixels = new int[world.getWidth() * world.getHeight()];
-        final int[] foragingPheromonePixels = new int[world.getWidth() * world.getHeight()];
-        final int[] homePixels = new int[world.getWidth() * world.getHeight()];
-        int i = 0;
-        for (int y = 0; y < world.getHeight(); y++) {
-            for (int x = 0; x < world.getWidth(); x++) {
-                final org.evensen.ants.Position p = new org.evensen.ants.Position(x, y);
-                foodPheromonePixels[i] = BASE_FOOD_CARRYING_SCENT_COLOR | pheromoneAlpha(world.getFoodStrength(p));
-                foragingPheromonePixels[i] = BASE_FORAGING_SCENT_COLOR | pheromoneAlpha(world.getForagingStrength(p));
-                homePixels[i] = world.isHome(p) ? HOME_COLOR : 0x000000;
-                ++i;
+    /**
+     * Like {@code composite}, but with a pixel per tile of {@code tile} by {@code tile} cells.
+     */
+    private void compositeTiles(final SimulationFrame frame, final int fromY, final int toY) {
+        final int[] dst = this.pixels;
+        final boolean[] isHome = this.home;
+        for (int y = fromY; y < toY; y++) {
+            int minX = this.width;
+            int maxX = -1;
+            final int cellFromY = this.originY + y * this.tile;
+            final int cellToY = Math.min(cellFromY + this.tile, this.originY + this.visibleHeight);
+            int j = y * this.width;
+            for (int x = 0; x < this.width; x++) {
+                final int cellFromX = this.originX + x * this.tile;
+                final int cellToX = Math.min(cellFromX + this.tile, this.originX + this.visibleWidth);
+                float food = 0.0f;
+                float foraging = 0.0f;
+                boolean anyHome = false;
+                for (int cy = cellFromY; cy < cellToY; cy++) {
+                    final int row = cy * this.worldWidth;
+                    for (int i = row + cellFromX; i < row + cellToX; i++) {
+                        food = Math.max(food, frame.getFoodPheromone(i));
+                        foraging = Math.max(foraging, frame.getForagingPheromone(i));
+                        anyHome |= isHome[i];
+                    }
+                }
+                int c = Argb.over(FOOD_CARRYING_SCENT_COLORS[pheromoneAlpha(food)],
+                        FORAGING_SCENT_COLORS[pheromoneAlpha(foraging)]);
+                if (anyHome) {
+                    c = Argb.over(HOME_COLOR, c);
+                }
+                if (dst[j] != c) {
+                    dst[j] = c;
+                    minX = Math.min(minX, x);
+                    maxX = x;
+                }
+                j++;
             }
+            this.rowMinX[y] = minX;
+            this.rowMaxX[y] = maxX;
+        }
+    }
+
+    /**
+     * Copies the changed rows of the back buffer into the {@code PixelBuffer} and tells the toolkit which region
+     * changed. Called by the {@code RenderPipeline} only, on the JavaFX application thread.
+     */
+    public void upload() {
+        if (!this.pending) {
+            return;
         }
+        if (null == this.pixelBuffer
+                || this.width != this.pixelBuffer.getWidth() || this.height != this.pixelBuffer.getHeight()) {
+            final IntBuffer front = ByteBuffer.allocateDirect(this.width * this.height * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            front.put(0, this.pixels);
+            this.pixelBuffer = new PixelBuffer<>(this.width, this.height, front, PixelFormat.getIntArgbPreInstance());
+            this.image = new WritableImage(this.pixelBuffer);
+        } else {
+            this.pixelBuffer.updateBuffer(b -> {
+                final IntBuffer front = b.getBuffer();
+                for (int y = this.dirtyMinY; y <= this.dirtyMaxY; y++) {
+                    if (0 <= this.rowMaxX[y]) {
+                        final int i = y * this.width + this.rowMinX[y];
+                        front.put(i, this.pixels, i, this.rowMaxX[y] - this.rowMinX[y] + 1);
+                    }
+                }
+                return new Rectangle2D(this.dirtyMinX, this.dirtyMinY,
+                        this.dirtyMaxX - this.dirtyMinX + 1, this.dirtyMaxY - this.dirtyMinY + 1);
+            });
+        }
+        this.imageTile = this.tile;
+        this.imageX = this.originX;
+        this.imageY = this.originY;
+        this.imageWidth = this.visibleWidth;
+        this.imageHeight = this.visibleHeight;
+        SimulationMetrics.global().countImageUploads(1);
+        this.pending = false;
+    }
 
-        for (int[] pixels : List.of(
-                foragingPheromonePixels,
-                foodPheromonePixels,
-                homePixels)) {
-            WritableImage raster = new WritableImage(world.getWidth(), world.getHeight());
-            PixelWriter pixelWriter = raster.getPixelWriter();
-            pixelWriter.setPixels(
-                    0,
-                    0,
-                    world.getWidth(),
-                    world.getHeight(),
-                    PixelFormat.getIntArgbInstance(),
-                    pixels,
-                    0,
-                    world.getWidth());
-            g.drawImage(raster, 0, 0);
+    /**
+     * Draws the pheromone levels and home as of the last {@code upload}, in world coordinates.
+     */
+    public void render(final GraphicsContext g) {
+        if (null != this.image) {
+            g.drawImage(this.image, 0.0, 0.0, this.imageWidth / this.imageTile, this.imageHeight / this.imageTile,
+                    this.imageX, this.imageY, this.imageWidth, this.imageHeight);
         }
+    }
 
-        g.restore();
+    private void allocateHome(final int w, final int h, final AntWorld world) {
+        this.worldWidth = w;
+        this.worldHeight = h;
+        this.home = new boolean[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                this.home[y * w + x] = world.isHome(new Position(x, y));
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package org.evensen.ants.render;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Packing and compositing of 32 bit ARGB pixels for the layers that build their own pixels.
+ */
+enum Argb {
+    ;
+
+    static int convertToBaseRGB(final Color color) {
+        return ((int) Math.round(255.0 * color.getRed()) << 16)
+                | ((int) Math.round(255.0 * color.getGreen()) << 8)
+                | ((int) Math.round(255.0 * color.getBlue()));
+    }
+
+    static int convertToARGB(final Color color) {
+        return ((int) Math.round(255.0 * color.getOpacity()) << 24)
+                | convertToBaseRGB(color);
+    }
+
+    static int premultiply(final int argb) {
+        final int a = argb >>> 24;
+        return (a << 24)
+                | ((((argb >> 16) & 0xFF) * a + 127) / 255 << 16)
+                | ((((argb >> 8) & 0xFF) * a + 127) / 255 << 8)
+                | ((argb & 0xFF) * a + 127) / 255;
+    }
+
+    /**
+     * @return {@code rgb} premultiplied with every alpha from 0 to 255, indexed by alpha.
+     */
+    static int[] alphaRamp(final int rgb) {
+        final int[] ramp = new int[256];
+        for (int a = 0; a < ramp.length; a++) {
+            ramp[a] = premultiply((a << 24) | rgb);
+        }
+        return ramp;
+    }
+
+    /**
+     * Source-over of two premultiplied ARGB pixels.
+     */
+    static int over(final int src, final int dst) {
+        final int inv = 255 - (src >>> 24);
+        if (0 == inv) {
+            return src;
+        }
+        return src
+                + ((((dst >>> 24) * inv + 127) / 255) << 24)
+                + (((((dst >> 16) & 0xFF) * inv + 127) / 255) << 16)
+                + (((((dst >> 8) & 0xFF) * inv + 127) / 255) << 8)
+                + ((dst & 0xFF) * inv + 127) / 255;
+    }
+}
@@ -3,10 +3,15 @@ package org.evensen.ants.render;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
+import org.evensen.ants.metrics.SimulationMetrics;
 import org.evensen.ants.AntWorld;
 import org.evensen.ants.Position;
+import org.evensen.ants.WorldChangeListener;
+import org.evensen.ants.WorldRegion;
 
-public class FoodRenderer {
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FoodRenderer implements WorldChangeListener {
     private static final int COLOR_PRIMARY = 0xFFA4DE02;
     private static final int COLOR_HIGHLIGHT = 0xFFE4E100;
     private static final int HIGHLIGHT_WIDTH = 1;
@@ -14,125 +19,131 @@ public class FoodRenderer {
     private static final int COLOR_WEIGHT = 5;
     private static final int BLUR_WEIGHT = 3;
 
-    private boolean dirtyFlag;
+    private final AtomicBoolean dirtyFlag;
+    private final MajorityFilter filter;
+    private int discreteScaleX;
+    private int discreteScaleY;
+    private int width;
+    private int height;
+    private int[] buffer;
+    private int[] pixels;
+    private boolean pending;
     private WritableImage cachedImage;
 
     public FoodRenderer() {
-        this.dirtyFlag = true;
+        this.dirtyFlag = new AtomicBoolean(true);
+        this.filter = newFilter();
         this.cachedImage = null;
     }
 
-    public void dirty() {
-        this.dirtyFlag = true;
+    private static MajorityFilter newFilter() {
+        return new MajorityFilter(new int[]{COLOR_PRIMARY, COLOR_HIGHLIGHT}, 4, 32, 4, COLOR_WEIGHT, BLUR_WEIGHT);
     }
 
-    public void render(final GraphicsContext g, final AntWorld world) {
-        if (this.dirtyFlag) {
-            final int discreteScaleX = (int) g.getCanvas().getWidth() / world.getWidth() + 1;
-            final int discreteScaleY = (int) g.getCanvas().getHeight() / world.getHeight() + 1;
-
-            final int width = world.getWidth() * discreteScaleX;
-            final int height = world.getHeight() * discreteScaleY;
+    /**
+     * Marks the layer for re-rendering. May be called from any thread.
+     */
+    public void dirty() {
+        this.dirtyFlag.set(true);
+    }
 
-            this.cachedImage = new WritableImage(width, height);
+    @Override
+    public void foodSourceAdded(final WorldRegion region) {
+        dirty();
+    }
 
-            final int[] buffer = new int[width * height];
-            int i = 0;
-            for (int y = 0; y < world.getHeight(); y++) {
-                for (int k = 0; k < discreteScaleY; k++) {
-                    renderScanlineIntoCachedImage(world, buffer, i, discreteScaleX, y);
-                    i += width;
-                }
-            }
+    @Override
+    public void foodSourceRemoved(final WorldRegion region) {
+        dirty();
+    }
 
-            int[] des = buffer;
-            int[] src = new int[buffer.length];
-            for (int w = 0; w < 1; w++) {
-                int[] tmp = des;
-                des = src;
-                src = tmp;
-                int avgR = 0;
-                int avgG = 0;
-                int avgB = 0;
-                for(int j = 0; j < width * height; j++) {
-                    if (src[j] != 0X00000000) {
-                        int acc1 = 0;
-                        int acc2 = 0;
-                        int acc3 = 0;
-                        for (int offsY = -4; offsY < 5; offsY++) {
-                            final int k = j + width * offsY;
-                            if (j > -1 && j < buffer.length) {
-                                for (int offsX = -4; offsX < 5; offsX++) {
-                                    final int l = k + offsX;
-                                    if (l > -1 && l < buffer.length) {
-                                        final int c = src[l];
-                                        switch (c) {
-                                                                          /*- Needs Java 14+ to work:
-                                            case 0x00000000 -> acc1 += 1;
-                                            case COLOR_PRIMARY -> acc2 += 1;
-                                            case COLOR_HIGHLIGHT -> acc3 += 1;
-                                            */
-                                            case 0x00000000:
-                                                acc1 += 1;
-                                                break;
-                                            case COLOR_PRIMARY:
-                                                acc2 += 1;
-                                                break;
-                                            case COLOR_HIGHLIGHT:
-                                                acc3 += 1;
-                                                break;
-                                        }
-                                        avgR += c >> 16 & 0xFF;
-                                        avgG += c >> 8 & 0xFF;
-                                        avgB += c & 0xFF;
-                                    }
-                                }
-                            }
-                        }
-                        avgR /= 64;
-                        avgG /= 64;
-                        avgB /= 64;
-
-                        int c = 0x00000000;
-                        int k = 32;
-                        k -= acc1;
-                        if (k < 1) {
-                            c = 0x00000000;
-                        } else {
-                            k -= acc2;
-                            if (k < 1) {
-                                c = COLOR_PRIMARY;
-                            } else {
-                                k -= acc3;
-                                if (k < 1) {
-                                    c = COLOR_HIGHLIGHT;
-                                }
-                            }
-                        }
+    /**
+     * Re-renders the layer if it is dirty or the canvas scale changed. Called by the {@code RenderPipeline} only.
+     *
+     * @return {@code true} if the layer was re-rendered.
+     */
+    public boolean prepare(final AntWorld world, final double canvasWidth, final double canvasHeight,
+                           final ScanlineBands bands) {
+        final int scaleX = (int) canvasWidth / world.getWidth() + 1;
+        final int scaleY = (int) canvasHeight / world.getHeight() + 1;
+        if (!this.dirtyFlag.getAndSet(false) && scaleX == this.discreteScaleX && scaleY == this.discreteScaleY) {
+            return false;
+        }
+        this.discreteScaleX = scaleX;
+        this.discreteScaleY = scaleY;
+        this.width = world.getWidth() * scaleX;
+        this.height = world.getHeight() * scaleY;
+        if (null == this.pixels || this.pixels.length != this.width * this.height) {
+            this.buffer = new int[this.width * this.height];
+            this.pixels = new int[this.width * this.height];
+        }
+        renderPixels(world, scaleX, scaleY, this.buffer, this.pixels, this.filter, bands);
+        this.pending = true;
+        return true;
+    }
 
-                        if (c != 0x00000000) {
-                            final int r1 = Math.min(255, (((c >> 16) & 0xFF) * COLOR_WEIGHT + avgR * BLUR_WEIGHT)
-                                    / (COLOR_WEIGHT + BLUR_WEIGHT));
-                            final int g1 = Math.min(255, (((c >> 8) & 0xFF) * COLOR_WEIGHT + avgG * BLUR_WEIGHT)
-                                    / (COLOR_WEIGHT + BLUR_WEIGHT));
-                            final int b1 = Math.min(255, (((c & 0xFF) * COLOR_WEIGHT + avgB * BLUR_WEIGHT)
-                                    / (COLOR_WEIGHT + BLUR_WEIGHT)));
-                            des[j] = (c & 0xFF000000) | (r1 << 16) | (g1 << 8) | b1;
-                        }
-                    }
-                }
+    /**
+     * Writes the pixels of the last {@code prepare} into the cached image. Called by the {@code RenderPipeline}
+     * only, on the JavaFX application thread.
+     */
+    public void upload() {
+        if (this.pending) {
+            if (null == this.cachedImage
+                    || this.width != (int) this.cachedImage.getWidth()
+                    || this.height != (int) this.cachedImage.getHeight()) {
+                this.cachedImage = new WritableImage(this.width, this.height);
             }
-
             this.cachedImage.getPixelWriter().setPixels(
-                    0, 0, width, height, PixelFormat.getIntArgbInstance(), des, 0, width);
+                    0, 0, this.width, this.height, PixelFormat.getIntArgbInstance(), this.pixels, 0, this.width);
+            SimulationMetrics.global().countImageUploads(1);
+            this.pending = false;
+        }
+    }
 
-            this.dirtyFlag = false;
+    /**
+     * Draws the part of the layer within {@code visible}, in world coordinates.
+     */
+    public void render(final GraphicsContext g, final AntWorld world, final WorldRegion visible) {
+        if (null != this.cachedImage) {
+            final double scaleX = this.cachedImage.getWidth() / world.getWidth();
+            final double scaleY = this.cachedImage.getHeight() / world.getHeight();
+            g.drawImage(this.cachedImage,
+                    visible.getMinX() * scaleX, visible.getMinY() * scaleY,
+                    visible.getWidth() * scaleX, visible.getHeight() * scaleY,
+                    visible.getMinX(), visible.getMinY(), visible.getWidth(), visible.getHeight());
         }
+    }
 
-        g.drawImage(this.cachedImage, 0.0, 0.0, world.getWidth(), world.getHeight());
+    /**
+     * Renders the layer into a new ARGB buffer of {@code world.getWidth() * discreteScaleX} by
+     * {@code world.getHeight() * discreteScaleY} pixels, row by row.
+     */
+    public static int[] renderPixels(final AntWorld world, final int discreteScaleX, final int discreteScaleY) {
+        final int[] des = new int[world.getWidth() * discreteScaleX * world.getHeight() * discreteScaleY];
+        renderPixels(world, discreteScaleX, discreteScaleY, new int[des.length], des, newFilter(),
+                ScanlineBands.SEQUENTIAL);
+        return des;
+    }
+
+    private static void renderPixels(final AntWorld world, final int discreteScaleX, final int discreteScaleY,
+                                     final int[] buffer, final int[] des, final MajorityFilter filter,
+                                     final ScanlineBands bands) {
+        final int width = world.getWidth() * discreteScaleX;
+        final int height = world.getHeight() * discreteScaleY;
+
+        bands.render(world.getHeight(), (fromY, toY) -> {
+            int i = fromY * discreteScaleY * width;
+            for (int y = fromY; y < toY; y++) {
+                for (int k = 0; k < discreteScaleY; k++) {
+                    renderScanlineIntoCachedImage(world, buffer, i, discreteScaleX, y);
+                    i += width;
+                }
+            }
+        });
+        filter.filter(buffer, des, width, height, bands);
     }
 
-    private void renderScanlineIntoCachedImage(final AntWorld world,
+    private static void renderScanlineIntoCachedImage(final AntWorld world,
                                                final int[] buffer,
                                                final int i,
                                                final int scale,
@@ -141,6 +152,7 @@ public class FoodRenderer {
         for (int x = 0; x < world.getWidth(); x++) {
             for (int k = 0; k < scale; k++) {
                 final Position p = new Position(x, y);
+                buffer[j] = 0x00000000;
                 if (world.containsFood(p)) {
                     for (int offsetX = 1; offsetX <= HIGHLIGHT_WIDTH; offsetX++) {
                         for (int offsetY = 1; offsetY <= HIGHLIGHT_HEIGHT; offsetY++) {
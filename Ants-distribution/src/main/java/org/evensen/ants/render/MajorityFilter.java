@@ -0,0 +1,278 @@
+package org.evensen.ants.render;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Smooths a layer made of a few flat colours: every coloured pixel takes the colour that wins a vote among its
+ * neighbours, blended with the mean colour of a wider neighbourhood. Used by the cached layers.
+ *
+ * <p>
+ * The input only ever contains the layer's colours and transparent pixels, so both the vote and the mean colour
+ * follow from how many pixels of each colour there are in a window. Those counts are kept in 8 bit lanes of one
+ * {@code int} per pixel and summed with running windows, first along rows and then along columns, so the cost per
+ * pixel does not depend on the window size. Pixels outside the layer are not counted, and rows without any colour
+ * are skipped altogether.
+ * </p>
+ */
+final class MajorityFilter {
+    private static final int LANE_BITS = 8;
+    private static final int LANE_MASK = 0xFF;
+    private static final int BLUR_DIVISOR = 64;
+
+    private final int[] colors;
+    private final int voteRadius;
+    private final int voteThreshold;
+    private final int blurRadius;
+    private final int colorWeight;
+    private final int blurWeight;
+    private int[] voteCounts;
+    private int[] blurCounts;
+    private boolean[] occupied;
+    // Column sums of the vote and blur windows, a pair per band being filtered. A band takes a pair and puts it back
+    // when done, so there are never more pairs than bands filtered at once. Guarded by itself; an ArrayDeque, unlike
+    // a concurrent queue, allocates nothing per band.
+    private final ArrayDeque<int[][]> columnSums;
+
+    /**
+     * @param colors        The colours of the layer, in the order they are considered by the vote. At most 3.
+     * @param voteRadius    The vote is among the pixels at most this far from the pixel along both axes.
+     * @param voteThreshold The number of votes, counting transparent pixels first and then {@code colors} in
+     *                      order, at which a colour wins.
+     * @param blurRadius    The mean colour is over the pixels at most this far from the pixel along both axes.
+     * @param colorWeight   Weight of the winning colour in the blend.
+     * @param blurWeight    Weight of the mean colour in the blend.
+     */
+    MajorityFilter(final int[] colors, final int voteRadius, final int voteThreshold, final int blurRadius,
+                   final int colorWeight, final int blurWeight) {
+        final int window = 2 * Math.max(voteRadius, blurRadius) + 1;
+        if (colors.length >= Integer.SIZE / LANE_BITS || window * window > LANE_MASK) {
+            throw new IllegalArgumentException("Too many colours or too large a window for " + LANE_BITS + " bit lanes");
+        }
+        this.colors = colors.clone();
+        this.voteRadius = voteRadius;
+        this.voteThreshold = voteThreshold;
+        this.blurRadius = blurRadius;
+        this.colorWeight = colorWeight;
+        this.blurWeight = blurWeight;
+        this.columnSums = new ArrayDeque<>();
+    }
+
+    /**
+     * @return How far the filter reaches from a pixel along either axis.
+     */
+    int getRadius() {
+        return Math.max(this.voteRadius, this.blurRadius);
+    }
+
+    /**
+     * Filters {@code src} into {@code des}, both {@code width} by {@code height} pixels row by row.
+     * Transparent pixels of {@code src} stay transparent.
+     */
+    void filter(final int[] src, final int[] des, final int width, final int height, final ScanlineBands bands) {
+        filter(src, des, width, height, 0, 0, width, height, bands);
+    }
+
+    /**
+     * Filters the pixels {@code [fromX, toX)} of the rows {@code [fromY, toY)} of {@code src} into {@code des}, and
+     * leaves the rest of {@code des} as it is. Reads {@code src} up to {@code getRadius()} pixels around the region.
+     * Between calls the filter keeps per-row state for the rows it has read, so all calls must be for buffers of the
+     * same size.
+     */
+    void filter(final int[] src, final int[] des, final int width, final int height,
+                final int fromX, final int fromY, final int toX, final int toY, final ScanlineBands bands) {
+        if (null == this.voteCounts || this.voteCounts.length != src.length || this.occupied.length != height) {
+            this.voteCounts = new int[src.length];
+            this.blurCounts = this.voteRadius == this.blurRadius ? this.voteCounts : new int[src.length];
+            this.occupied = new boolean[height];
+            synchronized (this.columnSums) {
+                this.columnSums.clear();
+            }
+        }
+        final int[] votes = this.voteCounts;
+        final int[] blurs = this.blurCounts;
+        final int radius = getRadius();
+        final int readFromX = Math.max(0, fromX - radius);
+        final int readToX = Math.min(width, toX + radius);
+        final int readFromY = Math.max(0, fromY - radius);
+        final int readToY = Math.min(height, toY + radius);
+        bands.render(readToY - readFromY, (from, to) -> {
+            for (int y = readFromY + from; y < readFromY + to; y++) {
+                this.occupied[y] = isOccupied(src, width, y, readFromX, readToX);
+                if (this.occupied[y]) {
+                    countRow(src, votes, width, y, this.voteRadius, fromX, toX);
+                    if (blurs != votes) {
+                        countRow(src, blurs, width, y, this.blurRadius, fromX, toX);
+                    }
+                }
+            }
+        });
+        bands.render(toY - fromY, (from, to) -> filterRows(src, des, width, height, fromX, toX,
+                fromY + from, fromY + to));
+    }
+
+    private static boolean isOccupied(final int[] src, final int width, final int y, final int fromX,
+                                      final int toX) {
+        for (int i = y * width + fromX; i < y * width + toX; i++) {
+            if (0x00000000 != src[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int lane(final int color) {
+        if (0x00000000 == color) {
+            return 0;
+        }
+        for (int i = 0; i < this.colors.length; i++) {
+            if (this.colors[i] == color) {
+                return 1 << (i * LANE_BITS);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the counts of each colour within {@code radius} pixels along row {@code y} into {@code counts}, for
+     * the pixels {@code [fromX, toX)}.
+     */
+    private void countRow(final int[] src, final int[] counts, final int width, final int y, final int radius,
+                          final int fromX, final int toX) {
+        final int row = y * width;
+        int sum = 0;
+        for (int x = Math.max(0, fromX - radius); x < Math.min(fromX + radius, width); x++) {
+            sum += lane(src[row + x]);
+        }
+        for (int x = fromX; x < toX; x++) {
+            if (x + radius < width) {
+                sum += lane(src[row + x + radius]);
+            }
+            counts[row + x] = sum;
+            if (x - radius >= 0) {
+                sum -= lane(src[row + x - radius]);
+            }
+        }
+    }
+
+    private void filterRows(final int[] src, final int[] des, final int width, final int height,
+                            final int fromX, final int toX, final int fromY, final int toY) {
+        int[][] sums;
+        synchronized (this.columnSums) {
+            sums = this.columnSums.poll();
+        }
+        if (null == sums) {
+            sums = new int[][]{new int[width], this.blurCounts == this.voteCounts ? null : new int[width]};
+        }
+        final int[] vote = sums[0];
+        final int[] blur = null == sums[1] ? vote : sums[1];
+        Arrays.fill(vote, fromX, toX, 0);
+        if (blur != vote) {
+            Arrays.fill(blur, fromX, toX, 0);
+        }
+        startColumns(this.voteCounts, vote, width, height, fromX, toX, fromY, this.voteRadius);
+        if (blur != vote) {
+            startColumns(this.blurCounts, blur, width, height, fromX, toX, fromY, this.blurRadius);
+        }
+        for (int y = fromY; y < toY; y++) {
+            final int row = y * width;
+            if (this.occupied[y]) {
+                final int voteRows = Math.min(y + this.voteRadius, height - 1) - Math.max(y - this.voteRadius, 0) + 1;
+                for (int x = fromX; x < toX; x++) {
+                    des[row + x] = 0x00000000;
+                    if (0x00000000 != src[row + x]) {
+                        final int voteColumns =
+                                Math.min(x + this.voteRadius, width - 1) - Math.max(x - this.voteRadius, 0) + 1;
+                        des[row + x] = blend(vote[x], voteRows * voteColumns, blur[x]);
+                    }
+                }
+            } else {
+                Arrays.fill(des, row + fromX, row + toX, 0x00000000);
+            }
+            if (y + 1 < toY) {
+                slideColumns(this.voteCounts, vote, width, height, fromX, toX, y, this.voteRadius);
+                if (blur != vote) {
+                    slideColumns(this.blurCounts, blur, width, height, fromX, toX, y, this.blurRadius);
+                }
+            }
+        }
+        synchronized (this.columnSums) {
+            this.columnSums.push(sums);
+        }
+    }
+
+    /**
+     * Sums the row counts of the rows within {@code radius} of {@code y} into {@code columns}.
+     */
+    private void startColumns(final int[] counts, final int[] columns, final int width, final int height,
+                              final int fromX, final int toX, final int y, final int radius) {
+        for (int k = Math.max(0, y - radius); k <= Math.min(height - 1, y + radius); k++) {
+            if (!this.occupied[k]) {
+                continue;
+            }
+            final int row = k * width;
+            for (int x = fromX; x < toX; x++) {
+                columns[x] += counts[row + x];
+            }
+        }
+    }
+
+    /**
+     * Moves the column sums from the window around {@code y} to the window around {@code y + 1}.
+     */
+    private void slideColumns(final int[] counts, final int[] columns, final int width, final int height,
+                              final int fromX, final int toX, final int y, final int radius) {
+        if (y + radius + 1 < height && this.occupied[y + radius + 1]) {
+            final int row = (y + radius + 1) * width;
+            for (int x = fromX; x < toX; x++) {
+                columns[x] += counts[row + x];
+            }
+        }
+        if (y - radius >= 0 && this.occupied[y - radius]) {
+            final int row = (y - radius) * width;
+            for (int x = fromX; x < toX; x++) {
+                columns[x] -= counts[row + x];
+            }
+        }
+    }
+
+    private int blend(final int votes, final int voters, final int blurs) {
+        int c = 0x00000000;
+        int colored = 0;
+        for (int i = 0; i < this.colors.length; i++) {
+            colored += (votes >>> (i * LANE_BITS)) & LANE_MASK;
+        }
+        int k = this.voteThreshold - (voters - colored);
+        if (k >= 1) {
+            for (int i = 0; i < this.colors.length; i++) {
+                k -= (votes >>> (i * LANE_BITS)) & LANE_MASK;
+                if (k < 1) {
+                    c = this.colors[i];
+                    break;
+                }
+            }
+        }
+        if (0x00000000 == c) {
+            return 0x00000000;
+        }
+
+        int avgR = 0;
+        int avgG = 0;
+        int avgB = 0;
+        for (int i = 0; i < this.colors.length; i++) {
+            final int n = (blurs >>> (i * LANE_BITS)) & LANE_MASK;
+            avgR += n * ((this.colors[i] >> 16) & 0xFF);
+            avgG += n * ((this.colors[i] >> 8) & 0xFF);
+            avgB += n * (this.colors[i] & 0xFF);
+        }
+        avgR /= BLUR_DIVISOR;
+        avgG /= BLUR_DIVISOR;
+        avgB /= BLUR_DIVISOR;
+
+        final int weights = this.colorWeight + this.blurWeight;
+        final int r1 = Math.min(255, (((c >> 16) & 0xFF) * this.colorWeight + avgR * this.blurWeight) / weights);
+        final int g1 = Math.min(255, (((c >> 8) & 0xFF) * this.colorWeight + avgG * this.blurWeight) / weights);
+        final int b1 = Math.min(255, ((c & 0xFF) * this.colorWeight + avgB * this.blurWeight) / weights);
+        return (c & 0xFF000000) | (r1 << 16) | (g1 << 8) | b1;
+    }
+}
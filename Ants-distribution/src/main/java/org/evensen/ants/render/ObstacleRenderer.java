@@ -3,11 +3,22 @@ package org.evensen.ants.render;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
+import org.evensen.ants.WorldChangeListener;
+import org.evensen.ants.WorldRegion;
+import org.evensen.ants.metrics.SimulationMetrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Renders obstacles provided by an {@code AntWorld}.
+ *
+ * <p>
+ * Edits to the obstacles are collected as one dirty region, and only the pixels that region can affect are
+ * re-rendered and uploaded, so painting obstacles costs the same however large the world is.
+ * </p>
  */
-public class ObstacleRenderer {
+public class ObstacleRenderer implements WorldChangeListener {
     private static final int COLOR_PRIMARY = 0xF0202020;
     private static final int COLOR_HIGHLIGHT = 0xF0353030;
     private static final int COLOR_SPECULAR = 0xFF696665;
@@ -18,163 +29,239 @@ public class ObstacleRenderer {
     private static final int COLOR_WEIGHT = 5;
     private static final int BLUR_WEIGHT = 3;
 
-    private boolean dirtyFlag;
+    private final AtomicBoolean dirtyFlag;
+    private final AtomicReference<WorldRegion> dirtyRegion;
+    private final MajorityFilter filter;
+    private int discreteScaleX;
+    private int discreteScaleY;
+    private int width;
+    private int height;
+    private int[] buffer;
+    private int[] pixels;
+    private boolean pending;
+    private int pendingMinX;
+    private int pendingMinY;
+    private int pendingMaxX;
+    private int pendingMaxY;
     private WritableImage cachedImage;
 
     public ObstacleRenderer() {
-        this.dirtyFlag = true;
+        this.dirtyFlag = new AtomicBoolean(true);
+        this.dirtyRegion = new AtomicReference<>();
+        this.filter = newFilter();
         this.cachedImage = null;
     }
 
-    public void dirty() {
-        this.dirtyFlag = true;
+    private static MajorityFilter newFilter() {
+        return new MajorityFilter(new int[]{COLOR_PRIMARY, COLOR_HIGHLIGHT, COLOR_SPECULAR}, 2, 12, 4, COLOR_WEIGHT, BLUR_WEIGHT);
     }
 
-    public void render(final GraphicsContext g, final org.evensen.ants.AntWorld world) {
-        if (this.dirtyFlag) {
-            final int discreteScaleX = (int) g.getCanvas().getWidth() / world.getWidth() + 1;
-            final int discreteScaleY = (int) g.getCanvas().getHeight() / world.getHeight() + 1;
-
-            final int width = world.getWidth() * discreteScaleX;
-            final int height = world.getHeight() * discreteScaleY;
+    /**
+     * Marks the whole layer for re-rendering. May be called from any thread.
+     */
+    public void dirty() {
+        this.dirtyFlag.set(true);
+    }
 
-            this.cachedImage = new WritableImage(width, height);
+    /**
+     * Marks the pixels affected by a change of the obstacles in {@code region} for re-rendering. May be called from
+     * any thread.
+     */
+    @Override
+    public void obstaclesChanged(final WorldRegion region) {
+        this.dirtyRegion.accumulateAndGet(region, (dirty, r) -> null == dirty ? r : dirty.union(r));
+    }
 
-            final int[] buffer = new int[width * height];
-            int i = 0;
-            for (int y = 0; y < world.getHeight(); y++) {
-                for (int k = 0; k < discreteScaleY; k++) {
-                    renderScanlineIntoCachedImage(world, buffer, i, discreteScaleX, y);
-                    i += width;
-                }
+    /**
+     * Re-renders the layer if it is dirty or the canvas scale changed, or just the dirty region if there is one.
+     * Called by the {@code RenderPipeline} only.
+     *
+     * @return {@code true} if any part of the layer was re-rendered.
+     */
+    public boolean prepare(final org.evensen.ants.AntWorld world, final double canvasWidth, final double canvasHeight,
+                           final ScanlineBands bands) {
+        final int scaleX = (int) canvasWidth / world.getWidth() + 1;
+        final int scaleY = (int) canvasHeight / world.getHeight() + 1;
+        final WorldRegion region = this.dirtyRegion.getAndSet(null);
+        if (this.dirtyFlag.getAndSet(false) || scaleX != this.discreteScaleX || scaleY != this.discreteScaleY) {
+            this.discreteScaleX = scaleX;
+            this.discreteScaleY = scaleY;
+            this.width = world.getWidth() * scaleX;
+            this.height = world.getHeight() * scaleY;
+            if (null == this.pixels || this.pixels.length != this.width * this.height) {
+                this.buffer = new int[this.width * this.height];
+                this.pixels = new int[this.width * this.height];
             }
+            renderPixels(world, scaleX, scaleY, this.buffer, this.pixels, this.filter, bands);
+            markPending(0, 0, this.width, this.height);
+            return true;
+        }
+        if (null == region) {
+            return false;
+        }
 
-            final int[] src = buffer;
-            final int[] des = new int[src.length];
-
-            for(int j = 0; j < des.length; j++) {
-                if (src[j] != 0X00000000) {
-                    int avgR = 0;
-                    int avgG = 0;
-                    int avgB = 0;
-                    int acc1 = 0;
-                    int acc2 = 0;
-                    int acc3 = 0;
-                    int acc4 = 0;
-                    for (int offsY = -4; offsY < 5; offsY++) {
-                        final int k = j + width * offsY;
-                        if (j > -1 && j < src.length) {
-                            for (int offsX = -4; offsX < 5; offsX++) {
-                                final int l = k + offsX;
-                                if (l > -1 && l < src.length) {
-                                    final int c = src[l];
-                                    final int medianFilter = Math.abs(offsY) < 3 && Math.abs(offsX) < 3 ? 1 : 0;
-                                    switch (c) {
-                                        /* Needs Java 14+ to work:
-                                        case 0x00000000 -> acc1 += medianFilter;
-                                        case COLOR_PRIMARY -> acc2 += medianFilter;
-                                        case COLOR_HIGHLIGHT -> acc3 += medianFilter;
-                                        case COLOR_SPECULAR -> acc4 += medianFilter;
-                                         */
-                                        case 0x00000000:
-                                            acc1 += medianFilter;
-                                            break;
-                                        case COLOR_PRIMARY:
-                                            acc2 += medianFilter;
-                                            break;
-                                        case COLOR_HIGHLIGHT:
-                                            acc3 += medianFilter;
-                                            break;
-                                        case COLOR_SPECULAR:
-                                            acc4 += medianFilter;
-                                            break;
-                                    }
-                                    avgR += c >> 16 & 0xFF;
-                                    avgG += c >> 8 & 0xFF;
-                                    avgB += c & 0xFF;
-                                }
-                            }
-                        }
-                    }
-                    avgR /= 64;
-                    avgG /= 64;
-                    avgB /= 64;
-
-                    int c = 0x00000000;
-                    int k = 12;
-                    k -= acc1;
-                    if (k < 1) {
-                        c = 0x00000000;
-                    } else {
-                        k -= acc2;
-                        if (k < 1) {
-                            c = COLOR_PRIMARY;
-                        } else {
-                            k -= acc3;
-                            if (k < 1) {
-                                c = COLOR_HIGHLIGHT;
-                            } else {
-                                k -= acc4;
-                                if (k < 1) {
-                                    c = COLOR_SPECULAR;
-                                }
-                            }
-                        }
-                    }
-                    if (c != 0x00000000) {
-                        final int r1 = Math.min(255, (((c >> 16) & 0xFF) * COLOR_WEIGHT + avgR * BLUR_WEIGHT)
-                                / (COLOR_WEIGHT + BLUR_WEIGHT));
-                        final int g1 = Math.min(255, (((c >> 8) & 0xFF) * COLOR_WEIGHT + avgG * BLUR_WEIGHT)
-                                / (COLOR_WEIGHT + BLUR_WEIGHT));
-                        final int b1 = Math.min(255, (((c & 0xFF) * COLOR_WEIGHT + avgB * BLUR_WEIGHT)
-                                / (COLOR_WEIGHT + BLUR_WEIGHT)));
-                        des[j] = (c & 0xFF000000) | (r1 << 16) | (g1 << 8) | b1;
-                    }
+        //
+        // A cell is classified by looking at the cells up to HIGHLIGHT_WIDTH to its right and SPECULAR_WIDTH to its
+        // left in the rows below it, so a change reaches that far in the opposite directions, and the filter
+        // reaches further still.
+        //
+        final int fromX = Math.max(0, region.getMinX() - HIGHLIGHT_WIDTH);
+        final int toX = Math.min(world.getWidth(), region.getMaxX() + SPECULAR_WIDTH + 1);
+        final int fromY = Math.max(0, region.getMinY() - Math.max(HIGHLIGHT_HEIGHT, SPECULAR_HEIGHT));
+        final int toY = Math.min(world.getHeight(), region.getMaxY() + 1);
+        if (fromX >= toX || fromY >= toY) {
+            return false;
+        }
+        bands.render(toY - fromY, (from, to) -> {
+            for (int y = fromY + from; y < fromY + to; y++) {
+                for (int k = 0; k < scaleY; k++) {
+                    renderScanlineIntoCachedImage(world, this.buffer, (y * scaleY + k) * this.width,
+                            scaleX, y, fromX, toX);
                 }
             }
+        });
+        final int radius = this.filter.getRadius();
+        final int pixelFromX = Math.max(0, fromX * scaleX - radius);
+        final int pixelFromY = Math.max(0, fromY * scaleY - radius);
+        final int pixelToX = Math.min(this.width, toX * scaleX + radius);
+        final int pixelToY = Math.min(this.height, toY * scaleY + radius);
+        this.filter.filter(this.buffer, this.pixels, this.width, this.height,
+                pixelFromX, pixelFromY, pixelToX, pixelToY, bands);
+        markPending(pixelFromX, pixelFromY, pixelToX, pixelToY);
+        return true;
+    }
 
-            this.cachedImage.getPixelWriter().setPixels(
-                    0, 0, width, height, PixelFormat.getIntArgbInstance(), des, 0, width);
+    /**
+     * @return The pixels of the layer as of the last {@code prepare}, row by row.
+     */
+    int[] getPixels() {
+        return this.pixels;
+    }
 
-            this.dirtyFlag = false;
+    private void markPending(final int fromX, final int fromY, final int toX, final int toY) {
+        if (this.pending) {
+            this.pendingMinX = Math.min(this.pendingMinX, fromX);
+            this.pendingMinY = Math.min(this.pendingMinY, fromY);
+            this.pendingMaxX = Math.max(this.pendingMaxX, toX);
+            this.pendingMaxY = Math.max(this.pendingMaxY, toY);
+        } else {
+            this.pendingMinX = fromX;
+            this.pendingMinY = fromY;
+            this.pendingMaxX = toX;
+            this.pendingMaxY = toY;
+            this.pending = true;
         }
+    }
 
-        g.drawImage(this.cachedImage, 0.0, 0.0, world.getWidth(), world.getHeight());
+    /**
+     * Writes the pixels changed by {@code prepare} into the cached image. Called by the {@code RenderPipeline}
+     * only, on the JavaFX application thread.
+     */
+    public void upload() {
+        if (this.pending) {
+            if (null == this.cachedImage
+                    || this.width != (int) this.cachedImage.getWidth()
+                    || this.height != (int) this.cachedImage.getHeight()) {
+                this.cachedImage = new WritableImage(this.width, this.height);
+                markPending(0, 0, this.width, this.height);
+            }
+            this.cachedImage.getPixelWriter().setPixels(this.pendingMinX, this.pendingMinY,
+                    this.pendingMaxX - this.pendingMinX, this.pendingMaxY - this.pendingMinY,
+                    PixelFormat.getIntArgbInstance(), this.pixels,
+                    this.pendingMinY * this.width + this.pendingMinX, this.width);
+            SimulationMetrics.global().countImageUploads(1);
+            this.pending = false;
+        }
     }
 
-    private void renderScanlineIntoCachedImage(final org.evensen.ants.AntWorld world,
+    /**
+     * Draws the part of the layer within {@code visible}, in world coordinates.
+     */
+    public void render(final GraphicsContext g, final org.evensen.ants.AntWorld world, final WorldRegion visible) {
+        if (null != this.cachedImage) {
+            final double scaleX = this.cachedImage.getWidth() / world.getWidth();
+            final double scaleY = this.cachedImage.getHeight() / world.getHeight();
+            g.drawImage(this.cachedImage,
+                    visible.getMinX() * scaleX, visible.getMinY() * scaleY,
+                    visible.getWidth() * scaleX, visible.getHeight() * scaleY,
+                    visible.getMinX(), visible.getMinY(), visible.getWidth(), visible.getHeight());
+        }
+    }
+
+    /**
+     * Renders the layer into a new ARGB buffer of {@code world.getWidth() * discreteScaleX} by
+     * {@code world.getHeight() * discreteScaleY} pixels, row by row.
+     */
+    public static int[] renderPixels(final org.evensen.ants.AntWorld world, final int discreteScaleX, final int discreteScaleY) {
+        final int[] des = new int[world.getWidth() * discreteScaleX * world.getHeight() * discreteScaleY];
+        renderPixels(world, discreteScaleX, discreteScaleY, new int[des.length], des, newFilter(),
+                ScanlineBands.SEQUENTIAL);
+        return des;
+    }
+
+    private static void renderPixels(final org.evensen.ants.AntWorld world, final int discreteScaleX,
+                                     final int discreteScaleY, final int[] buffer, final int[] des,
+                                     final MajorityFilter filter, final ScanlineBands bands) {
+        final int width = world.getWidth() * discreteScaleX;
+        final int height = world.getHeight() * discreteScaleY;
+
+        bands.render(world.getHeight(), (fromY, toY) -> {
+            int i = fromY * discreteScaleY * width;
+            for (int y = fromY; y < toY; y++) {
+                for (int k = 0; k < discreteScaleY; k++) {
+                    renderScanlineIntoCachedImage(world, buffer, i, discreteScaleX, y, 0, world.getWidth());
+                    i += width;
+                }
+            }
+        });
+        filter.filter(buffer, des, width, height, bands);
+    }
+
+    /**
+     * Classifies the cells {@code [fromX, toX)} of world row {@code y} into one scanline of {@code buffer}, which
+     * starts at index {@code i}.
+     */
+    private static void renderScanlineIntoCachedImage(final org.evensen.ants.AntWorld world,
                                                final int[] buffer,
                                                final int i,
                                                final int scale,
-                                               final int y) {
-        int j = i;
-        for (int x = 0; x < world.getWidth(); x++) {
+                                               final int y,
+                                               final int fromX,
+                                               final int toX) {
+        int j = i + fromX * scale;
+        for (int x = fromX; x < toX; x++) {
+            final int color = classify(world, new org.evensen.ants.Position(x, y));
             for (int k = 0; k < scale; k++) {
-                final org.evensen.ants.Position p = new org.evensen.ants.Position(x, y);
-                if (world.isObstacle(p)) {
-                    for (int offsetX = 1; offsetX <= HIGHLIGHT_WIDTH; offsetX++) {
-                        for (int offsetY = 1; offsetY <= HIGHLIGHT_HEIGHT; offsetY++) {
-                            final org.evensen.ants.Position offsetP = p.offset(offsetX, offsetY);
-                            if (!world.isObstacle(offsetP) && offsetP.isInBounds(world.getWidth(), world.getHeight())) {
-                                buffer[j] = COLOR_HIGHLIGHT;
-                                break;
-                            } else {
-                                buffer[j] = COLOR_PRIMARY;
-                            }
-                        }
-                    }
-                    for (int offsetX = 1; offsetX <= SPECULAR_WIDTH; offsetX++) {
-                        for (int offsetY = 1; offsetY <= SPECULAR_HEIGHT; offsetY++) {
-                            final org.evensen.ants.Position offsetP = p.offset(-offsetX, offsetY);
-                            if (!world.isObstacle(offsetP) && offsetP.isInBounds(world.getWidth(), world.getHeight())) {
-                                buffer[j] = COLOR_SPECULAR;
-                                break;
-                            }
-                        }
-                    }
+                buffer[j++] = color;
+            }
+        }
+    }
+
+    private static int classify(final org.evensen.ants.AntWorld world, final org.evensen.ants.Position p) {
+        if (!world.isObstacle(p)) {
+            return 0x00000000;
+        }
+        int color = 0x00000000;
+        for (int offsetX = 1; offsetX <= HIGHLIGHT_WIDTH; offsetX++) {
+            for (int offsetY = 1; offsetY <= HIGHLIGHT_HEIGHT; offsetY++) {
+                final org.evensen.ants.Position offsetP = p.offset(offsetX, offsetY);
+                if (!world.isObstacle(offsetP) && offsetP.isInBounds(world.getWidth(), world.getHeight())) {
+                    color = COLOR_HIGHLIGHT;
+                    break;
+                } else {
+                    color = COLOR_PRIMARY;
+                }
+            }
+        }
+        for (int offsetX = 1; offsetX <= SPECULAR_WIDTH; offsetX++) {
+            for (int offsetY = 1; offsetY <= SPECULAR_HEIGHT; offsetY++) {
+                final org.evensen.ants.Position offsetP = p.offset(-offsetX, offsetY);
+                if (!world.isObstacle(offsetP) && offsetP.isInBounds(world.getWidth(), world.getHeight())) {
+                    color = COLOR_SPECULAR;
+                    break;
                 }
-                j++;
             }
         }
+        return color;
     }
 }
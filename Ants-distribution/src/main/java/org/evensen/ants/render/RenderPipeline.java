@@ -0,0 +1,185 @@
+package org.evensen.ants.render;
+
+import org.evensen.ants.AntWorld;
+import org.evensen.ants.SimulationFrame;
+import org.evensen.ants.WorldRegion;
+import org.evensen.ants.metrics.Phase;
+import org.evensen.ants.metrics.PhaseClock;
+import org.evensen.ants.metrics.SimulationMetrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares the pixels of the obstacle, pheromone, food and ant layers on a background thread, so that the JavaFX
+ * application thread only uploads finished pixels and draws.
+ *
+ * <p>
+ * At most one frame is prepared at a time, and a prepared frame is uploaded before the next one is started. When the
+ * view asks for a frame while the previous one is still being prepared, the request is dropped and counted as a
+ * skipped frame rather than queued; the view keeps drawing the layers it already has. Within a frame each layer is
+ * rendered by a pool of threads working on bands of scanlines, see {@code ScanlineBands}. The pheromone and ant layers
+ * are prepared only for the cells in view, at a level of detail that depends on how far the view is zoomed out.
+ * </p>
+ *
+ * <p>
+ * {@code submit}, {@code isIdle} and {@code upload} must only be called from the JavaFX application thread.
+ * </p>
+ */
+public final class RenderPipeline implements AutoCloseable {
+    private static final int IDLE = 0;
+    private static final int BUSY = 1;
+    private static final int READY = 2;
+    private static final int VIEW_MARGIN_DIVISOR = 8;
+    private static final int MIN_VIEW_MARGIN = 8;
+
+    private final AntWorld world;
+    private final ObstacleRenderer obstacleRenderer;
+    private final AntWorldRenderer antWorldRenderer;
+    private final FoodRenderer foodRenderer;
+    private final AntColonyRenderer antColonyRenderer;
+    private final ScanlineBands bands;
+    private final ExecutorService executor;
+    private final PhaseClock clock;
+    private final AtomicInteger state;
+    private long obstacleNanos;
+    private long pheromoneNanos;
+    private long foodNanos;
+    private long antNanos;
+
+    /**
+     * @param parallelism The number of threads rendering scanline bands.
+     */
+    public RenderPipeline(final AntWorld world, final ObstacleRenderer obstacleRenderer,
+                          final AntWorldRenderer antWorldRenderer, final FoodRenderer foodRenderer,
+                          final AntColonyRenderer antColonyRenderer, final int parallelism) {
+        this.world = world;
+        this.obstacleRenderer = obstacleRenderer;
+        this.antWorldRenderer = antWorldRenderer;
+        this.foodRenderer = foodRenderer;
+        this.antColonyRenderer = antColonyRenderer;
+        this.bands = ScanlineBands.parallel(parallelism);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "render");
+            t.setDaemon(true);
+            return t;
+        });
+        this.clock = new PhaseClock(SimulationMetrics.global());
+        this.state = new AtomicInteger(IDLE);
+    }
+
+    /**
+     * @return {@code true} if a new frame would be accepted by {@code submit}.
+     */
+    public boolean isIdle() {
+        return IDLE == this.state.get();
+    }
+
+    /**
+     * Starts preparing the layers for {@code frame} at the given canvas size, unless a frame is already being
+     * prepared or waiting to be uploaded. {@code frame} must stay unchanged until it has been uploaded.
+     *
+     * @param visible       The cells in view, see {@code Camera.getVisibleCells}, or {@code null} if none is.
+     * @param pixelsPerCell How many pixels a cell spans on screen, see {@code Camera.getPixelsPerCell}.
+     * @return {@code true} if the frame was accepted, {@code false} if it was skipped.
+     */
+    public boolean submit(final SimulationFrame frame, final double canvasWidth, final double canvasHeight,
+                          final WorldRegion visible, final double pixelsPerCell) {
+        if (!this.state.compareAndSet(IDLE, BUSY)) {
+            SimulationMetrics.global().countSkippedFrames(1);
+            return false;
+        }
+        this.executor.execute(() -> {
+            try {
+                prepare(frame, canvasWidth, canvasHeight, visible, pixelsPerCell);
+            } finally {
+                this.state.set(READY);
+            }
+        });
+        return true;
+    }
+
+    private void prepare(final SimulationFrame frame, final double canvasWidth, final double canvasHeight,
+                         final WorldRegion visible, final double pixelsPerCell) {
+        this.clock.start();
+        this.obstacleRenderer.prepare(this.world, canvasWidth, canvasHeight, this.bands);
+        this.obstacleNanos = this.clock.lap(Phase.RENDER_OBSTACLES);
+        final WorldRegion region = null == visible ? null : withMargin(visible);
+        final boolean inView = 0 < frame.getEpoch() && null != region;
+        if (inView) {
+            this.antWorldRenderer.prepare(frame, this.world, region, pixelsPerCell, this.bands);
+        }
+        this.pheromoneNanos = this.clock.lap(Phase.RENDER_PHEROMONES);
+        this.foodRenderer.prepare(this.world, canvasWidth, canvasHeight, this.bands);
+        this.foodNanos = this.clock.lap(Phase.RENDER_FOOD);
+
+        if (inView) {
+            this.antColonyRenderer.prepare(frame, region, pixelsPerCell, this.bands);
+        }
+        this.antNanos = this.clock.lap(Phase.RENDER_ANTS);
+    }
+
+    /**
+     * @return {@code visible} with a margin around it, so that the layers are drawn up to the edges of the view
+     * while it pans and the next frame is being prepared.
+     */
+    private WorldRegion withMargin(final WorldRegion visible) {
+        final int marginX = Math.max(MIN_VIEW_MARGIN, visible.getWidth() / VIEW_MARGIN_DIVISOR);
+        final int marginY = Math.max(MIN_VIEW_MARGIN, visible.getHeight() / VIEW_MARGIN_DIVISOR);
+        return new WorldRegion(Math.max(0, visible.getMinX() - marginX), Math.max(0, visible.getMinY() - marginY),
+                Math.min(this.world.getWidth() - 1, visible.getMaxX() + marginX),
+                Math.min(this.world.getHeight() - 1, visible.getMaxY() + marginY));
+    }
+
+    /**
+     * Uploads the layers of the last prepared frame, if it is done, and makes the pipeline idle again.
+     *
+     * @return {@code true} if a prepared frame was uploaded.
+     */
+    public boolean upload() {
+        if (READY != this.state.get()) {
+            return false;
+        }
+        this.obstacleRenderer.upload();
+        this.antWorldRenderer.upload();
+        this.foodRenderer.upload();
+        this.antColonyRenderer.upload();
+        this.state.set(IDLE);
+        return true;
+    }
+
+    /**
+     * @return Time spent preparing the obstacle layer of the last uploaded frame.
+     */
+    public long getObstacleNanos() {
+        return this.obstacleNanos;
+    }
+
+    /**
+     * @return Time spent preparing the pheromone layer of the last uploaded frame.
+     */
+    public long getPheromoneNanos() {
+        return this.pheromoneNanos;
+    }
+
+    /**
+     * @return Time spent preparing the food layer of the last uploaded frame.
+     */
+    public long getFoodNanos() {
+        return this.foodNanos;
+    }
+
+    /**
+     * @return Time spent preparing the ant layer of the last uploaded frame.
+     */
+    public long getAntNanos() {
+        return this.antNanos;
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+        this.bands.close();
+    }
+}
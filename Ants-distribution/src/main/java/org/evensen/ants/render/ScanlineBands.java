@@ -0,0 +1,98 @@
+package org.evensen.ants.render;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the scanlines of a pixel buffer into bands and renders the bands in parallel.
+ *
+ * <p>
+ * Bands never overlap, so a band may write its own rows without synchronization. Whatever the band reads must not
+ * be written by any other band of the same call.
+ * </p>
+ */
+public final class ScanlineBands implements AutoCloseable {
+    /**
+     * Renders every band on the calling thread, for benchmarks and tests.
+     */
+    public static final ScanlineBands SEQUENTIAL = new ScanlineBands(null);
+
+    private static final int BANDS_PER_THREAD = 4;
+    private static final int MIN_ROWS_PER_BAND = 8;
+
+    private final ForkJoinPool pool;
+
+    private ScanlineBands(final ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Renders the rows {@code [fromY, toY)} of a pixel buffer.
+     */
+    @FunctionalInterface
+    public interface Band {
+        void render(int fromY, int toY);
+    }
+
+    /**
+     * @param parallelism The number of threads rendering bands at the same time.
+     * @return Bands rendered by a pool of daemon threads named {@code render-band-<n>}.
+     */
+    public static ScanlineBands parallel(final int parallelism) {
+        return new ScanlineBands(new ForkJoinPool(parallelism, p -> {
+            final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("render-band-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false));
+    }
+
+    /**
+     * Renders the rows {@code [0, height)} with {@code band} and returns once all of them are done.
+     */
+    public void render(final int height, final Band band) {
+        if (null == this.pool || height <= MIN_ROWS_PER_BAND) {
+            band.render(0, height);
+            return;
+        }
+        final int rowsPerBand = Math.max(MIN_ROWS_PER_BAND,
+                -Math.floorDiv(-height, this.pool.getParallelism() * BANDS_PER_THREAD));
+        this.pool.invoke(new BandAction(band, 0, height, rowsPerBand));
+    }
+
+    @Override
+    public void close() {
+        if (null != this.pool) {
+            this.pool.shutdownNow();
+        }
+    }
+
+    // Never serialized; RecursiveAction is Serializable only by inheritance.
+    private static final class BandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient Band band;
+        private final transient int fromY;
+        private final transient int toY;
+        private final transient int rowsPerBand;
+
+        private BandAction(final Band band, final int fromY, final int toY, final int rowsPerBand) {
+            this.band = band;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.rowsPerBand = rowsPerBand;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.toY - this.fromY <= this.rowsPerBand) {
+                this.band.render(this.fromY, this.toY);
+            } else {
+                final int bands = (this.toY - this.fromY + this.rowsPerBand - 1) / this.rowsPerBand;
+                final int middle = this.fromY + bands / 2 * this.rowsPerBand;
+                invokeAll(new BandAction(this.band, this.fromY, middle, this.rowsPerBand),
+                        new BandAction(this.band, middle, this.toY, this.rowsPerBand));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.evensen.ants;
+
+import org.evensen.ants.metrics.AllocationBudget;
+import org.evensen.ants.metrics.AllocationTracker;
+import org.evensen.ants.render.AntColonyRenderer;
+import org.evensen.ants.render.AntWorldRenderer;
+import org.evensen.ants.render.FoodRenderer;
+import org.evensen.ants.render.ObstacleRenderer;
+import org.evensen.ants.render.ScanlineBands;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Fails when a hot path allocates more than its {@code AllocationBudget}. Each path is warmed up first so that class
+ * loading and one-off initialisation are not counted.
+ */
+class AllocationBudgetTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+    private static final int ANTS = 2000;
+    private static final int WARM_UP = 200;
+    private static final int WARM_UP_RUNS = 100;
+    private static final int RUNS = 20;
+    private static final int SCALE = 2;
+
+    private static AntWorld world;
+    private static AntColony colony;
+    private static SimulationFrame frame;
+
+    @BeforeAll
+    static void setUp() {
+        assumeTrue(AllocationTracker.isSupported(), "Thread allocation counting is not supported by this JVM");
+        world = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy());
+        colony = new AntColony(ANTS, 0.7f, world);
+        final Simulation simulation = new Simulation(world, colony);
+        for (int i = 0; i < WARM_UP; i++) {
+            simulation.step();
+        }
+        frame = new SimulationFrame();
+        frame.capture(simulation.getEpoch(), colony, world);
+    }
+
+    private static void assertWithin(final AllocationBudget budget, final long units, final Runnable work) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            work.run();
+        }
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            allocated += AllocationTracker.measure(work);
+        }
+        final long bytes = allocated;
+        final long total = units * RUNS;
+        assertTrue(budget.isWithin(bytes, total), () -> String.format(
+                "%s allocated %.1f bytes per unit, budget is %d", budget, bytes / (double) total,
+                budget.getBytesPerUnit()));
+    }
+
+    @Test
+    void antMove() {
+        final long before = colony.getMoveCount();
+        colony.updateAnts(world);
+        final long moved = colony.getMoveCount() - before;
+        assertWithin(AllocationBudget.ANT_MOVE, moved, () -> colony.updateAnts(world));
+    }
+
+    @Test
+    void dispersal() {
+        assertWithin(AllocationBudget.DISPERSAL, (long) WIDTH * HEIGHT, world::dispersePheromones);
+    }
+
+    @Test
+    void pheromonePixels() {
+        final AntWorldRenderer renderer = new AntWorldRenderer();
+        assertWithin(AllocationBudget.PHEROMONE_PIXELS, (long) WIDTH * HEIGHT,
+                () -> renderer.prepare(frame, world, WorldRegion.whole(WIDTH, HEIGHT), 1.0, ScanlineBands.SEQUENTIAL));
+    }
+
+    @Test
+    void foodPixels() {
+        assertWithin(AllocationBudget.FOOD_PIXELS, (long) WIDTH * HEIGHT * SCALE * SCALE,
+                () -> FoodRenderer.renderPixels(world, SCALE, SCALE));
+    }
+
+    @Test
+    void obstaclePixels() {
+        assertWithin(AllocationBudget.OBSTACLE_PIXELS, (long) WIDTH * HEIGHT * SCALE * SCALE,
+                () -> ObstacleRenderer.renderPixels(world, SCALE, SCALE));
+    }
+
+    @Test
+    void antPixels() {
+        final AntColonyRenderer renderer = new AntColonyRenderer();
+        final WorldRegion all = WorldRegion.whole(WIDTH, HEIGHT);
+        assertWithin(AllocationBudget.ANT_PIXELS, ANTS,
+                () -> renderer.prepare(frame, all, SCALE, ScanlineBands.SEQUENTIAL));
+        assertWithin(AllocationBudget.ANT_PIXELS, ANTS,
+                () -> renderer.prepare(frame, all, 0.5, ScanlineBands.SEQUENTIAL));
+    }
+}
@@ -0,0 +1,126 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Dead ants must leave the colony for the world's dead-ant layer, and spawned ants must reuse them and their ids
+ * without drawing from any substream of their earlier lives.
+ */
+class AntColonyTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+    private static final int ANTS = 1000;
+    private static final int KILLED = 300;
+    private static final int EPOCHS = 200;
+
+    private static MyAntWorld newWorld() {
+        return new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy());
+    }
+
+    private static float deadAnts(final AntWorld world) {
+        float total = 0.0f;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                total += world.getDeadAntCount(new Position(x, y));
+            }
+        }
+        return total;
+    }
+
+    private static List<Ant> kill(final AntColony colony) {
+        final List<Ant> killed = new ArrayList<>();
+        for (int i = 0; i < KILLED; i++) {
+            final Ant a = colony.getAnts().get(3 * i);
+            a.damage(10);
+            killed.add(a);
+        }
+        return killed;
+    }
+
+    @Test
+    void deadAntsLeaveTheColonyAndDecay() {
+        final MyAntWorld world = newWorld();
+        final AntColony colony = new AntColony(ANTS, 0.7f, world);
+        kill(colony);
+        colony.updateAnts(world);
+        assertEquals(ANTS - KILLED, colony.getAnts().size());
+        for (final Ant a : colony.getAnts()) {
+            assertTrue(!a.isDead());
+        }
+        assertEquals(KILLED, deadAnts(world), 1.0e-3f);
+
+        world.dispersePheromones();
+        assertEquals(KILLED * 0.99f, deadAnts(world), 1.0e-3f);
+    }
+
+    @Test
+    void spawnReusesDeadAnts() {
+        final MyAntWorld world = newWorld();
+        final AntColony colony = new AntColony(ANTS, 0.7f, world);
+        final Set<Ant> killed = Collections.newSetFromMap(new IdentityHashMap<>());
+        killed.addAll(kill(colony));
+        colony.updateAnts(world);
+        colony.spawn(KILLED, world);
+        assertEquals(ANTS, colony.getAnts().size());
+        int reused = 0;
+        for (final Ant a : colony.getAnts()) {
+            assertTrue(!a.isDead());
+            if (killed.contains(a)) {
+                reused++;
+            }
+        }
+        assertEquals(KILLED, reused);
+    }
+
+    @Test
+    void reusedAntsKeepTheirIdsAndDrawNewSubstreams() {
+        final MyAntWorld world = newWorld();
+        final AntColony colony = new AntColony(ANTS, 0.7f, world);
+        for (int i = 0; i < EPOCHS; i++) {
+            colony.updateAnts(world);
+        }
+        final Map<Ant, Long> moves = new IdentityHashMap<>();
+        final Set<Integer> ids = new HashSet<>();
+        for (final Ant a : kill(colony)) {
+            moves.put(a, ((PellAnt) a).getMoves());
+            ids.add(((PellAnt) a).getId());
+        }
+        colony.updateAnts(world);
+        colony.spawn(KILLED, world);
+
+        assertEquals(ANTS, colony.getNextId());
+        for (final Ant a : colony.getAnts().subList(ANTS - KILLED, ANTS)) {
+            final PellAnt ant = (PellAnt) a;
+            assertTrue(ids.remove(ant.getId()));
+            assertEquals(moves.get(a) + 1, ant.getMoves());
+        }
+        assertTrue(ids.isEmpty());
+    }
+
+    @Test
+    void seedsGiveDifferentColonies() {
+        final MyAntWorld world = newWorld();
+        final AntColony a = new AntColony(ANTS, 0.7f, world, 0);
+        final AntColony b = new AntColony(ANTS, 0.7f, world, 0x100000001L);
+        int same = 0;
+        for (int i = 0; i < ANTS; i++) {
+            final PellAnt x = (PellAnt) a.getAnts().get(i);
+            final PellAnt y = (PellAnt) b.getAnts().get(i);
+            if (x.getDirection() == y.getDirection()) {
+                same++;
+            }
+        }
+        assertTrue(same < ANTS / 100, same + " of " + ANTS + " ants start alike");
+    }
+}
@@ -0,0 +1,163 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A restored simulation must continue exactly as the saved one does.
+ */
+class CheckpointTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+    private static final int ANTS = 2000;
+    private static final int EPOCHS_BEFORE = 300;
+    private static final int EPOCHS_AFTER = 300;
+    // High enough to leave quiet tiles, whose stored levels are behind.
+    private static final float ACTIVE_LEVEL = 0.05f;
+
+    @TempDir
+    Path directory;
+
+    private static Simulation newSimulation() {
+        final AntWorld world = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy());
+        return new Simulation(world, new AntColony(ANTS, 0.7f, world));
+    }
+
+    private static void run(final Simulation simulation, final int epochs) {
+        for (int i = 0; i < epochs; i++) {
+            simulation.step();
+        }
+    }
+
+    @Test
+    void restoredRunIsIdentical() throws IOException {
+        assertRestoredRunIsIdentical(newSimulation());
+    }
+
+    @Test
+    void restoredLazyRunIsIdentical() throws IOException {
+        final MyAntWorld world = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy());
+        world.useLazyEvaporation(ACTIVE_LEVEL);
+        final Simulation original = new Simulation(world, new AntColony(ANTS, 0.7f, world));
+        final Simulation twin = newSimulation();
+        ((MyAntWorld) twin.getWorld()).useLazyEvaporation(ACTIVE_LEVEL);
+        // A simulation that is never saved, to show that saving does not change the run.
+        run(twin, EPOCHS_BEFORE + EPOCHS_AFTER);
+        final LazyEvaporation lazy = ((MyAntWorld) twin.getWorld()).getLazyEvaporation();
+        assertTrue(Arrays.stream(lazy.getStamps()).anyMatch(stamp -> stamp < lazy.getDispersals()));
+        assertRestoredRunIsIdentical(original);
+
+        final float[][] expected = new float[2][WIDTH * HEIGHT];
+        final float[][] actual = new float[2][WIDTH * HEIGHT];
+        twin.getWorld().copyPheromones(expected[0], expected[1]);
+        original.getWorld().copyPheromones(actual[0], actual[1]);
+        assertArrayEquals(expected[0], actual[0]);
+        assertArrayEquals(expected[1], actual[1]);
+    }
+
+    private void assertRestoredRunIsIdentical(final Simulation original) throws IOException {
+        run(original, EPOCHS_BEFORE);
+        final Path saved = this.directory.resolve("saved.ants");
+        Checkpoint.write(saved, original);
+
+        final Simulation restored = Checkpoint.read(saved, new MyDispersalPolicy());
+        assertEquals(original.getEpoch(), restored.getEpoch());
+        final Path resaved = this.directory.resolve("resaved.ants");
+        Checkpoint.write(resaved, restored);
+        assertEquals(-1, Files.mismatch(saved, resaved), "restored state differs");
+
+        run(original, EPOCHS_AFTER);
+        run(restored, EPOCHS_AFTER);
+        final Path a = this.directory.resolve("a.ants");
+        final Path b = this.directory.resolve("b.ants");
+        Checkpoint.write(a, original);
+        Checkpoint.write(b, restored);
+        assertEquals(-1, Files.mismatch(a, b), "resumed run diverged");
+        assertEquals(original.getWorld().getFoodCount(), restored.getWorld().getFoodCount());
+    }
+
+    @Test
+    void keepsPheromoneChannels() throws IOException {
+        final AntWorld world = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy(), new boolean[WIDTH * HEIGHT],
+                3);
+        final Simulation original = new Simulation(world, new AntColony(ANTS, 0.7f, world));
+        world.dropPheromone(2, new Position(5, 5), 1.0f);
+        run(original, EPOCHS_BEFORE);
+        final Path saved = this.directory.resolve("saved.ants");
+        Checkpoint.write(saved, original);
+
+        final Simulation restored = Checkpoint.read(saved, new MyDispersalPolicy());
+        assertEquals(3, restored.getWorld().getPheromoneChannels());
+        final Position p = new Position(6, 6);
+        assertEquals(world.getPheromoneLevel(2, p), restored.getWorld().getPheromoneLevel(2, p));
+        final Path resaved = this.directory.resolve("resaved.ants");
+        Checkpoint.write(resaved, restored);
+        assertEquals(-1, Files.mismatch(saved, resaved), "restored state differs");
+    }
+
+    @Test
+    void keepsFoodSeed() throws IOException {
+        final long foodSeed = 42;
+        final MyAntWorld world = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy(), new boolean[WIDTH * HEIGHT],
+                2, foodSeed);
+        final MyAntWorld sized = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy());
+        assertNotEquals(sized.getFoodSources().get(0).getPosition(), world.getFoodSources().get(0).getPosition(),
+                "food seed does not move food sources");
+        final Simulation original = new Simulation(world, new AntColony(ANTS, 0.7f, world));
+        final Path saved = this.directory.resolve("saved.ants");
+        Checkpoint.write(saved, original);
+
+        final Simulation restored = Checkpoint.read(saved, new MyDispersalPolicy());
+        assertEquals(foodSeed, ((MyAntWorld) restored.getWorld()).getFoodSeed());
+    }
+
+    @Test
+    void keepsDeadAnts() throws IOException {
+        final Simulation original = newSimulation();
+        run(original, EPOCHS_BEFORE);
+        for (int i = 0; i < ANTS / 2; i += 3) {
+            original.getColony().getAnts().get(i).damage(10);
+        }
+        run(original, 1);
+        final Path saved = this.directory.resolve("saved.ants");
+        Checkpoint.write(saved, original);
+
+        final Simulation restored = Checkpoint.read(saved, new MyDispersalPolicy());
+        final Position home = new Position(WIDTH - 5, HEIGHT / 2);
+        assertEquals(original.getWorld().getDeadAntCount(home), restored.getWorld().getDeadAntCount(home));
+        original.getColony().spawn(ANTS / 6, original.getWorld());
+        restored.getColony().spawn(ANTS / 6, restored.getWorld());
+        run(original, EPOCHS_AFTER);
+        run(restored, EPOCHS_AFTER);
+        final Path a = this.directory.resolve("a.ants");
+        final Path b = this.directory.resolve("b.ants");
+        Checkpoint.write(a, original);
+        Checkpoint.write(b, restored);
+        assertEquals(-1, Files.mismatch(a, b), "resumed run diverged");
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        final Path garbage = this.directory.resolve("garbage.ants");
+        Files.write(garbage, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        assertThrows(IOException.class, () -> Checkpoint.read(garbage, new MyDispersalPolicy()));
+
+        final Path saved = this.directory.resolve("saved.ants");
+        Checkpoint.write(saved, newSimulation());
+        final byte[] bytes = Files.readAllBytes(saved);
+        final Path truncated = this.directory.resolve("truncated.ants");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> Checkpoint.read(truncated, new MyDispersalPolicy()));
+    }
+}
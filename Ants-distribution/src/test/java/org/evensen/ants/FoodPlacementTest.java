@@ -0,0 +1,128 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The grid must place, stamp and find sources exactly as scanning the food matrix and every source does.
+ */
+class FoodPlacementTest {
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 500;
+    private static final int RADIUS = FoodSource.getRadius();
+    private static final int SOURCES = 300;
+    private static final int RESPAWNS = 200;
+    private static final long SEED = 42;
+
+    private static boolean[] obstacles() {
+        final boolean[] obstacles = new boolean[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            obstacles[y * WIDTH + WIDTH / 3] = true;
+            obstacles[y * WIDTH + y] = true;
+        }
+        return obstacles;
+    }
+
+    /**
+     * Places sources by scanning the food matrix and obstacles around each candidate, and stamps them cell by cell.
+     */
+    private static final class BruteForce {
+        private final boolean[][] foodMatrix = new boolean[WIDTH][HEIGHT];
+        private final boolean[] obstacles = obstacles();
+        private final Konadare192RNG random = new Konadare192RNG(SEED);
+
+        Position place() {
+            int x;
+            int y;
+            do {
+                x = this.random.nextInt(RADIUS, WIDTH - RADIUS);
+                y = this.random.nextInt(RADIUS, HEIGHT - RADIUS);
+            } while (isOccupied(x, y));
+            final Position p = new Position(x, y);
+            stamp(p, true);
+            return p;
+        }
+
+        private boolean isOccupied(final int x, final int y) {
+            for (int a = x - RADIUS; a <= x + RADIUS; a++) {
+                for (int b = y - RADIUS; b <= y + RADIUS; b++) {
+                    if (this.foodMatrix[a][b] || this.obstacles[b * WIDTH + a]) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void stamp(final Position p, final boolean food) {
+            for (int a = 0; a < WIDTH; a++) {
+                for (int b = 0; b < HEIGHT; b++) {
+                    if (new Position(a, b).isWithinRadius(p, RADIUS)) {
+                        this.foodMatrix[a][b] = food;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void placesAndStampsLikeTheBruteForce() {
+        final BruteForce expected = new BruteForce();
+        final boolean[][] foodMatrix = new boolean[WIDTH][HEIGHT];
+        final FoodPlacement placement = new FoodPlacement(WIDTH, HEIGHT, RADIUS, obstacles(),
+                new Konadare192RNG(SEED));
+        final List<FoodSource> sources = new ArrayList<>(placement.place(SOURCES));
+        for (final FoodSource source : sources) {
+            assertEquals(expected.place().toString(), source.getPosition().toString());
+            placement.stamp(foodMatrix, source.getPosition(), true);
+        }
+        for (int i = 0; i < RESPAWNS; i++) {
+            final FoodSource removed = sources.remove(i * 7 % sources.size());
+            placement.remove(removed);
+            placement.stamp(foodMatrix, removed.getPosition(), false);
+            expected.stamp(removed.getPosition(), false);
+
+            final FoodSource added = placement.place();
+            placement.stamp(foodMatrix, added.getPosition(), true);
+            sources.add(added);
+            assertEquals(expected.place().toString(), added.getPosition().toString());
+        }
+        for (int x = 0; x < WIDTH; x++) {
+            assertArrayEquals(expected.foodMatrix[x], foodMatrix[x]);
+        }
+    }
+
+    @Test
+    void findsTheSourceContainingAPosition() {
+        final FoodPlacement placement = new FoodPlacement(WIDTH, HEIGHT, RADIUS, obstacles(),
+                new Konadare192RNG(SEED));
+        final List<FoodSource> sources = placement.place(SOURCES);
+        final Konadare192RNG random = new Konadare192RNG(SEED + 1);
+        for (int i = 0; i < 100_000; i++) {
+            final Position p = new Position(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT);
+            FoodSource expected = null;
+            for (final FoodSource source : sources) {
+                if (p.isWithinRadius(source.getPosition(), RADIUS)) {
+                    expected = source;
+                }
+            }
+            assertSame(expected, placement.find(p));
+        }
+    }
+
+    @Test
+    void rejectsOverlappingSources() {
+        final FoodPlacement placement = new FoodPlacement(WIDTH, HEIGHT, RADIUS, new boolean[WIDTH * HEIGHT],
+                new Konadare192RNG(SEED));
+        placement.add(new FoodSource(new Position(100, 100)));
+        assertThrows(IllegalArgumentException.class, () -> placement.add(new FoodSource(new Position(101, 100))));
+        assertThrows(IllegalArgumentException.class, () -> placement.add(new FoodSource(new Position(-1, 100))));
+    }
+}
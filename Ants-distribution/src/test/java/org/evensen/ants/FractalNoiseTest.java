@@ -0,0 +1,50 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Batch evaluation must give the noise of single samples, which must stay within [0, 1].
+ */
+class FractalNoiseTest {
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 40;
+    private static final double X0 = -3.7;
+    private static final double Y0 = 11.2;
+    private static final double STEP = 0.013;
+    private static final double PERSISTENCE = 0.6;
+    private static final int FIRST_OCTAVE = 1;
+    private static final int LAST_OCTAVE = 6;
+    private static final long SEED = 7;
+
+    @Test
+    void regionMatchesSingleSamples() {
+        final float[] region = new float[WIDTH * HEIGHT];
+        FractalNoise.fillRegion(region, WIDTH, HEIGHT, X0, Y0, STEP, PERSISTENCE, FIRST_OCTAVE, LAST_OCTAVE, SEED);
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                final double noise = FractalNoise.getNoise(X0 + i * STEP, Y0 + j * STEP, PERSISTENCE, FIRST_OCTAVE,
+                        LAST_OCTAVE, SEED);
+                assertTrue(0.0 <= noise && 1.0 >= noise, () -> "noise " + noise);
+                assertEquals(noise, region[j * WIDTH + i], 1.0e-6);
+            }
+        }
+    }
+
+    @Test
+    void rowOnlyWritesItsRange() {
+        final float[] row = new float[WIDTH];
+        FractalNoise.fillRow(row, 10, WIDTH - 10, X0, STEP, Y0, PERSISTENCE, FIRST_OCTAVE, LAST_OCTAVE, SEED);
+        assertEquals(0.0f, row[9]);
+        assertEquals(0.0f, row[WIDTH - 10]);
+        assertEquals(FractalNoise.getNoise(X0, Y0, PERSISTENCE, FIRST_OCTAVE, LAST_OCTAVE, SEED), row[10], 1.0e-6);
+    }
+
+    @Test
+    void seedsGiveDifferentNoise() {
+        assertTrue(FractalNoise.getNoise(0.37, 0.71, PERSISTENCE, FIRST_OCTAVE, LAST_OCTAVE, SEED)
+                != FractalNoise.getNoise(0.37, 0.71, PERSISTENCE, FIRST_OCTAVE, LAST_OCTAVE, SEED + 1));
+    }
+}
@@ -0,0 +1,101 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A recording must give back every recorded epoch, up to quantization, whichever order it is read in, while ants die
+ * and the colony reorders them.
+ */
+class FrameRecorderTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+    private static final int ANTS = 2000;
+    private static final int INTERVAL = 5;
+    private static final int KILL_INTERVAL = 3;
+    private static final int RECORDS = 3 * FrameCodec.KEYFRAME_INTERVAL + 7;
+    private static final float PHEROMONE_TOLERANCE = 0.5f / FrameCodec.PHEROMONE_LEVELS + 1.0e-6f;
+    private static final float POSITION_TOLERANCE = 0.5f / FrameCodec.POSITION_SCALE + 1.0e-4f;
+    private static final float DIRECTION_TOLERANCE = (float) (Math.PI / FrameCodec.DIRECTION_LEVELS) + 1.0e-4f;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void seeksToEveryRecordedEpoch() throws IOException {
+        final AntWorld world = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy());
+        final AntColony colony = new AntColony(ANTS, 0.7f, world);
+        final Simulation simulation = new Simulation(world, colony);
+        final List<SimulationFrame> expected = new ArrayList<>();
+        try (final FrameRecorder recorder = new FrameRecorder(this.directory, INTERVAL)) {
+            while (expected.size() < RECORDS) {
+                if (0 == simulation.getEpoch() % KILL_INTERVAL) {
+                    colony.getAnts().get((int) (simulation.getEpoch() % colony.getAnts().size())).damage(10);
+                }
+                simulation.step();
+                final long dropped = recorder.getDroppedFrames();
+                recorder.record(simulation.getEpoch(), colony, world);
+                if (0 == simulation.getEpoch() % INTERVAL && dropped == recorder.getDroppedFrames()) {
+                    final SimulationFrame frame = new SimulationFrame();
+                    frame.capture(simulation.getEpoch(), colony, world);
+                    expected.add(frame);
+                }
+            }
+        }
+
+        final FrameLog log = new FrameLog(this.directory);
+        assertEquals(RECORDS, log.getRecordCount());
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals(0 == i % FrameCodec.KEYFRAME_INTERVAL, log.isKeyframe(i), "keyframe at record " + i);
+        }
+        assertNull(log.seek(expected.get(0).getEpoch() - 1));
+        for (final SimulationFrame frame : expected) {
+            assertSame(frame, log.seek(frame.getEpoch()));
+        }
+        for (int i = expected.size() - 1; 0 <= i; i -= 3) {
+            assertSame(expected.get(i), log.seek(expected.get(i).getEpoch()));
+        }
+    }
+
+    @Test
+    void refusesToOverwriteARecording() throws IOException {
+        new FrameRecorder(this.directory, INTERVAL).close();
+        assertThrows(IOException.class, () -> new FrameRecorder(this.directory, INTERVAL));
+    }
+
+    /**
+     * Recorded ants come back in order of their ids, so they are matched by id.
+     */
+    private static void assertSame(final SimulationFrame expected, final SimulationFrame actual) {
+        assertEquals(expected.getEpoch(), actual.getEpoch());
+        assertEquals(expected.getAntCount(), actual.getAntCount());
+        final Map<Integer, Integer> recorded = new HashMap<>();
+        for (int i = 0; i < actual.getAntCount(); i++) {
+            recorded.put(actual.getAntId(i), i);
+        }
+        for (int i = 0; i < expected.getWidth() * expected.getHeight(); i++) {
+            assertEquals(expected.getFoodPheromone(i), actual.getFoodPheromone(i), PHEROMONE_TOLERANCE);
+            assertEquals(expected.getForagingPheromone(i), actual.getForagingPheromone(i), PHEROMONE_TOLERANCE);
+        }
+        for (int i = 0; i < expected.getAntCount(); i++) {
+            final int j = recorded.get(expected.getAntId(i));
+            assertEquals(expected.getAntX(i), actual.getAntX(j), POSITION_TOLERANCE);
+            assertEquals(expected.getAntY(i), actual.getAntY(j), POSITION_TOLERANCE);
+            final double turn = Math.IEEEremainder(expected.getAntDirection(i) - actual.getAntDirection(j),
+                    2.0 * Math.PI);
+            assertEquals(0.0, turn, DIRECTION_TOLERANCE);
+            assertEquals(expected.getAntFlags(i), actual.getAntFlags(j));
+        }
+    }
+}
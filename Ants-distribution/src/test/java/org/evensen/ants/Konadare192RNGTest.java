@@ -0,0 +1,226 @@
+package org.evensen.ants;
+
+import org.apache.commons.math3.distribution.ExponentialDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.apache.commons.math3.stat.inference.KolmogorovSmirnovTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bulk draws must match single draws, jumps and substreams must start their counters whole windows apart, and the
+ * Gaussian and exponential samplers must follow their distributions. The statistical tests use fixed seeds, so they
+ * are deterministic; their thresholds would fail a correct sampler about once in a thousand seeds.
+ */
+class Konadare192RNGTest {
+    private static final long SEED = 42;
+    private static final int N = 1000;
+    private static final int FROM = 3;
+    private static final int TO = N - 5;
+    private static final int SAMPLES = 1_000_000;
+    private static final double P_VALUE = 0.001;
+    // Beyond the base layer of the normal ziggurat, so only reached through its tail.
+    private static final double NORMAL_TAIL = 3.5;
+    // Beyond the base layer of the exponential ziggurat.
+    private static final double EXPONENTIAL_TAIL = 8.0;
+
+    @Test
+    void bulkLongsMatchSingleDraws() {
+        final Konadare192RNG single = new Konadare192RNG(SEED);
+        final Konadare192RNG bulk = new Konadare192RNG(SEED);
+        final long[] expected = new long[N];
+        final long[] actual = new long[N];
+        for (int i = FROM; i < TO; i++) {
+            expected[i] = single.nextLong();
+        }
+        bulk.nextLongs(actual, FROM, TO);
+        assertArrayEquals(expected, actual);
+        assertEquals(single.nextLong(), bulk.nextLong());
+    }
+
+    @Test
+    void bulkFloatsMatchSingleDraws() {
+        final Konadare192RNG single = new Konadare192RNG(SEED);
+        final Konadare192RNG bulk = new Konadare192RNG(SEED);
+        final float[] expected = new float[N];
+        final float[] actual = new float[N];
+        for (int i = FROM; i < TO; i++) {
+            expected[i] = single.nextFloat();
+        }
+        bulk.nextFloats(actual, FROM, TO);
+        assertArrayEquals(expected, actual);
+        assertEquals(single.nextLong(), bulk.nextLong());
+    }
+
+    @Test
+    void bulkDoublesMatchSingleDraws() {
+        final Konadare192RNG single = new Konadare192RNG(SEED);
+        final Konadare192RNG bulk = new Konadare192RNG(SEED);
+        final double[] expected = new double[N];
+        final double[] actual = new double[N];
+        for (int i = FROM; i < TO; i++) {
+            expected[i] = single.nextDouble();
+        }
+        bulk.nextDoubles(actual, FROM, TO);
+        assertArrayEquals(expected, actual);
+        assertEquals(single.nextLong(), bulk.nextLong());
+    }
+
+    @Test
+    void bulkGaussiansMatchSingleDraws() {
+        final Konadare192RNG single = new Konadare192RNG(SEED);
+        final Konadare192RNG bulk = new Konadare192RNG(SEED);
+        final double[] expected = new double[N];
+        final double[] actual = new double[N];
+        for (int i = FROM; i < TO; i++) {
+            expected[i] = single.nextGaussian();
+        }
+        bulk.nextGaussians(actual, FROM, TO);
+        assertArrayEquals(expected, actual);
+        assertEquals(single.nextLong(), bulk.nextLong());
+    }
+
+    @Test
+    void singleDrawsFollowTheIntegerStream() {
+        final Konadare192RNG words = new Konadare192RNG(SEED);
+        final Konadare192RNG rng = new Konadare192RNG(SEED);
+        for (int i = 0; i < N; i++) {
+            assertEquals((int) (words.nextLong() >>> 32), rng.nextInt());
+            assertEquals((words.nextLong() >>> 40) * 0x1.0p-24f, rng.nextFloat());
+            assertEquals((words.nextLong() >>> 11) * 0x1.0p-53, rng.nextDouble());
+        }
+    }
+
+    @Test
+    void bulkRangesAreChecked() {
+        final Konadare192RNG rng = new Konadare192RNG(SEED);
+        assertThrows(IndexOutOfBoundsException.class, () -> rng.nextLongs(new long[4], 2, 5));
+        assertThrows(IndexOutOfBoundsException.class, () -> rng.nextGaussians(new double[4], 3, 2));
+    }
+
+    @Test
+    void gaussiansAreStandardNormal() {
+        final Konadare192RNG rng = new Konadare192RNG(SEED);
+        final double[] samples = new double[SAMPLES];
+        rng.nextGaussians(samples, 0, SAMPLES);
+        final NormalDistribution normal = new NormalDistribution(0.0, 1.0);
+        final double p = new KolmogorovSmirnovTest().kolmogorovSmirnovTest(normal, samples);
+        assertTrue(P_VALUE < p, () -> "Kolmogorov-Smirnov p-value " + p);
+
+        final SummaryStatistics stats = new SummaryStatistics();
+        int tail = 0;
+        for (final double x : samples) {
+            stats.addValue(x);
+            tail += Math.abs(x) > NORMAL_TAIL ? 1 : 0;
+        }
+        assertEquals(0.0, stats.getMean(), 4.0 / Math.sqrt(SAMPLES));
+        assertEquals(1.0, stats.getVariance(), 6.0 * Math.sqrt(2.0 / SAMPLES));
+        assertTail(tail, 2.0 * normal.cumulativeProbability(-NORMAL_TAIL));
+    }
+
+    @Test
+    void exponentialsHaveMeanOne() {
+        final Konadare192RNG rng = new Konadare192RNG(SEED);
+        final double[] samples = new double[SAMPLES];
+        int tail = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = rng.nextExponential();
+            tail += samples[i] > EXPONENTIAL_TAIL ? 1 : 0;
+        }
+        final ExponentialDistribution exponential = new ExponentialDistribution(1.0);
+        final double p = new KolmogorovSmirnovTest().kolmogorovSmirnovTest(exponential, samples);
+        assertTrue(P_VALUE < p, () -> "Kolmogorov-Smirnov p-value " + p);
+        assertTail(tail, 1.0 - exponential.cumulativeProbability(EXPONENTIAL_TAIL));
+    }
+
+    @Test
+    void jumpContinuesFromTheCurrentStateAndMovesTheCounter() {
+        final Konadare192RNG twin = new Konadare192RNG(SEED);
+        final Konadare192RNG rng = new Konadare192RNG(SEED);
+        final long[] before = rng.getState();
+        final Konadare192RNG copy = rng.jump(20);
+        for (int i = 0; i < N; i++) {
+            assertEquals(twin.nextLong(), copy.nextLong());
+        }
+        // 2^20 draws of the copy end where the jumped generator's counter starts.
+        final Konadare192RNG stepper = Konadare192RNG.fromState(before);
+        for (int i = 0; i < 1 << 20; i++) {
+            stepper.nextLong();
+        }
+        assertEquals(stepper.getState()[0], rng.getState()[0]);
+        assertNotEquals(stepper.getState()[1], rng.getState()[1]);
+    }
+
+    @Test
+    void substreamsAreWholeWindowsApart() {
+        final int draws = Konadare192RNG.SUBSTREAM_DRAW_BITS;
+        final int epochs = Konadare192RNG.SUBSTREAM_EPOCH_BITS;
+        final int ants = Konadare192RNG.SUBSTREAM_ANT_BITS;
+        assertCounterDistance(Konadare192RNG.substream(SEED, 3, 7, 4), draws, Konadare192RNG.substream(SEED, 3, 7, 5));
+        assertCounterDistance(Konadare192RNG.substream(SEED, 3, 7, 0), draws + epochs,
+                Konadare192RNG.substream(SEED, 3, 8, 0));
+        assertCounterDistance(Konadare192RNG.substream(SEED, 3, 0, 0), draws + epochs + ants,
+                Konadare192RNG.substream(SEED, 4, 0, 0));
+    }
+
+    private static void assertCounterDistance(final Konadare192RNG from, final int log2Steps,
+                                              final Konadare192RNG to) {
+        from.jump(log2Steps);
+        assertEquals(to.getState()[0], from.getState()[0]);
+    }
+
+    @Test
+    void reseedMatchesSubstream() {
+        final Konadare192RNG rng = new Konadare192RNG(SEED);
+        rng.nextLong();
+        rng.reseed(SEED, 1, 2, 3);
+        final Konadare192RNG substream = Konadare192RNG.substream(SEED, 1, 2, 3);
+        for (int i = 0; i < N; i++) {
+            assertEquals(substream.nextLong(), rng.nextLong());
+        }
+        assertThrows(IllegalArgumentException.class, () -> rng.reseed(SEED, 64, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> rng.reseed(SEED, 0, 1 << 22, 0));
+        assertThrows(IllegalArgumentException.class, () -> rng.reseed(SEED, 0, 0, -1));
+    }
+
+    @Test
+    void epochsPastTheirBitsAreRekeyed() {
+        final long era = 1L << Konadare192RNG.SUBSTREAM_EPOCH_BITS;
+        for (final long epoch : new long[]{0, 1, era - 1}) {
+            final Konadare192RNG first = Konadare192RNG.substream(SEED, 1, 2, epoch);
+            final Konadare192RNG wrapped = Konadare192RNG.substream(SEED, 1, 2, epoch + era);
+            assertNotEquals(first.getState()[0], wrapped.getState()[0]);
+            assertNotEquals(first.nextLong(), wrapped.nextLong());
+        }
+    }
+
+    @Test
+    void splitsAreDistinct() {
+        final List<RandomGenerator.SplittableGenerator> splits = new Konadare192RNG(SEED).splits(100).toList();
+        assertEquals(100, splits.size());
+        final Set<Long> first = new HashSet<>();
+        for (final RandomGenerator.SplittableGenerator split : splits) {
+            first.add(split.nextLong());
+        }
+        assertEquals(100, first.size());
+    }
+
+    /**
+     * Checks that {@code count} of {@code SAMPLES} draws landing in a tail of probability {@code p} is within four
+     * standard deviations of the binomial count.
+     */
+    private static void assertTail(final int count, final double p) {
+        final double expected = SAMPLES * p;
+        assertEquals(expected, count, 4.0 * Math.sqrt(expected * (1.0 - p)), "draws in the tail");
+    }
+}
@@ -0,0 +1,116 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lazy evaporation must give the levels of eager dispersal where it promises to.
+ */
+class LazyEvaporationTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+    private static final int ANTS = 500;
+    private static final int EPOCHS = 400;
+    private static final int DISPERSALS = 300;
+    private static final float EVAPORATION = 0.95f;
+
+    /**
+     * Only evaporates, without spreading.
+     */
+    private static final class EvaporatingPolicy implements DispersalPolicy {
+        @Override
+        public float[] getDispersedValue(final AntWorld w, final Position p) {
+            return new float[]{w.getFoodStrength(p) * EVAPORATION, w.getForagingStrength(p) * EVAPORATION};
+        }
+
+        @Override
+        public float getEvaporation() {
+            return EVAPORATION;
+        }
+    }
+
+    private static float[][] levels(final AntWorld world) {
+        final float[][] levels = new float[2][WIDTH * HEIGHT];
+        world.copyPheromones(levels[0], levels[1]);
+        return levels;
+    }
+
+    @Test
+    void zeroActiveLevelIsEager() {
+        final AntWorld eagerWorld = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy());
+        final MyAntWorld lazyWorld = new MyAntWorld(WIDTH, HEIGHT, 4, new MyDispersalPolicy());
+        lazyWorld.useLazyEvaporation(0.0f);
+        final Simulation eager = new Simulation(eagerWorld, new AntColony(ANTS, 0.7f, eagerWorld));
+        final Simulation lazy = new Simulation(lazyWorld, new AntColony(ANTS, 0.7f, lazyWorld));
+        for (int i = 0; i < EPOCHS; i++) {
+            eager.step();
+            lazy.step();
+        }
+        final float[][] expected = levels(eagerWorld);
+        final float[][] actual = levels(lazyWorld);
+        assertArrayEquals(expected[0], actual[0]);
+        assertArrayEquals(expected[1], actual[1]);
+        assertEquals(eagerWorld.getFoodCount(), lazyWorld.getFoodCount());
+    }
+
+    /**
+     * Eager evaporation without spreading is simple enough to work out by hand rather than by a world. Levels
+     * evaporated lazily may differ from it by the rounding bound of {@code LazyEvaporation}, an ulp per dispersal.
+     */
+    @Test
+    void quietTilesEvaporateAsEagerOnes() {
+        final MyAntWorld lazy = new MyAntWorld(WIDTH, HEIGHT, 0, new EvaporatingPolicy());
+        lazy.useLazyEvaporation(0.5f);
+        final float[][] expected = new float[2][WIDTH * HEIGHT];
+        for (int d = 0; d < DISPERSALS; d++) {
+            if (0 == d % 50) {
+                final int x = 3 + d % 190;
+                final int y = 7 + d % 90;
+                lazy.dropFoodPheromone(new Position(x, y), 1.0f);
+                lazy.dropForagingPheromone(new Position(x + 1, y), 0.5f);
+                expected[0][y * WIDTH + x] = Math.min(1, expected[0][y * WIDTH + x] + 1.0f);
+                expected[1][y * WIDTH + x + 1] = Math.min(1, expected[1][y * WIDTH + x + 1] + 0.5f);
+            }
+            lazy.dispersePheromones();
+            for (final float[] layer : expected) {
+                for (int i = 0; i < layer.length; i++) {
+                    layer[i] *= EVAPORATION;
+                }
+            }
+        }
+        final float[][] actual = levels(lazy);
+        for (int layer = 0; layer < 2; layer++) {
+            for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                assertEquals(expected[layer][i], actual[layer][i], (DISPERSALS + 2) * Math.ulp(expected[layer][i]));
+            }
+        }
+        assertTrue(0.0f < lazy.getFoodStrength(new Position(3, 7)));
+    }
+
+    @Test
+    void obstaclesAreOnlyEditedByTheDispersingThread() throws InterruptedException {
+        final MyAntWorld world = new MyAntWorld(WIDTH, HEIGHT, 0, new MyDispersalPolicy());
+        world.useLazyEvaporation(0.5f);
+        world.dispersePheromones();
+        final Throwable[] thrown = new Throwable[1];
+        final Thread view = new Thread(() -> {
+            try {
+                world.setObstacle(new Position(10, 10), true);
+            } catch (final RuntimeException e) {
+                thrown[0] = e;
+            }
+        });
+        view.start();
+        view.join();
+        assertInstanceOf(IllegalStateException.class, thrown[0]);
+        assertFalse(world.isObstacle(new Position(10, 10)));
+
+        world.setObstacle(new Position(10, 10), true);
+        assertTrue(world.isObstacle(new Position(10, 10)));
+    }
+}
@@ -0,0 +1,105 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Row dispersal of interleaved channels must give the levels of cell by cell dispersal, every channel must
+ * disperse alike, and only pheromones dropped into the world count as drops.
+ */
+class PheromoneChannelsTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+    private static final int ANTS = 500;
+    private static final int EPOCHS = 300;
+    private static final int DISPERSALS = 50;
+
+    /**
+     * Only disperses through {@code getDispersedValue}, so that worlds use the default {@code disperseRow}.
+     */
+    private static final class CellPolicy implements DispersalPolicy {
+        private final DispersalPolicy policy = new MyDispersalPolicy();
+
+        @Override
+        public float[] getDispersedValue(final AntWorld w, final Position p) {
+            return this.policy.getDispersedValue(w, p);
+        }
+    }
+
+    private static float[][] levels(final AntWorld world) {
+        final float[][] levels = new float[2][WIDTH * HEIGHT];
+        world.copyPheromones(levels[0], levels[1]);
+        return levels;
+    }
+
+    private static MyAntWorld newWorld(final DispersalPolicy policy, final int channels) {
+        final boolean[] obstacles = new boolean[WIDTH * HEIGHT];
+        for (int y = 10; y < 60; y++) {
+            obstacles[y * WIDTH + 50] = true;
+            obstacles[y * WIDTH + 51] = true;
+        }
+        return new MyAntWorld(WIDTH, HEIGHT, 4, policy, obstacles, channels);
+    }
+
+    @Test
+    void rowDispersalMatchesCellDispersal() {
+        final AntWorld rowWorld = newWorld(new MyDispersalPolicy(), 2);
+        final AntWorld cellWorld = newWorld(new CellPolicy(), 2);
+        final Simulation rows = new Simulation(rowWorld, new AntColony(ANTS, 0.7f, rowWorld));
+        final Simulation cells = new Simulation(cellWorld, new AntColony(ANTS, 0.7f, cellWorld));
+        for (int i = 0; i < EPOCHS; i++) {
+            rows.step();
+            cells.step();
+        }
+        final float[][] expected = levels(cellWorld);
+        final float[][] actual = levels(rowWorld);
+        assertArrayEquals(expected[0], actual[0]);
+        assertArrayEquals(expected[1], actual[1]);
+        assertEquals(cellWorld.getFoodCount(), rowWorld.getFoodCount());
+    }
+
+    @Test
+    void extraChannelsDisperseLikeTheFirst() {
+        final MyAntWorld world = new MyAntWorld(WIDTH, HEIGHT, 0, new MyDispersalPolicy(),
+                new boolean[WIDTH * HEIGHT], 4);
+        assertEquals(4, world.getPheromoneChannels());
+        for (int d = 0; d < DISPERSALS; d++) {
+            final Position p = new Position(d % WIDTH, 3 * d % HEIGHT);
+            world.dropFoodPheromone(p, 0.5f);
+            world.dropPheromone(3, p, 0.5f);
+            world.dispersePheromones();
+        }
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final Position p = new Position(x, y);
+                assertEquals(world.getFoodStrength(p), world.getPheromoneLevel(3, p));
+                assertEquals(0.0f, world.getPheromoneLevel(2, p));
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> world.getPheromoneLevel(4, new Position(0, 0)));
+    }
+
+    @Test
+    void cellPoliciesOnlyDisperseTwoChannels() {
+        assertThrows(IllegalArgumentException.class, () -> newWorld(new CellPolicy(), 3));
+        assertThrows(IllegalArgumentException.class, () -> newWorld(new MyDispersalPolicy(), 1));
+    }
+
+    @Test
+    void dispersingIsNotCountedAsDrops() {
+        final MyAntWorld eager = newWorld(new MyDispersalPolicy(), 3);
+        final MyAntWorld lazy = newWorld(new MyDispersalPolicy(), 3);
+        lazy.useLazyEvaporation(1.0e-4f);
+        for (final MyAntWorld world : new MyAntWorld[]{eager, lazy}) {
+            for (int i = 0; i < DISPERSALS; i++) {
+                world.dispersePheromones();
+            }
+            assertEquals(0, world.getPheromoneDropCount());
+            world.dropPheromone(2, new Position(5, 5), 1.0f);
+            assertEquals(1, world.getPheromoneDropCount());
+        }
+    }
+}
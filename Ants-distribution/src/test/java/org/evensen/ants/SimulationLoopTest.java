@@ -0,0 +1,53 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Edits submitted from other threads must run on the loop thread, between epochs and in order.
+ */
+class SimulationLoopTest {
+    private static final int EDITS = 1000;
+
+    @Test
+    void runsEditsOnTheLoopThreadBetweenEpochs() throws InterruptedException {
+        final List<Integer> applied = new ArrayList<>();
+        final Thread[] threads = new Thread[2];
+        final Thread test = Thread.currentThread();
+        final boolean[] inEpoch = new boolean[1];
+        final boolean[] overlapped = new boolean[1];
+        final SimulationLoop loop = new SimulationLoop(() -> {
+            threads[0] = Thread.currentThread();
+            inEpoch[0] = true;
+            Thread.onSpinWait();
+            inEpoch[0] = false;
+        }, 1_000_000L, 1, SimulationLoop.Mode.MAX_SPEED);
+        loop.start();
+        for (int i = 0; i < EDITS; i++) {
+            final int edit = i;
+            loop.submit(() -> {
+                threads[1] = Thread.currentThread();
+                overlapped[0] |= inEpoch[0];
+                applied.add(edit);
+            });
+        }
+        loop.stop();
+
+        assertEquals(EDITS, applied.size());
+        for (int i = 0; i < EDITS; i++) {
+            assertEquals(i, applied.get(i));
+        }
+        assertNotSame(test, threads[1]);
+        if (null != threads[0]) {
+            assertSame(threads[0], threads[1]);
+        }
+        assertFalse(overlapped[0]);
+    }
+}
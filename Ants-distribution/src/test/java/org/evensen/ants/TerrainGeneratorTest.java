@@ -0,0 +1,88 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cached terrain must be the terrain that would have been generated, whatever the world size and however alike the
+ * parameters of other cached terrains are.
+ */
+class TerrainGeneratorTest {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 300;
+    private static final long SEED = 7;
+
+    @TempDir
+    Path directory;
+
+    private TerrainGenerator newGenerator(final Path cache) {
+        return new TerrainGenerator(SEED, 100.0, 4, 0.01, cache);
+    }
+
+    @Test
+    void cachedTerrainIsGeneratedTerrain() throws IOException {
+        final boolean[] generated = newGenerator(null).generate(WIDTH, HEIGHT);
+        int count = 0;
+        for (final boolean obstacle : generated) {
+            count += obstacle ? 1 : 0;
+        }
+        final int obstacles = count;
+        assertTrue(0 < obstacles && obstacles < generated.length / 2, () -> obstacles + " obstacles");
+
+        final TerrainGenerator first = newGenerator(this.directory);
+        assertArrayEquals(generated, first.generate(WIDTH, HEIGHT));
+        assertEquals(0, first.getTilesLoaded());
+
+        final TerrainGenerator second = newGenerator(this.directory);
+        assertArrayEquals(generated, second.generate(WIDTH, HEIGHT));
+        assertEquals(0, second.getTilesGenerated());
+        assertEquals(first.getTilesGenerated(), second.getTilesLoaded());
+    }
+
+    @Test
+    void seedsDifferingInTheHighBitsDoNotShareTiles() throws IOException {
+        final long other = 0x100000001L;
+        assertEquals(Long.hashCode(0), Long.hashCode(other));
+        new TerrainGenerator(0, 100.0, 4, 0.01, this.directory).generate(WIDTH, HEIGHT);
+
+        final TerrainGenerator cached = new TerrainGenerator(other, 100.0, 4, 0.01, this.directory);
+        final boolean[] terrain = cached.generate(WIDTH, HEIGHT);
+        assertEquals(0, cached.getTilesLoaded());
+        assertArrayEquals(new TerrainGenerator(other, 100.0, 4, 0.01, null).generate(WIDTH, HEIGHT), terrain);
+    }
+
+    @Test
+    void tilesDoNotDependOnTheWorldSize() throws IOException {
+        final boolean[] large = newGenerator(this.directory).generate(WIDTH, HEIGHT);
+        final int width = WIDTH / 2 + 1;
+        final int height = HEIGHT / 3 + 1;
+        final boolean[] small = newGenerator(null).generate(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(large[y * WIDTH + x], small[y * width + x]);
+            }
+        }
+    }
+
+    @Test
+    void worldKeepsHomeAndFoodFreeOfObstacles() throws IOException {
+        final MyAntWorld world = new MyAntWorld(WIDTH, HEIGHT, 8, new MyDispersalPolicy(),
+                newGenerator(null).generate(WIDTH, HEIGHT));
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final Position p = new Position(x, y);
+                if (world.isHome(p) || world.containsFood(p)) {
+                    assertFalse(world.isObstacle(p), () -> "obstacle at " + p);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package org.evensen.ants.render;
+
+import org.evensen.ants.AntWorld;
+import org.evensen.ants.MyAntWorld;
+import org.evensen.ants.MyDispersalPolicy;
+import org.evensen.ants.Position;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the cached obstacle and food layers with the golden images made by the original brute force filter,
+ * which is kept below as the reference. Pixels may differ slightly in colour. Near the left and right edges of the
+ * layer the original let its window wrap around into the neighbouring rows, so pixels there are not compared.
+ */
+class CachedLayerGoldenTest {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 60;
+    private static final int CHANNEL_TOLERANCE = 3;
+    private static final int WRAPPING_EDGE = 4;
+
+    private static final int OBSTACLE_PRIMARY = 0xF0202020;
+    private static final int OBSTACLE_HIGHLIGHT = 0xF0353030;
+    private static final int OBSTACLE_SPECULAR = 0xFF696665;
+    private static final int FOOD_PRIMARY = 0xFFA4DE02;
+    private static final int FOOD_HIGHLIGHT = 0xFFE4E100;
+    private static final int COLOR_WEIGHT = 5;
+    private static final int BLUR_WEIGHT = 3;
+
+    private static AntWorld createWorld() {
+        final AntWorld world = new MyAntWorld(WIDTH, HEIGHT, 3, new MyDispersalPolicy());
+        final Random random = new Random(4711);
+        for (int i = 0; i < 12; i++) {
+            final float cx = random.nextInt(WIDTH);
+            final float cy = random.nextInt(HEIGHT);
+            final float r = 2 + random.nextInt(6);
+            for (float x = -r; r > x; x += 1.0f) {
+                for (float y = -r; r > y; y += 1.0f) {
+                    if (r * r > x * x + y * y) {
+                        world.setObstacle(new Position(cx + x, cy + y), true);
+                    }
+                }
+            }
+        }
+        return world;
+    }
+
+    @Test
+    void obstaclesMatchGolden() {
+        final AntWorld world = createWorld();
+        for (int scale = 1; scale <= 3; scale++) {
+            final int[] golden = referenceObstacles(world, scale);
+            assertClose("obstacles at scale " + scale, WIDTH * scale, golden,
+                    ObstacleRenderer.renderPixels(world, scale, scale));
+        }
+    }
+
+    @Test
+    void foodMatchesGolden() {
+        final AntWorld world = createWorld();
+        for (int scale = 1; scale <= 3; scale++) {
+            final int[] golden = referenceFood(world, scale);
+            assertClose("food at scale " + scale, WIDTH * scale, golden, FoodRenderer.renderPixels(world, scale, scale));
+        }
+    }
+
+    @Test
+    void parallelBandsMatchSequential() {
+        final AntWorld world = createWorld();
+        try (final ScanlineBands bands = ScanlineBands.parallel(4)) {
+            final int[] sequential = ObstacleRenderer.renderPixels(world, 3, 3);
+            final MajorityFilter filter = new MajorityFilter(
+                    new int[]{OBSTACLE_PRIMARY, OBSTACLE_HIGHLIGHT, OBSTACLE_SPECULAR}, 2, 12, 4,
+                    COLOR_WEIGHT, BLUR_WEIGHT);
+            final int[] src = classifyObstacles(world, 3);
+            final int[] parallel = new int[src.length];
+            filter.filter(src, parallel, WIDTH * 3, HEIGHT * 3, bands);
+            assertTrue(Arrays.equals(sequential, parallel), "Parallel bands differ from sequential rendering");
+        }
+    }
+
+    @Test
+    void incrementalEditsMatchFullRender() {
+        final AntWorld world = createWorld();
+        final ObstacleRenderer renderer = new ObstacleRenderer();
+        world.addWorldChangeListener(renderer);
+        final int scale = 3;
+        final double canvasWidth = WIDTH * (scale - 1);
+        final double canvasHeight = HEIGHT * (scale - 1);
+        assertTrue(renderer.prepare(world, canvasWidth, canvasHeight, ScanlineBands.SEQUENTIAL));
+        assertFalse(renderer.prepare(world, canvasWidth, canvasHeight, ScanlineBands.SEQUENTIAL));
+
+        final Random random = new Random(17);
+        for (int edit = 0; edit < 20; edit++) {
+            final int cx = random.nextInt(WIDTH);
+            final int cy = random.nextInt(HEIGHT);
+            final boolean add = random.nextBoolean();
+            for (int y = -2; y <= 2; y++) {
+                for (int x = -2; x <= 2; x++) {
+                    world.setObstacle(new Position(cx + x, cy + y), add);
+                }
+            }
+            renderer.prepare(world, canvasWidth, canvasHeight, ScanlineBands.SEQUENTIAL);
+            final int at = edit;
+            assertTrue(Arrays.equals(ObstacleRenderer.renderPixels(world, scale, scale), renderer.getPixels()),
+                    () -> "Incremental rendering differs from full rendering after edit " + at);
+        }
+    }
+
+    private static void assertClose(final String what, final int width, final int[] expected, final int[] actual) {
+        assertTrue(expected.length == actual.length, what + ": size differs");
+        int opaque = 0;
+        for (int i = 0; i < expected.length; i++) {
+            final int x = i % width;
+            final int y = i / width;
+            if (WRAPPING_EDGE <= x && x < width - WRAPPING_EDGE) {
+                final int expectedPixel = expected[i];
+                final int actualPixel = actual[i];
+                assertTrue(channelsClose(expectedPixel, actualPixel), () -> String.format(
+                        "%s: pixel <%d, %d> is %08x, golden image has %08x",
+                        what, x, y, actualPixel, expectedPixel));
+                if (0 != expectedPixel) {
+                    opaque++;
+                }
+            }
+        }
+        assertTrue(0 < opaque, what + ": nothing was drawn");
+    }
+
+    private static boolean channelsClose(final int a, final int b) {
+        if ((a >>> 24) != (b >>> 24)) {
+            return false;
+        }
+        for (int shift = 0; shift < 24; shift += 8) {
+            if (Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF)) > CHANNEL_TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // The original renderers.
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static int[] classifyObstacles(final AntWorld world, final int scale) {
+        final int width = world.getWidth() * scale;
+        final int[] buffer = new int[width * world.getHeight() * scale];
+        int j = 0;
+        for (int y = 0; y < world.getHeight(); y++) {
+            for (int k = 0; k < scale; k++) {
+                for (int x = 0; x < world.getWidth(); x++) {
+                    for (int l = 0; l < scale; l++) {
+                        final Position p = new Position(x, y);
+                        if (world.isObstacle(p)) {
+                            for (int offsetX = 1; offsetX <= 2; offsetX++) {
+                                for (int offsetY = 1; offsetY <= 3; offsetY++) {
+                                    final Position o = p.offset(offsetX, offsetY);
+                                    if (!world.isObstacle(o) && o.isInBounds(world.getWidth(), world.getHeight())) {
+                                        buffer[j] = OBSTACLE_HIGHLIGHT;
+                                        break;
+                                    } else {
+                                        buffer[j] = OBSTACLE_PRIMARY;
+                                    }
+                                }
+                            }
+                            for (int offsetX = 1; offsetX <= 2; offsetX++) {
+                                final Position o = p.offset(-offsetX, 1);
+                                if (!world.isObstacle(o) && o.isInBounds(world.getWidth(), world.getHeight())) {
+                                    buffer[j] = OBSTACLE_SPECULAR;
+                                    break;
+                                }
+                            }
+                        }
+                        j++;
+                    }
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private static int[] referenceObstacles(final AntWorld world, final int scale) {
+        final int width = world.getWidth() * scale;
+        final int[] src = classifyObstacles(world, scale);
+        final int[] des = new int[src.length];
+        for (int j = 0; j < des.length; j++) {
+            if (0 != src[j]) {
+                final int[] acc = new int[4];
+                final int[] avg = new int[3];
+                window(src, width, j, 2, acc, avg, OBSTACLE_PRIMARY, OBSTACLE_HIGHLIGHT, OBSTACLE_SPECULAR);
+                des[j] = vote(12, acc, avg, OBSTACLE_PRIMARY, OBSTACLE_HIGHLIGHT, OBSTACLE_SPECULAR);
+            }
+        }
+        return des;
+    }
+
+    private static int[] referenceFood(final AntWorld world, final int scale) {
+        final int width = world.getWidth() * scale;
+        final int[] src = new int[width * world.getHeight() * scale];
+        int j = 0;
+        for (int y = 0; y < world.getHeight(); y++) {
+            for (int k = 0; k < scale; k++) {
+                for (int x = 0; x < world.getWidth(); x++) {
+                    for (int l = 0; l < scale; l++) {
+                        final Position p = new Position(x, y);
+                        if (world.containsFood(p)) {
+                            for (int offsetY = 1; offsetY <= 2; offsetY++) {
+                                final Position o = p.offset(1, offsetY);
+                                if (o.isInBounds(world.getWidth(), world.getHeight()) && !world.containsFood(o)) {
+                                    src[j] = FOOD_HIGHLIGHT;
+                                    break;
+                                } else {
+                                    src[j] = FOOD_PRIMARY;
+                                }
+                            }
+                        }
+                        j++;
+                    }
+                }
+            }
+        }
+        final int[] des = new int[src.length];
+        final int[] avg = new int[3];
+        for (int i = 0; i < des.length; i++) {
+            if (0 != src[i]) {
+                final int[] acc = new int[3];
+                window(src, width, i, 4, acc, avg, FOOD_PRIMARY, FOOD_HIGHLIGHT);
+                des[i] = vote(32, acc, avg, FOOD_PRIMARY, FOOD_HIGHLIGHT);
+            }
+        }
+        return des;
+    }
+
+    /**
+     * Counts colours within {@code voteRadius} into {@code acc} (transparent first) and adds the 9 by 9 mean colour
+     * to {@code avg}, with the window wrapping around row ends like the original.
+     */
+    private static void window(final int[] src, final int width, final int j, final int voteRadius, final int[] acc,
+                               final int[] avg, final int... colors) {
+        for (int offsY = -4; offsY < 5; offsY++) {
+            for (int offsX = -4; offsX < 5; offsX++) {
+                final int l = j + width * offsY + offsX;
+                if (l > -1 && l < src.length) {
+                    final int c = src[l];
+                    if (Math.abs(offsY) <= voteRadius && Math.abs(offsX) <= voteRadius) {
+                        if (0 == c) {
+                            acc[0]++;
+                        }
+                        for (int i = 0; i < colors.length; i++) {
+                            if (colors[i] == c) {
+                                acc[i + 1]++;
+                            }
+                        }
+                    }
+                    avg[0] += c >> 16 & 0xFF;
+                    avg[1] += c >> 8 & 0xFF;
+                    avg[2] += c & 0xFF;
+                }
+            }
+        }
+        avg[0] /= 64;
+        avg[1] /= 64;
+        avg[2] /= 64;
+    }
+
+    private static int vote(final int threshold, final int[] acc, final int[] avg, final int... colors) {
+        int k = threshold - acc[0];
+        if (k < 1) {
+            return 0;
+        }
+        int c = 0;
+        for (int i = 0; i < colors.length; i++) {
+            k -= acc[i + 1];
+            if (k < 1) {
+                c = colors[i];
+                break;
+            }
+        }
+        if (0 == c) {
+            return 0;
+        }
+        final int r = Math.min(255, (((c >> 16) & 0xFF) * COLOR_WEIGHT + avg[0] * BLUR_WEIGHT) / 8);
+        final int g = Math.min(255, (((c >> 8) & 0xFF) * COLOR_WEIGHT + avg[1] * BLUR_WEIGHT) / 8);
+        final int b = Math.min(255, ((c & 0xFF) * COLOR_WEIGHT + avg[2] * BLUR_WEIGHT) / 8);
+        return (c & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+}